@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+/**
+ * Notifies of the device gaining network connectivity.
+ */
+class ConnectivityMonitor extends BroadcastReceiver {
+    
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + ConnectivityMonitor.class.getSimpleName();
+    
+    private final Context context;
+    private final Listener listener;
+    
+    private boolean registered;
+    
+    ConnectivityMonitor(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+    
+    synchronized void register() {
+        if (!registered) {
+            context.registerReceiver(
+                    this,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            registered = true;
+        }
+    }
+    
+    synchronized void unregister() {
+        if (registered) {
+            context.unregisterReceiver(this);
+            registered = false;
+        }
+    }
+    
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (isInitialStickyBroadcast()) return;
+        
+        final ConnectivityManager manager = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo info = (manager != null)
+                ? manager.getActiveNetworkInfo()
+                : null;
+        
+        if (info != null && info.isConnected()) {
+            Log.d(TAG, "Connected to " + info.getTypeName());
+            listener.onConnected();
+        }
+    }
+    
+    interface Listener {
+        
+        void onConnected();
+    }
+}
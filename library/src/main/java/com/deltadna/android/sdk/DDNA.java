@@ -36,7 +36,6 @@ import com.deltadna.android.sdk.listeners.EventListener;
 import com.deltadna.android.sdk.listeners.internal.IEventListener;
 import com.deltadna.android.sdk.net.NetworkManager;
 
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -59,22 +58,6 @@ public abstract class DDNA {
     
     static final String SDK_VERSION =
             "Android SDK v" + BuildConfig.VERSION_NAME;
-    static final SimpleDateFormat TIMESTAMP_FORMAT;
-    static {
-        final SimpleDateFormat format = new SimpleDateFormat(
-                "yyyy-MM-dd HH:mm:ss.SSS", Locale.ENGLISH);
-        format.setTimeZone(TimeZone.getTimeZone("UTC"));
-        
-        TIMESTAMP_FORMAT = format;
-    }
-    static final SimpleDateFormat TIMESTAMP_FORMAT_ISO;
-    static {
-        final SimpleDateFormat format = new SimpleDateFormat(
-                "yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ENGLISH);
-        format.setTimeZone(TimeZone.getTimeZone("UTC"));
-        
-        TIMESTAMP_FORMAT_ISO = format;
-    }
 
     static Pair<Boolean, Bundle> cachedNotificationOpenedData;
     
@@ -253,6 +236,23 @@ public abstract class DDNA {
      */
     public abstract EventAction recordEvent(Event event);
     
+    /**
+     * Records a burst of events with Collect, such as those fired together at
+     * the end of a level.
+     * <p>
+     * The events are stored together, and the triggers for all of them are
+     * evaluated together when {@link EventAction#run()} is called on the
+     * returned action.
+     *
+     * @param events the events
+     *
+     * @return the {@link EventAction} for all of the events
+     *
+     * @throws IllegalArgumentException if the {@code events} are null, or
+     *                                  contain null
+     */
+    public abstract EventAction recordEvents(Collection<? extends Event> events);
+    
     /**
      * Record when a push notification has been opened.
      *
@@ -313,6 +313,24 @@ public abstract class DDNA {
             E engagement,
             EngageListener<E> listener);
     
+    /**
+     * Makes Engage requests for all the engagements in {@code batch}
+     * concurrently, with a deadline shared between them.
+     * <p>
+	 * The result of each engagement will be passed into its own listener
+	 * through one of the callback methods on the main UI thread, as soon as
+	 * it is available.
+     *
+     * @param batch the engagements
+     *
+     * @return this {@link DDNA} instance
+     *
+     * @throws IllegalArgumentException if the {@code batch} is null
+     *
+     * @see EngageFactory#batch()
+     */
+    public abstract DDNA requestEngagements(EngageBatch batch);
+    
     /**
      * Makes a session configuration request. This method should be called if
      * a session configuration request has previously failed.
@@ -627,7 +645,7 @@ public abstract class DDNA {
     }
     
     static String getCurrentTimestamp() {
-        return TIMESTAMP_FORMAT.format(new Date());
+        return Timestamps.now();
     }
     
     static <T> void performOn(Iterable<T> items, Action<T> action) {
@@ -25,6 +25,7 @@ import com.deltadna.android.sdk.listeners.EngageListener;
 import com.deltadna.android.sdk.listeners.EventListener;
 import com.deltadna.android.sdk.listeners.internal.IEventListener;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -94,6 +95,11 @@ class DDNADelegate extends DDNA {
         return getDelegate().recordEvent(event);
     }
     
+    @Override
+    public EventAction recordEvents(Collection<? extends Event> events) {
+        return getDelegate().recordEvents(events);
+    }
+    
     @Override
     public EventAction recordNotificationOpened(boolean launch, Bundle payload) {
         return getDelegate().recordNotificationOpened(launch, payload);
@@ -114,6 +120,11 @@ class DDNADelegate extends DDNA {
         return getDelegate().requestEngagement(engagement, listener);
     }
     
+    @Override
+    public DDNA requestEngagements(EngageBatch batch) {
+        return getDelegate().requestEngagements(batch);
+    }
+    
     @Override
     public DDNA requestSessionConfiguration() {
         return getDelegate().requestSessionConfiguration();
@@ -21,6 +21,8 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
@@ -72,7 +74,11 @@ final class DDNAImpl extends DDNA {
     private final ImageMessageStore imageMessageStore;
     
     private final SessionRefreshHandler sessionHandler;
+    private final EvaluationExecutor evaluation;
     private final EventHandler eventHandler;
+    private final EngagePrefetcher prefetcher;
+    private final ConnectivityMonitor connectivity;
+    private final Handler main = new Handler(Looper.getMainLooper());
     
     private final Map<String, Integer> iso4217;
     private final EventTriggeredCampaignMetricStore etcMetricStore;
@@ -83,7 +89,7 @@ final class DDNAImpl extends DDNA {
     private Set<String> whitelistDps = Collections.emptySet();
     private Set<String> whitelistEvents = Collections.emptySet();
     private Set<String> cacheImages = Collections.emptySet();
-    private Map<String, SortedSet<EventTrigger>> eventTriggers = Collections.emptyMap();
+    private EventTriggerTable eventTriggers = EventTriggerTable.EMPTY;
     private static final ScheduledExecutorService futureWorker = Executors.newSingleThreadScheduledExecutor();
     private int failedSessionConfigurations = 0;
     
@@ -118,10 +124,17 @@ final class DDNAImpl extends DDNA {
             }
             
             if (settings.backgroundEventUpload()) {
+                connectivity.register();
                 eventHandler.start(
                         settings.backgroundEventUploadStartDelaySeconds(),
                         settings.backgroundEventUploadRepeatRateSeconds());
             }
+            // opening connections reveals the user to the hosts
+            if (    settings.isWarmUpConnections()
+                    && consentTracker.hasCheckedForConsent()
+                    && consentTracker.allConsentsAreMet()) {
+                network.warmUp();
+            }
             failedSessionConfigurations = 0;
             Log.d(TAG, "SDK started");
             performOn(iEventListeners, IEventListener::onStarted);
@@ -140,9 +153,12 @@ final class DDNAImpl extends DDNA {
             recordEvent("gameEnded").run();
             
             sessionHandler.unregister();
+            connectivity.unregister();
             eventHandler.stop(true);
+            prefetcher.stop();
             
             imageMessageStore.cleanUp();
+            etcMetricStore.flush();
             
             started = false;
             sentDefaultEvents = false;
@@ -177,34 +193,54 @@ final class DDNAImpl extends DDNA {
             Log.w(TAG, "SDK has not been started");
         }
         
-        final JSONObject jsonEvent = new JSONObject();
-        try {
-            jsonEvent.put("eventName", event.name);
-            jsonEvent.put("eventTimestamp", getCurrentTimestamp());
-            jsonEvent.put("eventUUID", UUID.randomUUID().toString());
-            jsonEvent.put("sessionID", sessionId);
-            jsonEvent.put("userID", getUserId());
-            
-            JSONObject params =
-                    new JSONObject(event.params.toJson().toString());
-            params.put("platform", platform);
-            params.put("sdkVersion", SDK_VERSION);
-            
-            jsonEvent.put("eventParams", params);
-        } catch (JSONException e) {
-            // should never happen due to params enforcement
-            throw new IllegalArgumentException(e);
-        }
-        
-        eventHandler.handleEvent(jsonEvent);
+        eventHandler.handleEvent(EventSerializer.serialize(
+                event,
+                sessionId,
+                getUserId(),
+                platform,
+                SDK_VERSION));
         
         return new EventAction(
                 event,
-                eventTriggers.containsKey(event.name)
-                        ? eventTriggers.get(event.name)
-                        : Collections.unmodifiableSortedSet(new TreeSet<>()),
+                eventTriggers.get(event.name),
                 actionStore,
-                settings);
+                settings,
+                evaluation);
+    }
+    
+    @Override
+    public EventAction recordEvents(Collection<? extends Event> events) {
+        Preconditions.checkArg(events != null, "events cannot be null");
+        
+        Log.v(TAG, "Recording " + events.size() + " events");
+        if (!started) {
+            Log.w(TAG, "SDK has not been started");
+        }
+        
+        final List<byte[]> burst = new ArrayList<>(events.size());
+        final Event[] recorded = new Event[events.size()];
+        final EventTrigger[][] triggers = new EventTrigger[recorded.length][];
+        int i = 0;
+        for (final Event event : events) {
+            Preconditions.checkArg(event != null, "events cannot contain null");
+            
+            burst.add(EventSerializer.serialize(
+                    event,
+                    sessionId,
+                    getUserId(),
+                    platform,
+                    SDK_VERSION));
+            recorded[i] = event;
+            triggers[i++] = eventTriggers.get(event.name);
+        }
+        eventHandler.handleEvents(burst);
+        
+        return EventAction.combine(
+                recorded,
+                triggers,
+                actionStore,
+                settings,
+                evaluation);
     }
     
     @Override
@@ -274,6 +310,8 @@ final class DDNAImpl extends DDNA {
             listener.onCompleted((E) engagement.setResponse(new Response<>(
                     200, false, new byte[] {}, new JSONObject(), null)));
             return this;
+        } else if (prefetcher.serve(engagement, listener)) {
+            return this;
         }
         
         Log.v(TAG, "Requesting engagement " + engagement);
@@ -289,6 +327,36 @@ final class DDNAImpl extends DDNA {
         return this;
     }
     
+    @Override
+    public DDNA requestEngagements(EngageBatch batch) {
+        Preconditions.checkArg(batch != null, "batch cannot be null");
+        
+        if (batch.size() == 0) return this;
+        
+        final EngageDeadline deadline = new EngageDeadline(engageStore, main::post);
+        for (final EngageBatch.Item<?> item : batch.items()) {
+            requestEngagement(item, deadline);
+        }
+        
+        final int timeout = (batch.getTimeout() > 0)
+                ? batch.getTimeout()
+                : settings.getHttpRequestEngageTimeout();
+        // an Engage timeout of 0 means the requests never time out
+        if (timeout > 0) {
+            futureWorker.schedule(deadline::expire, timeout, TimeUnit.SECONDS);
+        }
+        return this;
+    }
+    
+    private <E extends Engagement> void requestEngagement(
+            EngageBatch.Item<E> item,
+            EngageDeadline deadline) {
+        
+        final EngageDeadline.Tracked<E> tracked =
+                deadline.track(item.engagement, item.listener);
+        requestEngagement(tracked.request, tracked);
+    }
+    
     @Override
     public DDNA requestSessionConfiguration() {
         final Date firstSession = preferences.getFirstSession();
@@ -552,7 +620,38 @@ final class DDNAImpl extends DDNA {
                     Log.d(TAG, "Session expired, updating id");
                     newSession(true);
                 });
-        eventHandler = new EventHandler(eventStore, engageStore, network);
+        evaluation = new EvaluationExecutor(settings);
+        eventHandler = new EventHandler(
+                eventStore,
+                engageStore,
+                network,
+                settings,
+                evaluation,
+                new UploadBreaker(
+                        TimeUnit.SECONDS.toMillis(
+                                settings.backgroundEventUploadRepeatRateSeconds()),
+                        new Random(),
+                        state -> main.post(() -> performOn(
+                                eventListeners,
+                                it -> it.onUploadCircuitChanged(state)))));
+        prefetcher = new EngagePrefetcher(
+                settings,
+                engageStore,
+                evaluation,
+                (engagement, listener) -> eventHandler.handleEngagement(
+                        engagement,
+                        listener,
+                        getUserId(),
+                        sessionId,
+                        ENGAGE_API_VERSION,
+                        SDK_VERSION,
+                        this.platform),
+                (prefetched, hits, requests) -> main.post(() -> performOn(
+                        eventListeners,
+                        it -> it.onEngagePrefetchReport(prefetched, hits, requests))));
+        connectivity = new ConnectivityMonitor(
+                application,
+                eventHandler::onConnectivityChanged);
 
         handleEnvironmentChanges(application, environmentKey);
         
@@ -700,18 +799,7 @@ final class DDNAImpl extends DDNA {
                         }
                     }
                     
-                    // put the triggers into buckets based on event names
-                    eventTriggers = new HashMap<>();
                     for (final EventTrigger trigger : toBeSaved) {
-                        if (eventTriggers.containsKey(trigger.getEventName())) {
-                            eventTriggers.get(trigger.getEventName()).add(trigger);
-                        } else {
-                            final SortedSet<EventTrigger> set = new TreeSet<>();
-                            set.add(trigger);
-                            
-                            eventTriggers.put(trigger.getEventName(), set);
-                        }
-
                         // save persistent actions
                         final JSONObject parameters = Objects.extract(
                                 trigger.getResponse(), "parameters");
@@ -721,14 +809,7 @@ final class DDNAImpl extends DDNA {
                             actionStore.put(trigger, parameters);
                         }
                     }
-                    // make the collections read-only
-                    for (final String key : eventTriggers.keySet()) {
-                        eventTriggers.put(
-                                key,
-                                Collections.unmodifiableSortedSet(eventTriggers.get(key)));
-                    }
-                    DDNAImpl.this.eventTriggers =
-                            Collections.unmodifiableMap(eventTriggers);
+                    eventTriggers = new EventTriggerTable(toBeSaved);
                 }
                 
                 final JSONArray imageCache = Objects.extractArray(
@@ -750,6 +831,11 @@ final class DDNAImpl extends DDNA {
                     downloadImageAssets();
                 }
                 
+                if (    DDNA.instance().consentTracker.hasCheckedForConsent()
+                        && !DDNA.instance().consentTracker.isConsentDenied()) {
+                    prefetcher.prefetch(whitelistDps);
+                }
+                
                 Log.v(TAG, "Session configured");
                 performOn(iEventListeners, it -> it.onSessionConfigured(
                         engagement.isCached(),
@@ -34,6 +34,7 @@ import com.deltadna.android.sdk.net.Response;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -119,6 +120,11 @@ final class DDNANonTracking extends DDNA {
         return EventAction.EMPTY;
     }
     
+    @Override
+    public EventAction recordEvents(Collection<? extends Event> events) {
+        return EventAction.EMPTY;
+    }
+    
     @Override
     public EventAction recordNotificationOpened(boolean launch, Bundle payload) {
         return EventAction.EMPTY;
@@ -141,6 +147,19 @@ final class DDNANonTracking extends DDNA {
         return this;
     }
     
+    @Override
+    public DDNA requestEngagements(EngageBatch batch) {
+        for (final EngageBatch.Item<?> item : batch.items()) {
+            complete(item);
+        }
+        return this;
+    }
+    
+    private static <E extends Engagement> void complete(EngageBatch.Item<E> item) {
+        item.listener.onCompleted((E) item.engagement.setResponse(new Response<>(
+                200, false, new byte[] {}, new JSONObject(), null)));
+    }
+    
     @Override
     public DDNA requestSessionConfiguration() {
         performOn(iEventListeners, it -> it.onSessionConfigured(false, new JSONObject()));
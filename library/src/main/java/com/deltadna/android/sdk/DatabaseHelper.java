@@ -33,12 +33,17 @@ import org.json.JSONObject;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 final class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = BuildConfig.LOG_TAG + ' ' + "DatabaseHelper";
-    private static final short VERSION = 5;
+    private static final short VERSION = 6;
+    private static final int EVENT_ROWS_WINDOW = 64;
 
     DatabaseHelper(Context context) {
         super(context, "com.deltadna.android.sdk", null, VERSION);
@@ -59,6 +64,8 @@ final class DatabaseHelper extends SQLiteOpenHelper {
                 + Engagements.Column.FLAVOUR + " TEXT NOT NULL, "
                 + Engagements.Column.CACHED + " INTEGER NOT NULL, "
                 + Engagements.Column.RESPONSE + " BLOB NOT NULL, "
+                + Engagements.Column.ENCODING + " INTEGER NOT NULL DEFAULT "
+                + Engagements.ENCODING_UTF8 + ", "
                 + "UNIQUE("
                 + Engagements.Column.DECISION_POINT + ','
                 + Engagements.Column.FLAVOUR + ") ON CONFLICT REPLACE)");
@@ -138,7 +145,14 @@ final class DatabaseHelper extends SQLiteOpenHelper {
                             + ETCExecutions.Column.EXECUTION_COUNT + " INTEGER NOT NULL )");
                     db.execSQL("CREATE INDEX " + ETCExecutions.TABLE + '_' + ETCExecutions.Column.VARIANT_ID + "_idx "
                             + "ON " + ETCExecutions.TABLE + '(' + ETCExecutions.Column.VARIANT_ID + ')');
+                    break;
 
+                case 6:
+                    // existing rows get converted lazily by the EngageStore
+                    db.execSQL("ALTER TABLE " + Engagements.TABLE
+                            + " ADD COLUMN " + Engagements.Column.ENCODING
+                            + " INTEGER NOT NULL DEFAULT " + Engagements.ENCODING_BASE64);
+                    break;
             }
         }
     }
@@ -157,23 +171,76 @@ final class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Gets the oldest event rows whose total size fits within
+     * {@link EventStore#EVENTS_LIMIT}, in insertion order.
+     */
     Cursor getEventRows() throws SQLiteException {
-        return getReadableDatabase().rawQuery(
-                String.format(
-                        Locale.US,
-                        "SELECT e.%s, e.%s, e.%s, e.%s, e.%s, SUM(e1.%s) AS Total "
-                                + "FROM %s e "
-                                + "JOIN %s e1 ON e1.%s <= e.%s "
-                                + "GROUP BY e.%s "
-                                + "HAVING SUM(e1.%s) <= %d "
-                                + "ORDER BY e.%s ASC;",
-                        Events.Column.ID, Events.Column.TIME, Events.Column.LOCATION, Events.Column.NAME, Events.Column.SIZE, Events.Column.SIZE,
-                        Events.TABLE,
-                        Events.TABLE, Events.Column.ID, Events.Column.ID,
-                        Events.Column.ID,
-                        Events.Column.SIZE, EventStore.EVENTS_LIMIT,
-                        Events.Column.TIME),
-                new String[]{});
+        return getEventRows(-1);
+    }
+
+    /**
+     * Gets the oldest event rows following the row with id {@code after}
+     * whose total size fits within {@link EventStore#EVENTS_LIMIT}, in
+     * insertion order.
+     */
+    Cursor getEventRows(long after) throws SQLiteException {
+        return getReadableDatabase().query(
+                Events.TABLE,
+                new String[] {
+                        Events.Column.ID.toString(),
+                        Events.Column.TIME.toString(),
+                        Events.Column.LOCATION.toString(),
+                        Events.Column.NAME.toString(),
+                        Events.Column.SIZE.toString()},
+                Events.Column.ID + " > ? AND " + Events.Column.ID + " <= ?",
+                new String[] {
+                        Long.toString(after),
+                        Long.toString(getLastEventRowId(
+                                after,
+                                EventStore.EVENTS_LIMIT))},
+                null,
+                null,
+                Events.Column.ID + " ASC");
+    }
+
+    /**
+     * Walks the event rows in windows along the primary key, keeping a
+     * running total of their sizes, so that only the rows which make up the
+     * batch (and one more) get read regardless of how many are queued.
+     *
+     * @return the id of the last row within {@code limit}, or {@code after}
+     *         if not even the first row fits
+     */
+    private long getLastEventRowId(long after, long limit)
+            throws SQLiteException {
+
+        long total = 0;
+        long last = after;
+
+        while (true) {
+            try (final Cursor cursor = getReadableDatabase().query(
+                    Events.TABLE,
+                    new String[] {
+                            Events.Column.ID.toString(),
+                            Events.Column.SIZE.toString()},
+                    Events.Column.ID + " > ?",
+                    new String[] {Long.toString(last)},
+                    null,
+                    null,
+                    Events.Column.ID + " ASC",
+                    Integer.toString(EVENT_ROWS_WINDOW))) {
+
+                if (!cursor.moveToFirst()) return last;
+
+                do {
+                    total += cursor.getLong(1);
+                    if (total > limit) return last;
+
+                    last = cursor.getLong(0);
+                } while (cursor.moveToNext());
+            }
+        }
     }
 
     boolean insertEventRow(
@@ -193,12 +260,40 @@ final class DatabaseHelper extends SQLiteOpenHelper {
                 != -1);
     }
 
-    boolean removeEventRow(long id) throws SQLiteException {
-        return (getWritableDatabase().delete(
+    /**
+     * Removes the event rows from {@code first} up to and including
+     * {@code last}, using a single statement so that acknowledging a batch
+     * costs one journal commit.
+     *
+     * @return the number of rows removed
+     */
+    int removeEventRows(long first, long last) throws SQLiteException {
+        return getWritableDatabase().delete(
                 Events.TABLE,
-                Events.Column.ID + " = ?",
-                new String[]{Long.toString(id)})
-                == 1);
+                Events.Column.ID + " BETWEEN ? AND ?",
+                new String[] {Long.toString(first), Long.toString(last)});
+    }
+
+    Set<String> getEventNames() throws SQLiteException {
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(
+                    Events.TABLE,
+                    new String[] {Events.Column.NAME.toString()},
+                    null,
+                    null,
+                    null,
+                    null,
+                    null);
+
+            final Set<String> names = new HashSet<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+            return names;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
     }
 
     void removeEventRows() throws SQLiteException {
@@ -220,29 +315,72 @@ final class DatabaseHelper extends SQLiteOpenHelper {
                 null);
     }
 
+    /**
+     * Inserts the row on the calling thread, which should not be the main
+     * thread.
+     */
     boolean insertEngagementRow(
             String decisionPoint,
             String flavour,
             Date cached,
-            byte[] response) {
+            byte[] response,
+            int encoding) throws SQLiteException {
 
-        final ContentValues values = new ContentValues(4);
+        final ContentValues values = new ContentValues(5);
         values.put(Engagements.Column.DECISION_POINT.toString(), decisionPoint);
         values.put(Engagements.Column.FLAVOUR.toString(), flavour);
         values.put(Engagements.Column.CACHED.toString(), cached.getTime());
         values.put(Engagements.Column.RESPONSE.toString(), response);
-        new InsertEngagementAsyncTask().execute(values);
-        return true;
+        values.put(Engagements.Column.ENCODING.toString(), encoding);
+
+        return (getWritableDatabase().insert(Engagements.TABLE, null, values)
+                != -1);
     }
 
-    public class InsertEngagementAsyncTask extends AsyncTask<ContentValues, Void, Void>{
+    Cursor getRecentEngagements(String excludedFlavour, int limit)
+            throws SQLiteException {
 
-        @Override
-        protected Void doInBackground(ContentValues... contentValues) throws SQLiteException {
-            ContentValues value = contentValues[0];
-            getWritableDatabase().insert(Engagements.TABLE, null, value);
-            return null;
-        }
+        return getReadableDatabase().query(
+                Engagements.TABLE,
+                new String[] {
+                        Engagements.Column.DECISION_POINT.toString(),
+                        Engagements.Column.FLAVOUR.toString()},
+                Engagements.Column.FLAVOUR + " != ?",
+                new String[] {excludedFlavour},
+                null,
+                null,
+                Engagements.Column.CACHED + " DESC",
+                Integer.toString(limit));
+    }
+
+    Cursor getBase64Engagements() throws SQLiteException {
+        return getReadableDatabase().query(
+                Engagements.TABLE,
+                new String[] {
+                        Engagements.Column.ID.toString(),
+                        Engagements.Column.RESPONSE.toString()},
+                Engagements.Column.ENCODING + " = ?",
+                new String[] {Integer.toString(Engagements.ENCODING_BASE64)},
+                null,
+                null,
+                null);
+    }
+
+    boolean updateEngagementResponse(long id, byte[] response, int encoding)
+            throws SQLiteException {
+
+        final ContentValues values = new ContentValues(2);
+        values.put(Engagements.Column.RESPONSE.toString(), response);
+        values.put(Engagements.Column.ENCODING.toString(), encoding);
+
+        return (getWritableDatabase().update(
+                Engagements.TABLE,
+                values,
+                Engagements.Column.ID + " = ? AND " + Engagements.Column.ENCODING + " = ?",
+                new String[] {
+                        Long.toString(id),
+                        Integer.toString(Engagements.ENCODING_BASE64)})
+                == 1);
     }
 
     boolean removeEngagementRow(long id) throws SQLiteException {
@@ -391,40 +529,55 @@ final class DatabaseHelper extends SQLiteOpenHelper {
         getWritableDatabase().delete(Actions.TABLE, null, null);
     }
 
-    long getETCExecutionCount(long variantId) throws SQLiteException {
-        long executions = 0;
+    Map<Long, Long> getETCExecutionCounts() throws SQLiteException {
+        final Map<Long, Long> counts = new HashMap<>();
         try (
                 final Cursor cursor = getReadableDatabase().query(
                         ETCExecutions.TABLE,
-                        new String[]{ETCExecutions.Column.EXECUTION_COUNT.name()},
-                        ETCExecutions.Column.VARIANT_ID + " = ?",
-                        new String[]{String.valueOf(variantId)},
+                        new String[] {
+                                ETCExecutions.Column.VARIANT_ID.toString(),
+                                ETCExecutions.Column.EXECUTION_COUNT.toString()},
+                        null,
+                        null,
                         null,
                         null,
                         null)) {
-            if (cursor.moveToFirst()) {
-                executions = cursor.getLong(0);
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getLong(0), cursor.getLong(1));
             }
         }
 
-        return executions;
+        return counts;
     }
 
-    void recordETCExecution(long campaignId) throws SQLiteException {
-        long etcExecutionCount = getETCExecutionCount(campaignId);
-        SQLiteDatabase database = this.getWritableDatabase();
-        if (etcExecutionCount == 0) {
-            ContentValues values = new ContentValues();
-            values.put(ETCExecutions.Column.EXECUTION_COUNT.name(), 1);
-            values.put(ETCExecutions.Column.VARIANT_ID.name(), campaignId);
-            database.insert(ETCExecutions.TABLE, null, values);
-        } else {
-            ContentValues values = new ContentValues();
-            values.put(ETCExecutions.Column.EXECUTION_COUNT.name(), etcExecutionCount + 1);
+    /**
+     * Writes the execution {@code counts} keyed by variant id in a single
+     * transaction, replacing any existing counts for the same variants.
+     */
+    void setETCExecutionCounts(Map<Long, Long> counts) throws SQLiteException {
+        final SQLiteDatabase database = getWritableDatabase();
+        final ContentValues values = new ContentValues(2);
 
-            database.update(ETCExecutions.TABLE, values, ETCExecutions.Column.VARIANT_ID + " = ?", new String[]{String.valueOf(campaignId)});
-        }
+        database.beginTransaction();
+        try {
+            for (final Map.Entry<Long, Long> count : counts.entrySet()) {
+                values.put(
+                        ETCExecutions.Column.VARIANT_ID.toString(),
+                        count.getKey());
+                values.put(
+                        ETCExecutions.Column.EXECUTION_COUNT.toString(),
+                        count.getValue());
+                database.insertWithOnConflict(
+                        ETCExecutions.TABLE,
+                        null,
+                        values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
 
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
     void clearETCExecutions() throws SQLiteException {
@@ -469,6 +622,13 @@ final class DatabaseHelper extends SQLiteOpenHelper {
 
         static final String TABLE = "engagements";
 
+        /**
+         * Response encoded as Base64, as stored before version 6.
+         */
+        static final int ENCODING_BASE64 = 0;
+        static final int ENCODING_UTF8 = 1;
+        static final int ENCODING_GZIP = 2;
+
         enum Column {
             ID {
                 @Override
@@ -479,7 +639,8 @@ final class DatabaseHelper extends SQLiteOpenHelper {
             DECISION_POINT,
             FLAVOUR,
             CACHED,
-            RESPONSE;
+            RESPONSE,
+            ENCODING;
 
             @Override
             public String toString() {
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import com.deltadna.android.sdk.helpers.Preconditions;
+import com.deltadna.android.sdk.listeners.EngageListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several engagements to be requested together through
+ * {@link DDNA#requestEngagements(EngageBatch)}, such as for the decision
+ * points needed by a screen.
+ * <p>
+ * The engagements are requested concurrently instead of one after another,
+ * and each of their listeners gets called as its result arrives. Engagements
+ * which have not completed by the deadline for the batch will be completed
+ * from the cache, if a response for them has been cached, or with a
+ * {@link java.util.concurrent.TimeoutException} otherwise.
+ */
+public final class EngageBatch {
+
+    private final List<Item<?>> items = new ArrayList<>();
+    private int timeout;
+
+    /**
+     * Adds an engagement to the batch.
+     *
+     * @param engagement    the engagement
+     * @param listener      listener for the result of the engagement
+     *
+     * @return this {@link EngageBatch} instance
+     *
+     * @throws IllegalArgumentException if the {@code engagement} or
+     *                                  {@code listener} is null
+     */
+    public <E extends Engagement> EngageBatch add(
+            E engagement,
+            EngageListener<E> listener) {
+
+        Preconditions.checkArg(engagement != null, "engagement cannot be null");
+        Preconditions.checkArg(listener != null, "listener cannot be null");
+
+        items.add(new Item<>(engagement, listener));
+        return this;
+    }
+
+    /**
+     * Gets the deadline for the batch.
+     *
+     * @return the deadline, in seconds, or 0 if the Engage timeout from the
+     *         settings will be used
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the deadline by which all engagements in the batch should have
+     * completed, counted from when the batch is requested.
+     * <p>
+     * The default is 0, which uses
+     * {@link com.deltadna.android.sdk.helpers.Settings#getHttpRequestEngageTimeout()},
+     * in which case there is no deadline if that is also 0.
+     *
+     * @param seconds the deadline, in seconds
+     *
+     * @return this {@link EngageBatch} instance
+     *
+     * @throws IllegalArgumentException if {@code seconds} is negative
+     */
+    public EngageBatch setTimeout(int seconds) {
+        Preconditions.checkArg(seconds >= 0, "seconds cannot be negative");
+
+        timeout = seconds;
+        return this;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    List<Item<?>> items() {
+        return Collections.unmodifiableList(items);
+    }
+
+    static final class Item<E extends Engagement> {
+
+        final E engagement;
+        final EngageListener<E> listener;
+
+        Item(E engagement, EngageListener<E> listener) {
+            this.engagement = engagement;
+            this.listener = listener;
+        }
+    }
+}
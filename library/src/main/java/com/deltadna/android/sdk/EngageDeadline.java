@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.deltadna.android.sdk.listeners.EngageListener;
+import com.deltadna.android.sdk.net.Response;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deadline shared by the engagements of an {@link EngageBatch}.
+ * <p>
+ * Listeners are wrapped so that whichever of the result and the deadline
+ * comes first completes them, after which the other gets ignored. Requests
+ * are made with a copy of each engagement, so that a result arriving after
+ * the deadline does not change the engagement which has already been
+ * delivered. Once a result has been delivered any further ones, such as from
+ * revalidating a stale response, are passed through as usual.
+ */
+final class EngageDeadline {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EngageDeadline.class.getSimpleName();
+
+    private static final int PENDING = 0;
+    private static final int DELIVERED = 1;
+    private static final int EXPIRED = 2;
+
+    private final EngageStore store;
+    private final Executor callbacks;
+
+    private final List<Tracked<?>> tracked = new ArrayList<>();
+
+    /**
+     * @param callbacks executor on which listeners completed by the deadline
+     *                  will be called
+     */
+    EngageDeadline(EngageStore store, Executor callbacks) {
+        this.store = store;
+        this.callbacks = callbacks;
+    }
+
+    synchronized <E extends Engagement> Tracked<E> track(
+            E engagement,
+            EngageListener<E> listener) {
+
+        final Tracked<E> result = new Tracked<>(engagement, listener);
+        tracked.add(result);
+        return result;
+    }
+
+    /**
+     * Completes the listeners of engagements which are still pending from
+     * the cache, or with an error. Needs to be called off the main thread as
+     * the cache may be read from the database.
+     */
+    void expire() {
+        final List<Tracked<?>> pending = new ArrayList<>();
+        synchronized (this) {
+            for (final Tracked<?> item : tracked) {
+                if (item.state.get() == PENDING) pending.add(item);
+            }
+        }
+
+        for (final Tracked<?> item : pending) {
+            item.expire(store.get(item.engagement));
+        }
+    }
+
+    final class Tracked<E extends Engagement> implements EngageListener<E> {
+
+        final E engagement;
+        /**
+         * Copy of {@link #engagement} to make the request with.
+         */
+        final E request;
+        final EngageListener<E> listener;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+
+        @SuppressWarnings("unchecked")
+        Tracked(E engagement, EngageListener<E> listener) {
+            this.engagement = engagement;
+            this.request = (E) engagement.copy();
+            this.listener = listener;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onCompleted(E result) {
+            if (state.compareAndSet(PENDING, DELIVERED)) {
+                // first result goes onto the engagement which was asked for
+                final Response<JSONObject> response = result.getResponse();
+                listener.onCompleted((response != null)
+                        ? (E) engagement.setResponse(response)
+                        : result);
+            } else if (state.get() == DELIVERED) {
+                listener.onCompleted(result);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (deliver()) listener.onError(t);
+        }
+
+        private boolean deliver() {
+            return state.compareAndSet(PENDING, DELIVERED)
+                    || state.get() == DELIVERED;
+        }
+
+        @SuppressWarnings("unchecked")
+        void expire(@Nullable JSONObject cached) {
+            callbacks.execute(() -> {
+                if (!state.compareAndSet(PENDING, EXPIRED)) return;
+
+                if (cached != null) {
+                    try {
+                        Log.d(TAG, "Using cached response for " + engagement + " after deadline");
+                        listener.onCompleted((E) engagement.setResponse(new Response<>(
+                                200,
+                                true,
+                                null,
+                                cached.put("isCachedResponse", true),
+                                null)));
+                    } catch (JSONException e) {
+                        // should never happen with a boolean value
+                        throw new IllegalStateException(e);
+                    }
+                } else {
+                    Log.d(TAG, "Deadline passed for " + engagement);
+                    listener.onError(new TimeoutException(
+                            "Deadline passed for " + engagement));
+                }
+            });
+        }
+    }
+}
@@ -68,23 +68,9 @@ public class EngageFactory {
             @Nullable Params parameters,
             final Callback<JSONObject> callback) {
         
-        final Engagement engagement = build(decisionPoint, parameters);
         analytics.requestEngagement(
-                engagement,
-                new EngageListener<Engagement>() {
-                    @Override
-                    public void onCompleted(Engagement engagement) {
-                        callback.onCompleted(
-                                (engagement.getJson() != null && engagement.getJson().has("parameters"))
-                                        ? engagement.getJson().optJSONObject("parameters")
-                                        : new JSONObject());
-                    }
-                    
-                    @Override
-                    public void onError(Throwable t) {
-                        callback.onCompleted(new JSONObject());
-                    }
-                });
+                build(decisionPoint, parameters),
+                gameParameters(callback));
     }
     
     /**
@@ -125,20 +111,19 @@ public class EngageFactory {
             @Nullable Params parameters,
             final Callback<ImageMessage> callback) {
         
-        final Engagement engagement = build(decisionPoint, parameters);
         analytics.requestEngagement(
-                engagement,
-                new EngageListener<Engagement>() {
-                    @Override
-                    public void onCompleted(Engagement engagement) {
-                        callback.onCompleted(ImageMessage.create(engagement));
-                    }
-                    
-                    @Override
-                    public void onError(Throwable t) {
-                        callback.onCompleted(null);
-                    }
-                });
+                build(decisionPoint, parameters),
+                imageMessage(callback));
+    }
+    
+    /**
+     * Starts a batch of requests, which will be made concurrently once
+     * {@link Batch#send()} is called instead of one after another.
+     *
+     * @return the new batch
+     */
+    public Batch batch() {
+        return new Batch();
     }
     
     protected static Engagement build(
@@ -160,6 +145,156 @@ public class EngageFactory {
         }
     }
     
+    private static EngageListener<Engagement> gameParameters(
+            final Callback<JSONObject> callback) {
+        
+        return new EngageListener<Engagement>() {
+            @Override
+            public void onCompleted(Engagement engagement) {
+                callback.onCompleted(
+                        (engagement.getJson() != null && engagement.getJson().has("parameters"))
+                                ? engagement.getJson().optJSONObject("parameters")
+                                : new JSONObject());
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                callback.onCompleted(new JSONObject());
+            }
+        };
+    }
+    
+    private static EngageListener<Engagement> imageMessage(
+            final Callback<ImageMessage> callback) {
+        
+        return new EngageListener<Engagement>() {
+            @Override
+            public void onCompleted(Engagement engagement) {
+                callback.onCompleted(ImageMessage.create(engagement));
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                callback.onCompleted(null);
+            }
+        };
+    }
+    
+    /**
+     * Requests which will be made together, with each callback being
+     * notified as its own request completes.
+     *
+     * @see DDNA#requestEngagements(EngageBatch)
+     */
+    public final class Batch {
+        
+        private final EngageBatch engagements = new EngageBatch();
+        
+        private Batch() {}
+        
+        /**
+         * Adds a request for game parameters at {@code decisionPoint}.
+         *
+         * @param decisionPoint the decision point
+         * @param callback      the callback for completion notification
+         *
+         * @return this {@link Batch} instance
+         *
+         * @throws IllegalArgumentException if the {@code decisionPoint} is
+         *                                  null or empty
+         */
+        public Batch requestGameParameters(
+                String decisionPoint,
+                Callback<JSONObject> callback) {
+            
+            return requestGameParameters(decisionPoint, null, callback);
+        }
+        
+        /**
+         * Adds a request for game parameters at {@code decisionPoint} with
+         * {@code parameters}.
+         *
+         * @param decisionPoint the decision point
+         * @param parameters    the parameters for the request
+         * @param callback      the callback for completion notification
+         *
+         * @return this {@link Batch} instance
+         *
+         * @throws IllegalArgumentException if the {@code decisionPoint} is
+         *                                  null or empty
+         */
+        public Batch requestGameParameters(
+                String decisionPoint,
+                @Nullable Params parameters,
+                Callback<JSONObject> callback) {
+            
+            engagements.add(build(decisionPoint, parameters), gameParameters(callback));
+            return this;
+        }
+        
+        /**
+         * Adds a request for an {@link ImageMessage} at
+         * {@code decisionPoint}.
+         *
+         * @param decisionPoint the decision point
+         * @param callback      the callback for completion notification
+         *
+         * @return this {@link Batch} instance
+         *
+         * @throws IllegalArgumentException if the {@code decisionPoint} is
+         *                                  null or empty
+         */
+        public Batch requestImageMessage(
+                String decisionPoint,
+                Callback<ImageMessage> callback) {
+            
+            return requestImageMessage(decisionPoint, null, callback);
+        }
+        
+        /**
+         * Adds a request for an {@link ImageMessage} at
+         * {@code decisionPoint} with {@code parameters}.
+         *
+         * @param decisionPoint the decision point
+         * @param parameters    the parameters for the request
+         * @param callback      the callback for completion notification
+         *
+         * @return this {@link Batch} instance
+         *
+         * @throws IllegalArgumentException if the {@code decisionPoint} is
+         *                                  null or empty
+         */
+        public Batch requestImageMessage(
+                String decisionPoint,
+                @Nullable Params parameters,
+                Callback<ImageMessage> callback) {
+            
+            engagements.add(build(decisionPoint, parameters), imageMessage(callback));
+            return this;
+        }
+        
+        /**
+         * Sets the deadline for all the requests in the batch.
+         *
+         * @param seconds the deadline, in seconds
+         *
+         * @return this {@link Batch} instance
+         *
+         * @see EngageBatch#setTimeout(int)
+         */
+        public Batch setTimeout(int seconds) {
+            engagements.setTimeout(seconds);
+            return this;
+        }
+        
+        /**
+         * Makes the requests.
+         */
+        public void send() {
+            analytics.requestEngagements(engagements);
+        }
+    }
+    
     public interface Callback<T> {
         
         /**
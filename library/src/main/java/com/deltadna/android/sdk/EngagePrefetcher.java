@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import android.util.Log;
+
+import com.deltadna.android.sdk.helpers.Settings;
+import com.deltadna.android.sdk.listeners.EngageListener;
+import com.deltadna.android.sdk.net.Response;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Requests engagements for decision points which are likely to be needed
+ * early in a session, as soon as the session has been configured.
+ * <p>
+ * Decision points come from those set through
+ * {@link Settings#setPrefetchDecisionPoints(String...)} and, if enabled
+ * through {@link Settings#setPrefetchFromHistory(int)}, from those most
+ * recently cached in the {@link EngageStore}. The responses go through the
+ * usual engagement handling, so they also end up cached, and the first
+ * request for each of them during the session is answered from the prefetched
+ * response without going to the network.
+ * <p>
+ * How many of the distinct decision points requested during a round could be
+ * answered from it is reported when the next round starts, or when the SDK
+ * stops.
+ */
+final class EngagePrefetcher {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EngagePrefetcher.class.getSimpleName();
+    static final String INTERNAL_FLAVOUR = "internal";
+
+    private final Settings settings;
+    private final EngageStore store;
+    private final Executor executor;
+    private final Requester requester;
+    private final Reporter reporter;
+
+    // guarded by this
+    private final Map<String, Response<JSONObject>> ready = new HashMap<>();
+    private final Set<String> requested = new HashSet<>();
+    private int round;
+    private int prefetched;
+    private int hits;
+
+    EngagePrefetcher(
+            Settings settings,
+            EngageStore store,
+            Executor executor,
+            Requester requester,
+            Reporter reporter) {
+
+        this.settings = settings;
+        this.store = store;
+        this.executor = executor;
+        this.requester = requester;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Starts a new round of prefetching, reporting on the previous one.
+     *
+     * @param whitelist the whitelisted decision points and flavours, or an
+     *                  empty set if all of them are allowed
+     */
+    void prefetch(Set<String> whitelist) {
+        final int current = reset();
+
+        final int fromHistory = settings.getPrefetchFromHistory();
+        if (settings.getPrefetchDecisionPoints().isEmpty() && fromHistory == 0) return;
+
+        try {
+            executor.execute(() -> fetch(whitelist, current, fromHistory));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Failed to start prefetching", e);
+        }
+    }
+
+    private void fetch(Set<String> whitelist, int current, int fromHistory) {
+        final Map<String, Engagement> engagements = new LinkedHashMap<>();
+        for (final String decisionPoint : settings.getPrefetchDecisionPoints()) {
+            final Engagement engagement = new Engagement(decisionPoint);
+            engagements.put(engagement.getDecisionPointAndFlavour(), engagement);
+        }
+        if (fromHistory > 0) {
+            for (final Engagement engagement : store.recent(INTERNAL_FLAVOUR, fromHistory)) {
+                if (!engagements.containsKey(engagement.getDecisionPointAndFlavour())) {
+                    engagements.put(engagement.getDecisionPointAndFlavour(), engagement);
+                }
+            }
+        }
+
+        for (final Map.Entry<String, Engagement> entry : engagements.entrySet()) {
+            final String key = entry.getKey();
+            if (!whitelist.isEmpty() && !whitelist.contains(key)) {
+                Log.d(TAG, "Not prefetching " + key + " as it is not whitelisted");
+                continue;
+            }
+
+            synchronized (this) {
+                if (round != current) return;
+                prefetched++;
+            }
+
+            Log.v(TAG, "Prefetching " + key);
+            requester.request(entry.getValue(), new Listener(key, current));
+        }
+    }
+
+    /**
+     * Answers {@code engagement} from a prefetched response, if there is one
+     * which has not been used yet and the engagement has no parameters.
+     *
+     * @return {@code true} if {@code listener} has been completed
+     */
+    @SuppressWarnings("unchecked")
+    <E extends Engagement> boolean serve(E engagement, EngageListener<E> listener) {
+        if (INTERNAL_FLAVOUR.equals(engagement.flavour)) return false;
+
+        final String key = engagement.getDecisionPointAndFlavour();
+        final Response<JSONObject> response;
+        synchronized (this) {
+            final boolean first = requested.add(key);
+            response = engagement.params.isEmpty() ? ready.remove(key) : null;
+
+            if (response == null) return false;
+            if (first) hits++;
+        }
+
+        Log.v(TAG, "Answering " + key + " from prefetched response");
+        listener.onCompleted((E) engagement.setResponse(response));
+        return true;
+    }
+
+    /**
+     * Ends the current round, reporting on it.
+     */
+    void stop() {
+        reset();
+    }
+
+    private int reset() {
+        final int prefetched;
+        final int hits;
+        final int requests;
+        final int current;
+        synchronized (this) {
+            prefetched = this.prefetched;
+            hits = this.hits;
+            requests = requested.size();
+
+            ready.clear();
+            requested.clear();
+            this.prefetched = 0;
+            this.hits = 0;
+            current = ++round;
+        }
+
+        if (prefetched > 0) {
+            Log.d(TAG, String.format(
+                    Locale.ENGLISH,
+                    "Answered %d of %d requested decision points from %d prefetched",
+                    hits,
+                    requests,
+                    prefetched));
+            reporter.report(prefetched, hits, requests);
+        }
+
+        return current;
+    }
+
+    interface Requester {
+
+        void request(Engagement engagement, EngageListener<Engagement> listener);
+    }
+
+    interface Reporter {
+
+        void report(int prefetched, int hits, int requests);
+    }
+
+    private final class Listener implements EngageListener<Engagement> {
+
+        private final String key;
+        private final int round;
+
+        Listener(String key, int round) {
+            this.key = key;
+            this.round = round;
+        }
+
+        @Override
+        public void onCompleted(Engagement engagement) {
+            final Response<JSONObject> response = engagement.getResponse();
+            if (!engagement.isSuccessful() || engagement.isCached() || response == null) {
+                Log.d(TAG, "Failed prefetching " + key);
+                return;
+            }
+
+            synchronized (EngagePrefetcher.this) {
+                // too late if already requested or the round has ended
+                if (    EngagePrefetcher.this.round == round
+                        && !requested.contains(key)) {
+                    ready.put(key, response);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            Log.d(TAG, "Failed prefetching " + key, t);
+        }
+    }
+}
@@ -17,33 +17,85 @@
 package com.deltadna.android.sdk;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
 import androidx.annotation.Nullable;
 import android.util.Base64;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.deltadna.android.sdk.helpers.Settings;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.CACHED;
+import static com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.DECISION_POINT;
+import static com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.ENCODING;
+import static com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.FLAVOUR;
 import static com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.ID;
 import static com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.RESPONSE;
+import static com.deltadna.android.sdk.DatabaseHelper.Engagements.ENCODING_BASE64;
+import static com.deltadna.android.sdk.DatabaseHelper.Engagements.ENCODING_GZIP;
+import static com.deltadna.android.sdk.DatabaseHelper.Engagements.ENCODING_UTF8;
 
+/**
+ * Cache of successful Engage responses, for falling back to when a request
+ * fails.
+ * <p>
+ * Responses are kept in a bounded in-memory LRU in front of the database, so
+ * repeated lookups of the same decision point and flavour do not need to
+ * query and deserialise the stored row. Writes go to memory straight away and
+ * through to the database on a background thread.
+ */
 final class EngageStore {
     
     private static final String TAG = BuildConfig.LOG_TAG
             + ' '
             + EngageStore.class.getSimpleName();
+    static final int MEMORY_ENTRIES = 64;
+    /**
+     * Responses larger than this are compressed before being stored.
+     */
+    static final int COMPRESSION_THRESHOLD = 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
     
     private final DatabaseHelper database;
     private final Settings settings;
     
+    private final LruCache<String, Entry> memory = new LruCache<>(MEMORY_ENTRIES);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            r -> {
+                final Thread thread = new Thread(
+                        r,
+                        EngageStore.class.getSimpleName() + " writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    /**
+     * Number of clears which are yet to reach the database, during which
+     * rows read from it may be out of date.
+     */
+    private final AtomicInteger clearing = new AtomicInteger();
+    private final AtomicBoolean migrating = new AtomicBoolean();
+    
     EngageStore(DatabaseHelper database, File path, Settings settings) {
         this.database = database;
         this.settings = settings;
@@ -55,20 +107,31 @@ final class EngageStore {
         if (engagement.isSuccessful()) {
             Log.v(TAG, "Inserting " + engagement);
             
-            try {
-                //noinspection ConstantConditions
-                database.insertEngagementRow(
-                        engagement.getDecisionPoint(),
-                        engagement.getFlavour(),
-                        new Date(),
-                        Base64.encode(
-                                engagement.getJson().toString().getBytes("UTF-8"),
-                                Base64.DEFAULT));
-            } catch (UnsupportedEncodingException e) {
-                Log.w(  TAG,
-                        "Failed serialising engagement response",
-                        e);
-            }
+            final String name = engagement.getDecisionPoint();
+            final String flavour = engagement.getFlavour();
+            final Date cached = new Date();
+            //noinspection ConstantConditions
+            final JSONObject json = engagement.getJson();
+            
+            final String serialised = json.toString();
+            
+            memory.put(key(name, flavour), new Entry(cached.getTime(), copy(json)));
+            writer.execute(() -> {
+                final byte[] raw = serialised.getBytes(UTF8);
+                final byte[] compressed = compress(raw);
+                
+                try {
+                    database.insertEngagementRow(
+                            name,
+                            flavour,
+                            cached,
+                            (compressed != null) ? compressed : raw,
+                            (compressed != null) ? ENCODING_GZIP : ENCODING_UTF8);
+                } catch (SQLiteException e) {
+                    Log.w(TAG, "Failed inserting " + name + '@' + flavour, e);
+                }
+            });
+            migrate();
         }
     }
     
@@ -76,25 +139,49 @@ final class EngageStore {
     JSONObject get(Engagement engagement) {
         if (settings.getEngageCacheExpiry() == 0) return null;
         
-        try (final Cursor cursor = database.getEngagement(
-                engagement.name, engagement.flavour)) {
+        final long expiry = TimeUnit.SECONDS.toMillis(settings.getEngageCacheExpiry());
+        final String key = key(engagement.name, engagement.flavour);
+        
+        final Entry entry = memory.get(key);
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.cached <= expiry) {
+                return copy(entry.json);
+            }
+            
+            // the row will be removed as stale below
+            memory.remove(key);
+        }
+        
+        if (clearing.get() > 0) return null;
+        migrate();
+        
+        return load(engagement.name, engagement.flavour, expiry);
+    }
+    
+    /**
+     * Reads a response from the database into memory, removing it instead if
+     * it has expired.
+     */
+    @Nullable
+    JSONObject load(String name, String flavour, long expiry) {
+        try (final Cursor cursor = database.getEngagement(name, flavour)) {
             if (cursor.moveToFirst()) {
                 final Date cached = new Date(cursor.getLong(
                         cursor.getColumnIndex(CACHED.toString())));
                 
                 if ((   new Date().getTime() - cached.getTime())
-                        > TimeUnit.SECONDS.toMillis(settings.getEngageCacheExpiry())) {
+                        > expiry) {
                     database.removeEngagementRow(cursor.getLong(
                             cursor.getColumnIndex(ID.toString())));
                 } else {
                     try {
-                        return new JSONObject(new String(
-                                Base64.decode(
-                                        cursor.getBlob(
-                                                cursor.getColumnIndex(RESPONSE.toString())),
-                                        Base64.DEFAULT),
-                                "UTF-8"));
-                    } catch (UnsupportedEncodingException | JSONException e) {
+                        final JSONObject json = new JSONObject(decode(
+                                cursor.getBlob(cursor.getColumnIndex(RESPONSE.toString())),
+                                cursor.getInt(cursor.getColumnIndex(ENCODING.toString()))));
+                        
+                        memory.put(key(name, flavour), new Entry(cached.getTime(), copy(json)));
+                        return json;
+                    } catch (IOException | JSONException e) {
                         Log.w(  TAG,
                                 "Failed deserialising engagement response from cache",
                                 e);
@@ -106,9 +193,165 @@ final class EngageStore {
         return null;
     }
     
+    /**
+     * @return new engagements for the most recently cached decision points
+     *         and flavours, excluding those of {@code excludedFlavour}, or
+     *         none while a clear is yet to reach the database
+     */
+    List<Engagement> recent(String excludedFlavour, int limit) {
+        final List<Engagement> result = new ArrayList<>(limit);
+        if (clearing.get() > 0) return result;
+        
+        try (final Cursor cursor = database.getRecentEngagements(excludedFlavour, limit)) {
+            while (cursor.moveToNext()) {
+                result.add(new Engagement(
+                        cursor.getString(cursor.getColumnIndex(DECISION_POINT.toString())),
+                        cursor.getString(cursor.getColumnIndex(FLAVOUR.toString()))));
+            }
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed reading recent engagements", e);
+        }
+        
+        return result;
+    }
+    
     void clear() {
         Log.v(TAG, "Clearing stored engagements");
-        database.removeEngagementRows();
+        
+        clearing.incrementAndGet();
+        memory.evictAll();
+        writer.execute(() -> {
+            try {
+                database.removeEngagementRows();
+            } finally {
+                clearing.decrementAndGet();
+            }
+        });
+    }
+    
+    /**
+     * Converts rows stored as Base64 before version 6 of the database on the
+     * writer thread, the first time the store gets used.
+     */
+    private void migrate() {
+        if (!migrating.compareAndSet(false, true)) return;
+        
+        writer.execute(() -> {
+            int count = 0;
+            try (final Cursor cursor = database.getBase64Engagements()) {
+                while (cursor.moveToNext()) {
+                    final byte[] raw = Base64.decode(
+                            cursor.getBlob(cursor.getColumnIndex(RESPONSE.toString())),
+                            Base64.DEFAULT);
+                    final byte[] compressed = compress(raw);
+                    
+                    if (database.updateEngagementResponse(
+                            cursor.getLong(cursor.getColumnIndex(ID.toString())),
+                            (compressed != null) ? compressed : raw,
+                            (compressed != null) ? ENCODING_GZIP : ENCODING_UTF8)) {
+                        count++;
+                    }
+                }
+            } catch (IllegalArgumentException | SQLiteException e) {
+                Log.w(TAG, "Failed converting stored engagements", e);
+            }
+            
+            if (count > 0) Log.d(TAG, "Converted " + count + " stored engagements");
+        });
+    }
+    
+    /**
+     * @return the compressed {@code raw} bytes, or {@code null} if they are
+     *         too small to be worth compressing
+     */
+    @Nullable
+    static byte[] compress(byte[] raw) {
+        if (raw.length <= COMPRESSION_THRESHOLD) return null;
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 2);
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            // should never happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        
+        return (bytes.size() < raw.length) ? bytes.toByteArray() : null;
+    }
+    
+    static String decode(byte[] stored, int encoding) throws IOException {
+        switch (encoding) {
+            case ENCODING_BASE64:
+                return new String(Base64.decode(stored, Base64.DEFAULT), UTF8);
+                
+            case ENCODING_UTF8:
+                return new String(stored, UTF8);
+                
+            case ENCODING_GZIP:
+                try (final GZIPInputStream gzip = new GZIPInputStream(
+                        new ByteArrayInputStream(stored))) {
+                    final ByteArrayOutputStream bytes =
+                            new ByteArrayOutputStream(stored.length * 4);
+                    final byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = gzip.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, read);
+                    }
+                    return bytes.toString("UTF-8");
+                }
+                
+            default:
+                throw new IOException("Unknown encoding " + encoding);
+        }
+    }
+    
+    private static String key(String name, String flavour) {
+        return name + '@' + flavour;
+    }
+    
+    /**
+     * Deep copies {@code json}, so that responses handed out can be modified
+     * without affecting what is held in memory.
+     */
+    private static JSONObject copy(JSONObject json) {
+        final JSONObject copy = new JSONObject();
+        final Iterator<String> keys = json.keys();
+        try {
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                copy.put(key, copyValue(json.opt(key)));
+            }
+        } catch (JSONException e) {
+            // should never happen as the values came from a JSONObject
+            throw new IllegalStateException(e);
+        }
+        return copy;
+    }
+    
+    private static Object copyValue(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            return copy((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            final JSONArray copy = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                copy.put(copyValue(array.opt(i)));
+            }
+            return copy;
+        } else {
+            return value;
+        }
+    }
+    
+    private static final class Entry {
+        
+        final long cached;
+        final JSONObject json;
+        
+        Entry(long cached, JSONObject json) {
+            this.cached = cached;
+            this.json = json;
+        }
     }
     
     private static final class CleanUp implements Runnable {
@@ -28,12 +28,38 @@ import org.json.JSONObject;
 /**
  * Constructs an engagement {@link Event}.
  */
-public class Engagement<T extends Engagement<T>> extends Event<T> {
+public class Engagement<T extends Engagement<T>> extends Event<T> implements Cloneable {
     
     private static final String DEFAULT_FLAVOUR = "engagement";
     
+    /**
+     * How an engagement is served when a response for it has been cached.
+     */
+    public enum Mode {
+        
+        /**
+         * Waits for the response from Engage, falling back to the cache only
+         * if the request fails.
+         */
+        NETWORK_FIRST,
+        /**
+         * Completes straight away with the cached response, if there is one,
+         * and refreshes the cache from Engage in the background.
+         */
+        STALE_WHILE_REVALIDATE,
+        /**
+         * Same as {@link #STALE_WHILE_REVALIDATE}, but completes a second
+         * time with the response from Engage when that differs from the
+         * cached one.
+         */
+        STALE_WHILE_REVALIDATE_NOTIFY
+    }
+    
     final String flavour;
     
+    @Nullable
+    private Mode mode;
+    
     private Response<JSONObject> response;
     private int statusCode;
     private boolean cached;
@@ -100,11 +126,38 @@ public class Engagement<T extends Engagement<T>> extends Event<T> {
         return super.putParam(key, value);
     }
     
+    /**
+     * Sets how this engagement should be served when a response for it has
+     * been cached, overriding
+     * {@link com.deltadna.android.sdk.helpers.Settings#setEngageMode(String, Mode)}.
+     *
+     * @param mode the mode, or {@code null} to use the one set for the
+     *             decision point
+     *
+     * @return this {@link Engagement} instance
+     */
+    public T setMode(@Nullable Mode mode) {
+        this.mode = mode;
+        return (T) this;
+    }
+    
+    /**
+     * Gets how this engagement should be served when a response for it has
+     * been cached.
+     *
+     * @return the mode, or {@code null} if not set on this engagement
+     */
+    @Nullable
+    public Mode getMode() {
+        return mode;
+    }
+    
     @Override
     public String toString() {
         return new Objects.ToStringHelper(this)
                 .add("decisionPoint", name)
                 .add("flavour", flavour)
+                .add("mode", mode)
                 .add("params", params)
                 .add("response", response)
                 .toString();
@@ -189,15 +242,36 @@ public class Engagement<T extends Engagement<T>> extends Event<T> {
         return name + '@' + flavour;
     }
     
+    /**
+     * Creates a shallow copy of this engagement, of the same class, which
+     * can take a response without affecting this instance.
+     */
+    @SuppressWarnings("unchecked")
+    T copy() {
+        try {
+            return (T) clone();
+        } catch (CloneNotSupportedException e) {
+            // should never happen as this class is cloneable
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    @Nullable
+    Response<JSONObject> getResponse() {
+        return response;
+    }
+    
     T setResponse(Response<JSONObject> response) {
         this.response = response;
         // unpack response for easy access
         this.statusCode = response.code;
         this.cached = response.cached;
 
+        this.json = null;
+
         // Reformat RemoteConfig response to look more like a DDNA DescisionPoint response
         try {
-            if (response.body.has("configs")){
+            if (response.body != null && response.body.has("configs")){
                 JSONObject configs = response.body.getJSONObject("configs");
                 if (configs.has("settings")){
                     this.json  = configs.getJSONObject("settings");
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import android.util.Log;
+
+import com.deltadna.android.sdk.helpers.Settings;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor owned by the SDK for evaluating event triggers and dispatching
+ * engagements, so that they do not queue up behind unrelated work on the
+ * executors shared by {@link android.os.AsyncTask}.
+ * <p>
+ * Work runs in order on a single named thread with a bounded queue by
+ * default, unless an app owned {@link Executor} has been set through
+ * {@link Settings#setEvaluationExecutor(Executor)}. Work which does not fit
+ * in the queue, or which the app owned executor rejects, is counted and
+ * rejected with a {@link RejectedExecutionException} to the caller. It never
+ * runs on the calling thread, as that would reorder it against what is
+ * already queued.
+ * <p>
+ * The depth of the queue is tracked in either case.
+ */
+final class EvaluationExecutor implements Executor {
+    
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EvaluationExecutor.class.getSimpleName();
+    private static final int KEEP_ALIVE = 30;
+    
+    private final Settings settings;
+    
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    
+    private ThreadPoolExecutor pool;
+    
+    EvaluationExecutor(Settings settings) {
+        this.settings = settings;
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        final Runnable task = new Task(command);
+        
+        final int queued = depth.incrementAndGet();
+        int max;
+        while (queued > (max = peak.get())) {
+            if (peak.compareAndSet(max, queued)) {
+                Log.d(TAG, "Queue depth reached " + queued);
+                break;
+            }
+        }
+        
+        final Executor executor = settings.getEvaluationExecutor();
+        try {
+            ((executor != null) ? executor : pool()).execute(task);
+        } catch (RejectedExecutionException e) {
+            depth.decrementAndGet();
+            rejected.incrementAndGet();
+            Log.w(TAG, "Queue full, rejecting task");
+            
+            throw e;
+        }
+    }
+    
+    /**
+     * @return the number of tasks which have been submitted but not started
+     */
+    int depth() {
+        return depth.get();
+    }
+    
+    /**
+     * @return the highest number of tasks which have been waiting at once
+     */
+    int peak() {
+        return peak.get();
+    }
+    
+    /**
+     * @return the number of tasks which have completed
+     */
+    long executed() {
+        return executed.get();
+    }
+    
+    /**
+     * @return the number of tasks which have been rejected
+     */
+    long rejected() {
+        return rejected.get();
+    }
+    
+    private synchronized Executor pool() {
+        if (pool == null) {
+            final AtomicInteger count = new AtomicInteger();
+            
+            pool = new ThreadPoolExecutor(
+                    settings.getEvaluationThreads(),
+                    settings.getEvaluationThreads(),
+                    KEEP_ALIVE,
+                    TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(settings.getEvaluationQueueSize()),
+                    r -> {
+                        final Thread thread = new Thread(
+                                r,
+                                EvaluationExecutor.class.getSimpleName()
+                                        + '-'
+                                        + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        
+        return pool;
+    }
+    
+    private final class Task implements Runnable {
+        
+        private final Runnable command;
+        
+        Task(Runnable command) {
+            this.command = command;
+        }
+        
+        @Override
+        public void run() {
+            depth.decrementAndGet();
+            try {
+                command.run();
+            } finally {
+                executed.incrementAndGet();
+            }
+        }
+    }
+}
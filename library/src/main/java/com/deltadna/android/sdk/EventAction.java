@@ -16,11 +16,13 @@
 
 package com.deltadna.android.sdk;
 
-import android.os.AsyncTask;
+import android.util.Log;
 
 import com.deltadna.android.sdk.helpers.Settings;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * An action associated with an event on which {@link EventActionHandler}s can
@@ -35,8 +37,8 @@ public class EventAction {
 
     static final EventAction EMPTY = new EventAction(
             new Event("noop"),
-            Collections.unmodifiableSortedSet(new TreeSet<>()),
-            null, null) { // null is fine here as it'll never be referenced
+            EventTriggerTable.NONE,
+            null, null, null) { // null is fine here as it'll never be referenced
 
         @Override
         public EventAction add(EventActionHandler handler) {
@@ -49,19 +51,45 @@ public class EventAction {
     };
 
     private final Event event;
-    private final SortedSet<EventTrigger> triggers;
+    private final EventTrigger[] triggers;
     private final ActionStore store;
+    private final Executor executor;
 
-    private final Set<EventActionHandler> handlers = new LinkedHashSet<>();
+    private Set<EventActionHandler> handlers = Collections.emptySet();
     private final Settings settings;
 
     private EventActionEvaluateCompleteHandler evaluateCompleteHandler = null;
 
-    EventAction(Event event, SortedSet<EventTrigger> triggers, ActionStore store, Settings settings) {
+    EventAction(
+            Event event,
+            SortedSet<EventTrigger> triggers,
+            ActionStore store,
+            Settings settings,
+            Executor executor) {
+
+        this(   event,
+                triggers.toArray(new EventTrigger[triggers.size()]),
+                store,
+                settings,
+                executor);
+    }
+
+    /**
+     * @param triggers  the triggers for the event, ordered by priority
+     * @param executor  the executor to evaluate the triggers on
+     */
+    EventAction(
+            Event event,
+            EventTrigger[] triggers,
+            ActionStore store,
+            Settings settings,
+            Executor executor) {
+
         this.event = event;
         this.triggers = triggers;
         this.store = store;
         this.settings = settings;
+        this.executor = executor;
     }
 
     /**
@@ -71,6 +99,10 @@ public class EventAction {
      * @return this {@link EventAction} instance
      */
     public EventAction add(EventActionHandler<?> handler) {
+        if (handlers.isEmpty()) {
+            handlers = new LinkedHashSet<>();
+        }
+
         handlers.add(handler);
         return this;
     }
@@ -91,13 +123,76 @@ public class EventAction {
      * associated for the event.
      */
     public void run() {
-        new EvaluateTriggersAsyncTask().execute();
+        // nothing to evaluate or to report back for events without triggers
+        if (!hasTriggers() && evaluateCompleteHandler == null) return;
+
+        try {
+            executor.execute(new EvaluateTriggers());
+        } catch (RejectedExecutionException e) {
+            Log.w(BuildConfig.LOG_TAG, "Failed to evaluate triggers for " + event, e);
+        }
+    }
+
+    /**
+     * Combines the actions for a burst of recorded events, so that the
+     * triggers for all of them get evaluated together in one task.
+     *
+     * @param events    the events
+     * @param triggers  the triggers for each of the {@code events}, ordered
+     *                  by priority
+     */
+    static EventAction combine(
+            Event[] events,
+            EventTrigger[][] triggers,
+            ActionStore store,
+            Settings settings,
+            Executor executor) {
+
+        return new Combined(events, triggers, store, settings, executor);
+    }
+
+    boolean hasTriggers() {
+        return triggers.length > 0;
     }
 
-    private class EvaluateTriggersAsyncTask extends AsyncTask<Void, Void, Void> {
+    void evaluate(Set<EventActionHandler> handlers) {
+        evaluate(event, triggers, handlers);
+    }
+
+    final void evaluate(
+            Event event,
+            EventTrigger[] triggers,
+            Set<EventActionHandler> handlers) {
+
+        boolean handledImageMessage = false;
+        for (final EventTrigger trigger : triggers) {
+            if (trigger.evaluate(event)) {
+                for (final EventActionHandler handler : handlers) {
+                    if (handledImageMessage && "imageMessage".equals(trigger.getAction()))
+                        break;
+
+                    boolean handled = handler.handle(trigger, store);
+                    if (handled) {
+                        if (!settings.isMultipleActionsForEventTriggerEnabled()) {
+                            break;
+                        }
+                        if ("imageMessage".equals(trigger.getAction())) {
+                            handledImageMessage = true;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (evaluateCompleteHandler != null) {
+            evaluateCompleteHandler.onComplete(event);
+        }
+    }
+
+    private final class EvaluateTriggers implements Runnable {
 
         @Override
-        protected Void doInBackground(Void... voids) {
+        public void run() {
             Set<EventActionHandler> modifiedHandlerSet = new LinkedHashSet<>(handlers);
 
             if (settings != null) {
@@ -108,30 +203,42 @@ public class EventAction {
                     modifiedHandlerSet.add(settings.getDefaultImageMessageHandler());
                 }
             }
-            boolean handledImageMessage = false;
-            for (final EventTrigger trigger : triggers) {
-                if (trigger.evaluate(event)) {
-                    for (final EventActionHandler handler : modifiedHandlerSet) {
-                        if (handledImageMessage && "imageMessage".equals(trigger.getAction()))
-                            break;
 
-                        boolean handled = handler.handle(trigger, store);
-                        if (handled) {
-                            if (!settings.isMultipleActionsForEventTriggerEnabled()) {
-                                break;
-                            }
-                            if ("imageMessage".equals(trigger.getAction())) {
-                                handledImageMessage = true;
-                            }
-                            break;
-                        }
-                    }
-                }
+            evaluate(modifiedHandlerSet);
+        }
+    }
+
+    private static final class Combined extends EventAction {
+
+        private final Event[] events;
+        private final EventTrigger[][] triggers;
+
+        Combined(
+                Event[] events,
+                EventTrigger[][] triggers,
+                ActionStore store,
+                Settings settings,
+                Executor executor) {
+
+            super(null, EventTriggerTable.NONE, store, settings, executor);
+
+            this.events = events;
+            this.triggers = triggers;
+        }
+
+        @Override
+        boolean hasTriggers() {
+            for (final EventTrigger[] eventTriggers : triggers) {
+                if (eventTriggers.length > 0) return true;
             }
-            if (evaluateCompleteHandler != null) {
-                evaluateCompleteHandler.onComplete(event);
+            return false;
+        }
+
+        @Override
+        void evaluate(Set<EventActionHandler> handlers) {
+            for (int i = 0; i < events.length; i++) {
+                evaluate(events[i], triggers[i], handlers);
             }
-            return null;
         }
     }
 
@@ -16,15 +16,16 @@
 
 package com.deltadna.android.sdk;
 
-import android.os.AsyncTask;
 import androidx.annotation.Nullable;
 
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import com.deltadna.android.sdk.helpers.ClientInfo;
+import com.deltadna.android.sdk.helpers.Objects;
+import com.deltadna.android.sdk.helpers.Settings;
 import com.deltadna.android.sdk.listeners.EngageListener;
 import com.deltadna.android.sdk.listeners.RequestListener;
+import com.deltadna.android.sdk.net.BodyWriter;
 import com.deltadna.android.sdk.net.CancelableRequest;
 import com.deltadna.android.sdk.net.NetworkManager;
 import com.deltadna.android.sdk.net.Response;
@@ -32,7 +33,16 @@ import com.deltadna.android.sdk.util.CloseableIterator;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -57,24 +67,45 @@ final class EventHandler {
     private final EventStore events;
     private final EngageStore engagements;
     private final NetworkManager network;
+    private final Settings settings;
+    private final Executor evaluation;
+    private final UploadBreaker breaker;
+    /**
+     * Engagements waiting on an in flight request, keyed by the request.
+     */
+    private final Map<String, List<HandleEngagementTask<?>>> engaging =
+            new HashMap<>();
     
     @Nullable
     private ScheduledFuture<?> uploadTask;
     @Nullable
+    private ScheduledUpload scheduled;
+    private long interval;
+    @Nullable
     private Future<?> upload;
     
     EventHandler(
             EventStore events,
             EngageStore engagements,
-            NetworkManager network) {
+            NetworkManager network,
+            Settings settings,
+            Executor evaluation,
+            UploadBreaker breaker) {
         
         this.events = events;
         this.engagements = engagements;
         this.network = network;
+        this.settings = settings;
+        this.evaluation = evaluation;
+        this.breaker = breaker;
     }
     
     /**
      * Starts automatic background event uploads.
+     * <p>
+     * Uploads are repeated every {@code repeatRate}, unless the
+     * {@link UploadBreaker} has opened in which case the next one waits for
+     * its backoff instead.
      * 
      * @param startDelay    start delay in seconds
      * @param repeatRate    repeat rate in seconds
@@ -83,10 +114,11 @@ final class EventHandler {
         cancelUploadTask();
         
         Log.d(TAG, "Starting scheduled event uploads");
-        uploadTask = executor.scheduleWithFixedDelay(
-                new Upload(),
+        interval = TimeUnit.SECONDS.toMillis(repeatRate);
+        scheduled = new ScheduledUpload();
+        uploadTask = executor.schedule(
+                scheduled,
                 startDelay,
-                repeatRate,
                 TimeUnit.SECONDS);
     }
     
@@ -120,19 +152,51 @@ final class EventHandler {
         }
     }
     
+    /**
+     * Lets the next upload probe Collect straight away if uploads have been
+     * paused, as the failures may have been down to the previous network.
+     */
+    synchronized void onConnectivityChanged() {
+        breaker.connectivityChanged(System.currentTimeMillis());
+        
+        if (    scheduled != null
+                && uploadTask != null
+                && breaker.state() == UploadCircuit.OPEN
+                // a running upload will reschedule itself without delay
+                && uploadTask.cancel(false)) {
+            Log.d(TAG, "Rescheduling event upload after connectivity change");
+            uploadTask = executor.schedule(scheduled, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+    
     /**
      * Handles a collect {@code event} by placing into the queue,
      * to be sent at a later time.
+     *
+     * @param event the serialised event, encoded as UTF-8
      */
-    void handleEvent(JSONObject event) {
-        events.add(event.toString());
+    void handleEvent(byte[] event) {
+        events.add(event);
+    }
+    
+    /**
+     * Handles a burst of collect events by placing them into the queue
+     * together, to be sent at a later time.
+     *
+     * @param burst the serialised events, encoded as UTF-8
+     */
+    void handleEvents(List<byte[]> burst) {
+        events.add(burst);
     }
     
     /**
      * Handles an engage {@code event}.
+     * <p>
+     * Identical requests made while one is already in flight wait for its
+     * response instead of making another request.
      */
 
-    public class HandleEngagementTask<E extends Engagement> extends AsyncTask<Void , Void, Void> {
+    public class HandleEngagementTask<E extends Engagement> implements Runnable {
 
         final E engagement;
         final EngageListener<E> listener;
@@ -141,6 +205,13 @@ final class EventHandler {
         final int engageApiVersion;
         String sdkVersion;
         String platform;
+        
+        /**
+         * Cached response which the listener has already been completed
+         * with, while the request refreshes the cache.
+         */
+        @Nullable
+        private String stale;
 
         public HandleEngagementTask(
                                     final E engagement,
@@ -161,14 +232,14 @@ final class EventHandler {
 
 
         @Override
-        protected Void doInBackground(Void... voids) {
+        public void run() {
             final JSONObject event;
             try {
 
                 // This is all new, the remote config request body is different from DDNA Engage
                 JSONObject userParams ;
                 if (!engagement.params.isEmpty()) {
-                    userParams = engagement.params.json;
+                    userParams = engagement.params.toJson();
                 }
                 else {
                     userParams = new JSONObject();
@@ -186,72 +257,202 @@ final class EventHandler {
                 throw new IllegalArgumentException(e);
             }
 
+            if (mode() != Engagement.Mode.NETWORK_FIRST) {
+                final JSONObject cached = engagements.get(engagement);
+                if (cached != null) {
+                    stale = cached.toString();
+                    try {
+                        engagement.setResponse(new Response<>(
+                                200,
+                                true,
+                                null,
+                                cached.put("isCachedResponse", true),
+                                null));
+                    } catch (JSONException e) {
+                        // should never happen with a boolean value
+                        throw new IllegalStateException(e);
+                    }
+                    
+                    Log.d(TAG, "Using cached response while revalidating " + engagement);
+                    mainThreadTaskHandler.post(() -> listener.onCompleted(engagement));
+                }
+            }
+
+            // the flavour is not part of the request but decides how it gets cached
+            final String key = engagement.getDecisionPointAndFlavour() + ' ' + event;
+            synchronized (engaging) {
+                final List<HandleEngagementTask<?>> waiting = engaging.get(key);
+                if (waiting != null) {
+                    Log.v(TAG, "Waiting on the in flight request for " + engagement);
+                    waiting.add(this);
+                    return;
+                }
+                
+                final List<HandleEngagementTask<?>> tasks = new ArrayList<>(1);
+                tasks.add(this);
+                engaging.put(key, tasks);
+            }
+
             network.engage(event, new RequestListener<JSONObject>() {
                 @Override
                 public void onCompleted(Response<JSONObject> result) {
-                    engagement.setResponse(result);
-                    if (engagement.isSuccessful()) {
-                        engagements.put(engagement);
-                    } else if (engagement.isCacheCandidate() ){
-                        Log.w(TAG, String.format(
-                                Locale.US,
-                                "Not caching %s due to failure, checking cache",
-                                engagement));
-
-                        final JSONObject cached = engagements.get(engagement);
-                        if (cached != null) {
-                            try {
-                                engagement.setResponse(new Response<>(
-                                        engagement.getStatusCode(),
-                                        true,
-                                        null,
-                                        cached.put("isCachedResponse", true),
-                                        engagement.getError()));
-
-                                Log.d(  TAG,
-                                        "Using cached response " + engagement.getJson());
-                            } catch (JSONException ignored) {}
-                        }
-                    } else {
-                        Log.w(TAG, String.format(
-                                Locale.US,
-                                "Not caching %s due to failure, and not checking cache due to client error response",
-                                engagement));
-
+                    final List<HandleEngagementTask<?>> tasks = waiters(key);
+                    for (int i = 0; i < tasks.size(); i++) {
+                        tasks.get(i).onCompleted(
+                                (i == 0) ? result : copy(result),
+                                i == 0);
                     }
-                    listener.onCompleted(engagement);
                 }
 
                 @Override
                 public void onError(Throwable t) {
-                    // This needs to be run off the main thread, as it involves blocking database
-                    // operations that can cause ANRs.
-                    executor.execute(() -> {
-                        final JSONObject cached = engagements.get(engagement);
-                        if (cached != null) {
-                            try {
-                                engagement.setResponse(new Response<>(
-                                        200,
-                                        true,
-                                        null,
-                                        cached.put("isCachedResponse", true),
-                                        null));
+                    for (final HandleEngagementTask<?> task : waiters(key)) {
+                        task.onError(t);
+                    }
+                }
+            }, "config".equalsIgnoreCase(engagement.name) && "internal".equalsIgnoreCase(engagement.flavour));
+        }
+        
+        /**
+         * @param owner whether this task made the request, in which case the
+         *              response will be cached
+         */
+        void onCompleted(Response<JSONObject> result, boolean owner) {
+            if (stale != null) {
+                revalidated(result, owner);
+                return;
+            }
+            
+            engagement.setResponse(result);
+            if (engagement.isSuccessful()) {
+                if (owner) engagements.put(engagement);
+            } else if (engagement.isCacheCandidate() ){
+                Log.w(TAG, String.format(
+                        Locale.US,
+                        "Not caching %s due to failure, checking cache",
+                        engagement));
+
+                final JSONObject cached = engagements.get(engagement);
+                if (cached != null) {
+                    try {
+                        engagement.setResponse(new Response<>(
+                                engagement.getStatusCode(),
+                                true,
+                                null,
+                                cached.put("isCachedResponse", true),
+                                engagement.getError()));
+
+                        Log.d(  TAG,
+                                "Using cached response " + engagement.getJson());
+                    } catch (JSONException ignored) {}
+                }
+            } else {
+                Log.w(TAG, String.format(
+                        Locale.US,
+                        "Not caching %s due to failure, and not checking cache due to client error response",
+                        engagement));
 
-                                Log.d(TAG, "Using cached response " + engagement.getJson());
+            }
+            listener.onCompleted(engagement);
+        }
 
-                                mainThreadTaskHandler.post(() -> listener.onCompleted(engagement));
-                            } catch (JSONException e) {
-                                mainThreadTaskHandler.post(() -> listener.onError(e));
-                            }
-                        } else {
-                            mainThreadTaskHandler.post(() -> listener.onError(t));
-                        }
-                    });
+        void onError(Throwable t) {
+            if (stale != null) {
+                Log.w(TAG, "Failed to revalidate " + engagement, t);
+                return;
+            }
+            
+            // This needs to be run off the main thread, as it involves blocking database
+            // operations that can cause ANRs.
+            executor.execute(() -> {
+                final JSONObject cached = engagements.get(engagement);
+                if (cached != null) {
+                    try {
+                        engagement.setResponse(new Response<>(
+                                200,
+                                true,
+                                null,
+                                cached.put("isCachedResponse", true),
+                                null));
+
+                        Log.d(TAG, "Using cached response " + engagement.getJson());
+
+                        mainThreadTaskHandler.post(() -> listener.onCompleted(engagement));
+                    } catch (JSONException e) {
+                        mainThreadTaskHandler.post(() -> listener.onError(e));
+                    }
+                } else {
+                    mainThreadTaskHandler.post(() -> listener.onError(t));
                 }
-            }, "config".equalsIgnoreCase(engagement.name) && "internal".equalsIgnoreCase(engagement.flavour));
-            return null;
+            });
+        }
+        
+        private Engagement.Mode mode() {
+            if (engagement.getMode() != null) {
+                return engagement.getMode();
+            }
+            
+            final Engagement.Mode mode = settings.getEngageMode(engagement.name);
+            return (mode != null) ? mode : Engagement.Mode.NETWORK_FIRST;
+        }
+        
+        /**
+         * Refreshes the cache once the request made after completing with a
+         * stale response has come back, and completes the listener again with
+         * a copy of the engagement if asked to and the response has changed.
+         */
+        private void revalidated(Response<JSONObject> result, boolean owner) {
+            if (!result.isSuccessful() || result.body == null) {
+                Log.w(TAG, String.format(
+                        Locale.US,
+                        "Failed to revalidate %s due to %s",
+                        engagement,
+                        result));
+                return;
+            }
+            
+            // the listener may still be using the engagement it was completed with
+            @SuppressWarnings("unchecked")
+            final E fresh = (E) engagement.copy();
+            fresh.setResponse(result);
+            if (owner) engagements.put(fresh);
+            
+            //noinspection ConstantConditions
+            if (    mode() == Engagement.Mode.STALE_WHILE_REVALIDATE_NOTIFY
+                    && !fresh.getJson().toString().equals(stale)) {
+                Log.d(TAG, "Completing again with revalidated " + engagement);
+                
+                mainThreadTaskHandler.post(() -> listener.onCompleted(fresh));
+            }
+        }
+    }
+    
+    private List<HandleEngagementTask<?>> waiters(String key) {
+        synchronized (engaging) {
+            return engaging.remove(key);
+        }
+    }
+    
+    /**
+     * Copies the body of a response for another waiting engagement, so that
+     * listeners modifying theirs do not affect each other.
+     */
+    private static Response<JSONObject> copy(Response<JSONObject> response) {
+        if (response.body == null) return response;
+        
+        try {
+            return new Response<>(
+                    response.code,
+                    response.cached,
+                    response.bytes,
+                    new JSONObject(response.body.toString()),
+                    response.error);
+        } catch (JSONException e) {
+            // should never happen as the body is valid JSON
+            throw new IllegalStateException(e);
         }
     }
+    
     <E extends Engagement> void handleEngagement(
             final E engagement,
             final EngageListener<E> listener,
@@ -260,7 +461,12 @@ final class EventHandler {
             final int engageApiVersion,
             String sdkVersion,
             String platform) {
-            new HandleEngagementTask<E>(engagement, listener, userId, sessionId, engageApiVersion, sdkVersion, platform).execute();
+        try {
+            evaluation.execute(new HandleEngagementTask<E>(engagement, listener, userId, sessionId, engageApiVersion, sdkVersion, platform));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Failed to dispatch " + engagement, e);
+            mainThreadTaskHandler.post(() -> listener.onError(e));
+        }
     }
         
 
@@ -275,8 +481,42 @@ final class EventHandler {
             
             uploadTask = null;
         }
+        scheduled = null;
     }
     
+    /**
+     * Scheduled {@link Upload}, which schedules the next one after it has
+     * run for as long as it has not been cancelled.
+     */
+    private final class ScheduledUpload implements Runnable {
+        
+        @Override
+        public void run() {
+            new Upload().run();
+            
+            synchronized (EventHandler.this) {
+                if (scheduled == this) {
+                    uploadTask = executor.schedule(
+                            this,
+                            breaker.delay(System.currentTimeMillis(), interval),
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Drains the event store by uploading successive batches, keeping up to
+     * {@link Settings#getEventUploadWindow()} of them in flight.
+     * <p>
+     * Each batch acknowledges only its own events once it has been uploaded.
+     * Draining stops at the first one which fails, but the batches already
+     * in flight are left to complete, so that only the events of the failed
+     * batches get retried on the next upload instead of being sent twice.
+     * <p>
+     * Nothing gets read from the store while the {@link UploadBreaker} is
+     * open, and only a single batch is kept in flight while it is probing.
+     */
     private final class Upload implements Runnable {
         
         @Override
@@ -288,96 +528,228 @@ final class EventHandler {
                 return;
             }
 
-            final CloseableIterator<EventStoreItem> items = events.items();
-            final AtomicReference<CloseableIterator.Mode> clearEvents =
-                    new AtomicReference<>(CloseableIterator.Mode.ALL);
-
+            if (!breaker.allow(System.currentTimeMillis())) {
+                Log.v(TAG, "Upload circuit is open, skipping event upload");
+                return;
+            }
+            
+            final int window = (breaker.state() == UploadCircuit.HALF_OPEN)
+                    ? 1
+                    : settings.getEventUploadWindow();
+            final Deque<BatchUpload> uploads = new ArrayDeque<>(window);
+            
+            EventStore.Batch previous = null;
+            boolean draining = true;
             try {
-                if (!items.hasNext()) {
-                    Log.d(TAG, "No stored events to upload");
-
-                    clearEvents.set(CloseableIterator.Mode.NONE);
-                }
-
-                final StringBuilder builder = new StringBuilder("{\"eventList\":[");
-                int count = 0;
-                while (items.hasNext()) {
-                    final EventStoreItem event = items.next();
-
-                    if (event.available()) {
-                        final String content = event.get();
-                        if (content != null) {
-                            builder.append(content);
-                            builder.append(',');
-
-                            count++;
+                while (true) {
+                    while (draining && uploads.size() < window) {
+                        final EventStore.Batch items = (previous == null)
+                                ? events.items()
+                                : events.items(previous);
+                        previous = items;
+                        
+                        final BatchUpload upload = send(items);
+                        if (upload == null) {
+                            draining = false;
                         } else {
-                            Log.w(TAG, "Failed retrieving event, skipping");
+                            uploads.add(upload);
+                            draining = !upload.partial && upload.request != null;
                         }
-                    } else {
-                        Log.w(TAG, "Stored event not available, pausing");
-                        clearEvents.set(CloseableIterator.Mode.UP_TO_CURRENT);
-                        break;
+                    }
+                    
+                    final BatchUpload upload = uploads.poll();
+                    if (upload == null) break;
+                    
+                    final CloseableIterator.Mode mode = upload.await();
+                    upload.items.close(mode);
+                    
+                    if (upload.failed) {
+                        breaker.failed(System.currentTimeMillis());
+                    } else if (upload.request != null) {
+                        breaker.succeeded();
+                    }
+                    
+                    if (mode == CloseableIterator.Mode.NONE) {
+                        draining = false;
                     }
                 }
-                if (builder.charAt(builder.length() - 1) == ',') {
-                    builder.deleteCharAt(builder.length() - 1);
-                }
-                builder.append("]}");
-
-                JSONObject payload = null;
-                try {
-                    payload = new JSONObject(builder.toString());
-                } catch (JSONException e) {
-                    Log.w(TAG, e);
-
-                    clearEvents.set(CloseableIterator.Mode.NONE);
-                }
-
-                Log.d(TAG, "Uploading " + count + " events");
-                final CountDownLatch latch = new CountDownLatch(1);
-                final CancelableRequest request = network.collect(
-                        payload,
-                        new RequestListener<Void>() {
-                            @Override
-                            public void onCompleted(Response<Void> result) {
-                                if (result.isSuccessful()) {
-                                    Log.d(TAG, "Successfully uploaded events");
-                                } else {
-                                    Log.w(TAG, "Failed to upload events due to " + result);
-                                    if (result.code == 400) {
-                                        Log.w(TAG, "Wiping event store due to unrecoverable data");
-                                        clearEvents.set(CloseableIterator.Mode.ALL);
-                                    }
-                                }
-
-                                latch.countDown();
-                            }
-
-                            @Override
-                            public void onError(Throwable t) {
-                                Log.w(TAG,
-                                        "Failed to upload events, will retry later",
-                                        t);
-
-                                clearEvents.set(CloseableIterator.Mode.NONE);
-                                latch.countDown();
-                            }
-                        });
-
-                try {
-                    latch.await();
-                } catch (InterruptedException e) {
-                    Log.w(TAG, "Cancelling event upload", e);
-
-                    clearEvents.set(CloseableIterator.Mode.NONE);
-                    request.cancel();
-                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Cancelling event upload", e);
+                
+                cancel(uploads);
             } finally {
                 Log.v(TAG, "Finished event upload");
-                items.close(clearEvents.get());
             }
         }
+        
+        private void cancel(Deque<BatchUpload> uploads) {
+            BatchUpload upload;
+            while ((upload = uploads.poll()) != null) {
+                if (upload.request != null) upload.request.cancel();
+                upload.items.close(CloseableIterator.Mode.NONE);
+            }
+        }
+    }
+    
+    /**
+     * Upload of a single batch of events, which keeps track of how the batch
+     * should be closed once the request has completed.
+     */
+    private final class BatchUpload implements RequestListener<Void> {
+        
+        final EventStore.Batch items;
+        final boolean partial;
+        
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final AtomicReference<CloseableIterator.Mode> mode;
+        
+        /**
+         * Request sending the batch, or {@code null} if it had no events.
+         */
+        @Nullable
+        private CancelableRequest request;
+        /**
+         * Whether Collect could not be reached or failed to accept the batch.
+         */
+        private volatile boolean failed;
+        
+        private BatchUpload(EventStore.Batch items, boolean partial) {
+            this.items = items;
+            this.partial = partial;
+            
+            mode = new AtomicReference<>(partial
+                    ? CloseableIterator.Mode.UP_TO_CURRENT
+                    : CloseableIterator.Mode.ALL);
+        }
+        
+        CloseableIterator.Mode await() throws InterruptedException {
+            latch.await();
+            return mode.get();
+        }
+        
+        @Override
+        public void onCompleted(Response<Void> result) {
+            if (result.isSuccessful()) {
+                Log.d(TAG, "Successfully uploaded events");
+            } else {
+                Log.w(TAG, "Failed to upload events due to " + result);
+                if (result.code == 400) {
+                    Log.w(TAG, "Wiping events due to unrecoverable data");
+                    mode.set(CloseableIterator.Mode.ALL);
+                } else {
+                    mode.set(CloseableIterator.Mode.NONE);
+                    failed = true;
+                }
+            }
+            
+            latch.countDown();
+        }
+        
+        @Override
+        public void onError(Throwable t) {
+            Log.w(TAG, "Failed to upload events, will retry later", t);
+            
+            mode.set(CloseableIterator.Mode.NONE);
+            failed = true;
+            latch.countDown();
+        }
+    }
+    
+    /**
+     * Reads the available events from {@code items} and sends them.
+     *
+     * @return the upload, which will have already completed if there was
+     *         nothing to send, or {@code null} if the request could not be
+     *         made in which case {@code items} will have been closed
+     */
+    @Nullable
+    private BatchUpload send(EventStore.Batch items) {
+        final List<EventStoreItem> batch = new ArrayList<>();
+        boolean partial = false;
+        while (items.hasNext()) {
+            final EventStoreItem event = items.next();
+            
+            if (event.available()) {
+                batch.add(event);
+            } else {
+                Log.w(TAG, "Stored event not available, pausing");
+                partial = true;
+                break;
+            }
+        }
+        
+        final BatchUpload upload = new BatchUpload(items, partial);
+        if (batch.isEmpty()) {
+            Log.d(TAG, "No stored events to upload");
+            
+            // rows passed over as their segments could not be read still
+            // need removing, in order after any batches before this one
+            upload.latch.countDown();
+            return upload;
+        }
+        
+        Log.d(TAG, "Uploading " + batch.size() + " events");
+        try {
+            upload.request = network.collectBulk(new EventsBody(batch), upload);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to upload events, will retry later", e);
+            
+            items.close(CloseableIterator.Mode.NONE);
+            return null;
+        }
+        
+        return upload;
+    }
+    
+    /**
+     * Streams a batch of stored events as a bulk collect payload, copying
+     * each event from the store as it gets written.
+     */
+    static final class EventsBody implements BodyWriter {
+        
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+        private static final byte[] PREFIX = "{\"eventList\":[".getBytes(UTF8);
+        private static final byte[] SUFFIX = "]}".getBytes(UTF8);
+        private static final byte SEPARATOR = ',';
+        
+        private final List<EventStoreItem> items;
+        private final long length;
+        
+        EventsBody(List<EventStoreItem> items) {
+            this.items = items;
+            
+            long total = PREFIX.length + SUFFIX.length;
+            for (final EventStoreItem item : items) {
+                total += item.size();
+            }
+            if (!items.isEmpty()) {
+                total += items.size() - 1;
+            }
+            length = total;
+        }
+        
+        @Override
+        public long length() {
+            return length;
+        }
+        
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            output.write(PREFIX);
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) output.write(SEPARATOR);
+                items.get(i).writeTo(output);
+            }
+            output.write(SUFFIX);
+        }
+        
+        @Override
+        public String toString() {
+            return new Objects.ToStringHelper(this)
+                    .add("items", items.size())
+                    .add("length", length)
+                    .toString();
+        }
     }
 
 }
@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.deltadna.android.sdk.helpers.Settings;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Append-only log of collect events, stored as a sequence of segment files.
+ * <p>
+ * Each record in a segment is a 4 byte big-endian length followed by the
+ * UTF-8 bytes of the event. Events are appended to the active segment, which
+ * is sealed once it reaches {@link #SEGMENT_LIMIT} or before the events are
+ * read for uploading. Sealing registers the segment as a single row in the
+ * {@link DatabaseHelper.Events} table, which serves as the index of segments
+ * so that uploads can select and remove whole segments at a time.
+ * <p>
+ * Rows which pre-date the log refer to files holding a single event without
+ * any framing, and are read back as a segment containing one record.
+ */
+final class EventLog {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EventLog.class.getSimpleName();
+
+    static final String SUFFIX_SEALED = ".seg";
+    static final String SUFFIX_ACTIVE = ".active";
+    static final int SEGMENT_LIMIT = EventStore.EVENTS_LIMIT / 4;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Context context;
+    private final DatabaseHelper db;
+    private final Settings settings;
+    private final String directory;
+
+    @Nullable
+    private Segment active;
+
+    EventLog(
+            Context context,
+            DatabaseHelper db,
+            Settings settings,
+            String directory) {
+
+        this.context = context;
+        this.db = db;
+        this.settings = settings;
+        this.directory = directory;
+    }
+
+    /**
+     * Appends {@code content} to the active segment, rolling over to a new
+     * segment if the limit would be exceeded.
+     *
+     * @param content the content to be appended
+     *
+     * @return {@code true} if the content was appended
+     */
+    synchronized boolean append(byte[] content) {
+        return (append(Collections.singletonList(content)) == 1);
+    }
+
+    /**
+     * Appends {@code contents} in order, writing as many of them as fit into
+     * the active segment at once before rolling over to a new segment.
+     *
+     * @param contents the contents to be appended
+     *
+     * @return the number of leading items from {@code contents} which were
+     *         appended
+     */
+    synchronized int append(List<byte[]> contents) {
+        int start = 0;
+        while (start < contents.size()) {
+            if (    active != null
+                    && active.size + contents.get(start).length > SEGMENT_LIMIT) {
+                seal();
+            }
+
+            if (active == null) {
+                try {
+                    active = Segment.create(
+                            context, chooseLocation(), directory);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed creating segment", e);
+                    return start;
+                }
+            }
+
+            long size = active.size;
+            int end = start;
+            do {
+                size += contents.get(end++).length;
+            } while (   end < contents.size()
+                        && size + contents.get(end).length <= SEGMENT_LIMIT);
+
+            try {
+                active.append(contents.subList(start, end));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed appending to " + active, e);
+                seal();
+                return start;
+            }
+
+            if (active.size >= SEGMENT_LIMIT) {
+                seal();
+            }
+
+            start = end;
+        }
+
+        return start;
+    }
+
+    /**
+     * Gets the number of event bytes held in the active segment which has not
+     * yet been sealed.
+     */
+    synchronized long activeSize() {
+        return (active != null) ? active.size : 0;
+    }
+
+    /**
+     * Seals the active segment, if any, making its events visible to readers.
+     */
+    synchronized void seal() {
+        if (active == null) return;
+
+        final Segment segment = active;
+        active = null;
+
+        segment.close();
+        register(segment.file, segment.location, segment.created, segment.size);
+    }
+
+    /**
+     * Seals any active segments which have been left behind by a previous
+     * process, truncating any partially written record at the end.
+     */
+    synchronized void recover() {
+        for (final Location location : Location.values()) {
+            if (!location.available()) continue;
+
+            final File[] files = location.storage(context, directory).listFiles();
+            if (files == null) continue;
+
+            for (final File file : files) {
+                if (    !file.getName().endsWith(SUFFIX_ACTIVE)
+                        || (active != null && active.file.equals(file))) {
+                    continue;
+                }
+
+                Log.d(TAG, "Recovering " + file);
+                try {
+                    register(
+                            file,
+                            location,
+                            file.lastModified(),
+                            Segment.truncate(file));
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed recovering " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the active segment along with its events.
+     */
+    synchronized void discard() {
+        if (active == null) return;
+
+        active.close();
+        if (!active.file.delete()) {
+            Log.w(TAG, "Failed deleting " + active.file);
+        }
+        active = null;
+    }
+
+    private void register(File file, Location location, long time, long size) {
+        if (size == 0) {
+            if (!file.delete()) {
+                Log.w(TAG, "Failed deleting empty " + file);
+            }
+            return;
+        }
+
+        final String name = sealedName(file.getName());
+        boolean inserted;
+        try {
+            inserted = db.insertEventRow(time, location, name, null, size);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "An error occurred when trying to insert event row into the database", e);
+            inserted = false;
+        }
+
+        /*
+         * The row may already exist if we were interrupted after inserting
+         * it last time around, in which case the rename completes the seal.
+         */
+        final File sealed = new File(file.getParentFile(), name);
+        if (!file.renameTo(sealed)) {
+            Log.w(TAG, "Failed sealing " + file);
+        } else if (!inserted) {
+            Log.w(TAG, "Failed inserting row for " + sealed);
+        } else {
+            Log.v(TAG, String.format(
+                    Locale.US,
+                    "Sealed %s with %d bytes",
+                    sealed,
+                    size));
+        }
+    }
+
+    private Location chooseLocation() {
+        if (settings.isUseInternalStorageForEvents()) {
+            return Location.INTERNAL;
+        } else if (Location.EXTERNAL.available()) {
+            return Location.EXTERNAL;
+        } else {
+            Log.w(TAG, String.format(
+                    Locale.US,
+                    "%s not available, falling back to %s",
+                    Location.EXTERNAL,
+                    Location.INTERNAL));
+            return Location.INTERNAL;
+        }
+    }
+
+    private static String sealedName(String name) {
+        return name.substring(0, name.length() - SUFFIX_ACTIVE.length())
+                + SUFFIX_SEALED;
+    }
+
+    /**
+     * Opens a reader for the events held in {@code file}.
+     */
+    static Reader read(File file) throws IOException {
+        return file.getName().endsWith(SUFFIX_SEALED)
+                ? new Reader(file, true)
+                : new Reader(file, false);
+    }
+
+    /**
+     * Sequential reader over the records of a segment, which only reads the
+     * record headers. The content of the records can be read or copied
+     * afterwards through a {@link Source} for the same file.
+     */
+    static final class Reader implements Closeable {
+
+        private final File file;
+        private final boolean framed;
+        private final long length;
+        private final DataInputStream input;
+
+        private long position;
+        private boolean done;
+
+        /**
+         * Offset of the current record's content within the file.
+         */
+        long offset;
+        /**
+         * Length of the current record's content.
+         */
+        int size;
+
+        private Reader(File file, boolean framed) throws IOException {
+            this.file = file;
+            this.framed = framed;
+
+            length = file.length();
+            input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+        }
+
+        /**
+         * Moves on to the next record.
+         *
+         * @return {@code false} if the end of the segment has been reached
+         */
+        boolean next() {
+            if (done) return false;
+
+            if (!framed) {
+                done = true;
+
+                offset = 0;
+                size = (int) length;
+                return true;
+            }
+
+            try {
+                if (position + HEADER_SIZE > length) {
+                    done = true;
+                    return false;
+                }
+
+                final int record = input.readInt();
+                if (    record < 0
+                        || record > EventStore.EVENTS_LIMIT
+                        || position + HEADER_SIZE + record > length) {
+                    Log.w(TAG, String.format(
+                            Locale.US,
+                            "Invalid record length %d in %s",
+                            record,
+                            file));
+                    done = true;
+                    return false;
+                }
+
+                offset = position + HEADER_SIZE;
+                size = record;
+                position = offset + record;
+
+                long remaining = record;
+                while (remaining > 0) {
+                    final int skipped = input.skipBytes((int) remaining);
+                    if (skipped <= 0) throw new EOFException();
+                    remaining -= skipped;
+                }
+
+                return true;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed reading " + file, e);
+                done = true;
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed closing stream for " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Random access to the content of records in a segment, opened lazily and
+     * shared between the records of the segment.
+     */
+    static final class Source implements Closeable {
+
+        private final File file;
+
+        @Nullable
+        private RandomAccessFile raf;
+        @Nullable
+        private byte[] buffer;
+
+        Source(File file) {
+            this.file = file;
+        }
+
+        synchronized byte[] read(long offset, int size) throws IOException {
+            final byte[] record = new byte[size];
+            open().seek(offset);
+            open().readFully(record);
+            return record;
+        }
+
+        synchronized void copy(
+                long offset,
+                int size,
+                OutputStream output) throws IOException {
+
+            if (buffer == null) buffer = new byte[BUFFER_SIZE];
+
+            open().seek(offset);
+            int remaining = size;
+            while (remaining > 0) {
+                final int read = open().read(
+                        buffer, 0, Math.min(buffer.length, remaining));
+                if (read == -1) throw new EOFException(file.toString());
+
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed closing " + file, e);
+                } finally {
+                    raf = null;
+                }
+            }
+        }
+
+        private RandomAccessFile open() throws IOException {
+            if (raf == null) raf = new RandomAccessFile(file, "r");
+            return raf;
+        }
+    }
+
+    private static final class Segment {
+
+        final File file;
+        final Location location;
+        final long created;
+        final FileOutputStream output;
+
+        long size;
+
+        private Segment(File file, Location location) throws IOException {
+            this.file = file;
+            this.location = location;
+
+            created = System.currentTimeMillis();
+            output = new FileOutputStream(file, true);
+        }
+
+        void append(List<byte[]> contents) throws IOException {
+            int length = 0;
+            for (final byte[] content : contents) {
+                length += HEADER_SIZE + content.length;
+            }
+
+            // single write so that a failure leaves at most one torn record
+            final byte[] records = new byte[length];
+            int position = 0;
+            int appended = 0;
+            for (final byte[] content : contents) {
+                records[position++] = (byte) (content.length >>> 24);
+                records[position++] = (byte) (content.length >>> 16);
+                records[position++] = (byte) (content.length >>> 8);
+                records[position++] = (byte) content.length;
+                System.arraycopy(
+                        content, 0, records, position, content.length);
+                position += content.length;
+                appended += content.length;
+            }
+
+            output.write(records);
+            size += appended;
+        }
+
+        void close() {
+            try {
+                output.getFD().sync();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed syncing " + file, e);
+            }
+
+            try {
+                output.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed closing stream for " + file, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+
+        static Segment create(
+                Context context,
+                Location location,
+                String directory) throws IOException {
+
+            return new Segment(
+                    new File(
+                            location.storage(context, directory),
+                            UUID.randomUUID().toString() + SUFFIX_ACTIVE),
+                    location);
+        }
+
+        /**
+         * Truncates {@code file} after the last complete record.
+         *
+         * @return the number of event bytes held in the file
+         */
+        static long truncate(File file) throws IOException {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                final long length = raf.length();
+                long position = 0;
+                long size = 0;
+
+                while (position + HEADER_SIZE <= length) {
+                    raf.seek(position);
+                    final int record = raf.readInt();
+                    if (    record < 0
+                            || record > EventStore.EVENTS_LIMIT
+                            || position + HEADER_SIZE + record > length) {
+                        break;
+                    }
+
+                    position += HEADER_SIZE + record;
+                    size += record;
+                }
+
+                if (position < length) {
+                    Log.w(TAG, String.format(
+                            Locale.US,
+                            "Truncating %s from %d to %d bytes",
+                            file,
+                            length,
+                            position));
+                    raf.setLength(position);
+                }
+
+                return size;
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Iterator;
+
+/**
+ * Serialises recorded events straight into the bytes which get stored for
+ * uploading to Collect.
+ * <p>
+ * The output matches what {@link JSONObject#toString()} would produce for the
+ * same event, but is written in a single pass from the typed slots of the
+ * {@link Params} into a buffer which is reused by each thread, without
+ * copying the parameters into intermediate objects.
+ */
+final class EventSerializer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_RETAINED = 16 * 1024;
+
+    private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    private EventSerializer() {}
+
+    static byte[] serialize(
+            Event<?> event,
+            @Nullable String sessionId,
+            @Nullable String userId,
+            @Nullable String platform,
+            String sdkVersion) {
+
+        final State state = STATE.get();
+        final StringBuilder out = state.builder;
+        out.setLength(0);
+
+        out.append('{');
+        field(out, "eventName", true);
+        string(out, event.name);
+        field(out, "eventTimestamp", false);
+        out.append('"');
+        Timestamps.append(System.currentTimeMillis(), out);
+        out.append('"');
+        field(out, "eventUUID", false);
+        state.uuid(out);
+        if (sessionId != null) {
+            field(out, "sessionID", false);
+            string(out, sessionId);
+        }
+        if (userId != null) {
+            field(out, "userID", false);
+            string(out, userId);
+        }
+
+        field(out, "eventParams", false);
+        out.append('{');
+        boolean first = true;
+        final Params params = event.params;
+        for (int i = 0; i < params.size(); i++) {
+            final String key = params.keyAt(i);
+            if (key.equals("platform") || key.equals("sdkVersion")) continue;
+
+            first = member(out, params, i, first);
+        }
+        if (platform != null) {
+            first = member(out, "platform", platform, first);
+        }
+        member(out, "sdkVersion", sdkVersion, first);
+        out.append('}');
+
+        out.append('}');
+
+        final byte[] bytes = out.toString().getBytes(UTF8);
+        if (out.capacity() > MAX_RETAINED) {
+            state.builder = new StringBuilder(State.CAPACITY);
+        }
+        return bytes;
+    }
+
+    private static StringBuilder field(
+            StringBuilder out,
+            String name,
+            boolean first) {
+
+        if (!first) out.append(',');
+        return out.append('"').append(name).append("\":");
+    }
+
+    private static boolean member(
+            StringBuilder out,
+            String key,
+            @Nullable Object value,
+            boolean first) {
+
+        if (!first) out.append(',');
+        string(out, key);
+        out.append(':');
+        value(out, value);
+        return false;
+    }
+
+    private static boolean member(
+            StringBuilder out,
+            Params params,
+            int index,
+            boolean first) {
+
+        if (!first) out.append(',');
+        string(out, params.keyAt(index));
+        out.append(':');
+
+        switch (params.kindAt(index)) {
+            case Params.BOOLEAN:
+                out.append(params.longAt(index) != 0);
+                break;
+
+            case Params.INTEGER:
+            case Params.LONG:
+                out.append(params.longAt(index));
+                break;
+
+            case Params.FLOAT:
+                // same as JSONObject.numberToString()
+                final float single = (float) params.doubleAt(index);
+                if (single == (long) single) {
+                    out.append((long) single);
+                } else {
+                    out.append(single);
+                }
+                break;
+
+            case Params.DOUBLE:
+                // same as JSONObject.numberToString()
+                final double value = params.doubleAt(index);
+                if (value == (long) value) {
+                    out.append((long) value);
+                } else {
+                    out.append(value);
+                }
+                break;
+
+            case Params.STRING:
+            case Params.DATE:
+                string(out, (String) params.refAt(index));
+                break;
+
+            case Params.PARAMS:
+                final Params nested = (Params) params.refAt(index);
+                out.append('{');
+                boolean none = true;
+                for (int i = 0; i < nested.size(); i++) {
+                    none = member(out, nested, i, none);
+                }
+                out.append('}');
+                break;
+
+            default:
+                value(out, params.refAt(index));
+        }
+
+        return false;
+    }
+
+    private static void value(StringBuilder out, @Nullable Object value) {
+        if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+
+            out.append('{');
+            boolean first = true;
+            final Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                first = member(out, key, object.opt(key), first);
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) out.append(',');
+                value(out, array.opt(i));
+            }
+            out.append(']');
+        } else if (     value == null
+                || value == JSONObject.NULL
+                || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Number) {
+            try {
+                out.append(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                // should never happen as JSONObject rejects such numbers
+                throw new IllegalArgumentException(e);
+            }
+        } else {
+            string(out, value.toString());
+        }
+    }
+
+    /**
+     * Appends {@code value} as a quoted JSON string, escaping the same
+     * characters as {@link org.json.JSONStringer}.
+     */
+    private static void string(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.append('\\').append(c);
+                    break;
+
+                case '\t':
+                    out.append("\\t");
+                    break;
+
+                case '\b':
+                    out.append("\\b");
+                    break;
+
+                case '\n':
+                    out.append("\\n");
+                    break;
+
+                case '\r':
+                    out.append("\\r");
+                    break;
+
+                case '\f':
+                    out.append("\\f");
+                    break;
+
+                default:
+                    if (c <= 0x1F) {
+                        out.append("\\u00")
+                                .append(HEX[c >> 4])
+                                .append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Per thread buffer and random number generator.
+     * <p>
+     * Event ids are generated from a xoroshiro128+ generator seeded from
+     * {@link SecureRandom}, which avoids contending on the shared generator
+     * behind {@link java.util.UUID#randomUUID()} while keeping 128 bits of
+     * state, so different devices and threads will not repeat ids.
+     */
+    private static final class State {
+
+        static final int CAPACITY = 512;
+
+        StringBuilder builder = new StringBuilder(CAPACITY);
+
+        private long s0;
+        private long s1;
+
+        State() {
+            final SecureRandom seed = new SecureRandom();
+            do {
+                s0 = seed.nextLong();
+                s1 = seed.nextLong();
+            } while (s0 == 0 && s1 == 0);
+        }
+
+        /**
+         * Appends a quoted random (version 4) UUID to {@code out}.
+         */
+        void uuid(StringBuilder out) {
+            final long msb = (next() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+            final long lsb = (next() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+            out.append('"');
+            hex(out, msb >>> 32, 8).append('-');
+            hex(out, msb >>> 16, 4).append('-');
+            hex(out, msb, 4).append('-');
+            hex(out, lsb >>> 48, 4).append('-');
+            hex(out, lsb, 12).append('"');
+        }
+
+        private long next() {
+            final long s0 = this.s0;
+            long s1 = this.s1;
+            final long result = s0 + s1;
+
+            s1 ^= s0;
+            this.s0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+            this.s1 = Long.rotateLeft(s1, 37);
+
+            return result;
+        }
+
+        private static StringBuilder hex(StringBuilder out, long value, int digits) {
+            for (int i = digits - 1; i >= 0; i--) {
+                out.append(HEX[(int) (value >>> (i * 4)) & 0xF]);
+            }
+            return out;
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.deltadna.android.sdk;
 
 import android.content.*;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteException;
 import android.os.AsyncTask;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -28,12 +27,18 @@ import com.deltadna.android.sdk.util.CloseableIterator;
 
 import java.io.*;
 import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.NoSuchElementException;
-import java.util.UUID;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 class EventStore extends BroadcastReceiver {
@@ -45,6 +50,7 @@ class EventStore extends BroadcastReceiver {
     private static final Charset UTF8 = Charset.forName("UTF-8");
     static final int EVENTS_LIMIT = 1024 * 1024;
     private static final int STORE_LIMIT = 5 * EVENTS_LIMIT;
+    private static final int MAX_BATCH = 64;
 
     private static final IntentFilter FILTER;
 
@@ -60,11 +66,28 @@ class EventStore extends BroadcastReceiver {
 
     private final Context context;
     private final DatabaseHelper db;
-    private final Settings settings;
     private final Preferences prefs;
+    private final EventLog log;
 
-    @Nullable
-    private final MessageDigest sha1;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<List<byte[]>> bursts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong stored = new AtomicLong();
+    private final Writer writer = new Writer();
+    /**
+     * Held by the writer while it appends, so that a clear cannot happen
+     * between events being taken from the queues and them reaching the log.
+     */
+    private final Object writing = new Object();
+    private final ExecutorService janitor = Executors.newSingleThreadExecutor(
+            r -> {
+                final Thread thread = new Thread(
+                        r,
+                        EventStore.class.getSimpleName() + " janitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private volatile boolean recover;
 
     EventStore(
             Context context,
@@ -74,17 +97,10 @@ class EventStore extends BroadcastReceiver {
 
         this.context = context;
         this.db = db;
-        this.settings = settings;
         this.prefs = prefs;
 
-        MessageDigest digest = null;
-        try {
-            digest = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            Log.w(TAG, "Hashing will be disabled", e);
-        } finally {
-            sha1 = digest;
-        }
+        log = new EventLog(context, db, settings, DIRECTORY);
+        writer.start();
 
         context.registerReceiver(this, FILTER);
 
@@ -104,59 +120,91 @@ class EventStore extends BroadcastReceiver {
 
     /**
      * Adds content to the store in a non-blocking manner.
+     * <p>
+     * The content is handed over to the writer thread, so this method never
+     * blocks and can be called from any thread.
      *
      * @param content the content to be saved
      */
-    synchronized void add(String content) {
+    void add(String content) {
         Log.v(TAG, "Adding " + content);
 
-        final byte[] bytes = content.getBytes(UTF8);
-        if (bytes.length > EVENTS_LIMIT) {
-            Log.w(TAG, "Skipping " + content + " due to bulk events limit");
-            return;
-        } else {
-            new CheckEventsLimitTask(db, bytes, STORE_LIMIT, content).execute();
-        }
-
+        add(content.getBytes(UTF8));
     }
 
-    private class CheckEventsLimitTask extends AsyncTask<Void, Void, Boolean> {
-
-        private DatabaseHelper db;
-        private byte[] bytes;
-        private int storeLimit;
-        private String content;
-
-        public CheckEventsLimitTask(DatabaseHelper db, byte[] bytes, int storeLimit, String content) {
-
-            this.db = db;
-            this.bytes = bytes;
-            this.storeLimit = storeLimit;
-            this.content = content;
-        }
-
-        @Override
-        protected Boolean doInBackground(Void... voids) {
-            return db.getEventsSize() + bytes.length < storeLimit;
+    /**
+     * Adds content which has already been encoded as UTF-8 to the store in a
+     * non-blocking manner.
+     *
+     * @param content the content to be saved
+     */
+    void add(byte[] content) {
+        if (content.length > EVENTS_LIMIT) {
+            Log.w(TAG, "Skipping " + new String(content, UTF8) + " due to bulk events limit");
+        } else {
+            pending.offer(content);
+            LockSupport.unpark(writer);
         }
+    }
 
-        @Override
-        protected void onPostExecute(Boolean isEnoughSpace) {
-            if (!isEnoughSpace) {
-                Log.w(TAG, "Skipping " + content + " due to full event store");
+    /**
+     * Adds a burst of content which has already been encoded as UTF-8 to the
+     * store in a non-blocking manner.
+     * <p>
+     * The burst is appended to the log by the writer thread in a single write,
+     * instead of being interleaved with content added individually.
+     *
+     * @param contents the contents to be saved
+     */
+    void add(List<byte[]> contents) {
+        final List<byte[]> accepted = new ArrayList<>(contents.size());
+        for (final byte[] content : contents) {
+            if (content.length > EVENTS_LIMIT) {
+                Log.w(TAG, "Skipping " + new String(content, UTF8) + " due to bulk events limit");
             } else {
-                new SaveTask(bytes).execute();
+                accepted.add(content);
             }
         }
+
+        if (!accepted.isEmpty()) {
+            bursts.offer(accepted);
+            LockSupport.unpark(writer);
+        }
     }
 
+    /**
+     * Gets the oldest batch of stored events, after sealing any events which
+     * have been added since the last call.
+     */
+    synchronized Batch items() {
+        log.seal();
+        return new EventIterator(db, context, stored, janitor, -1);
+    }
 
-    synchronized CloseableIterator<EventStoreItem> items() {
-        return new EventIterator(db, context);
+    /**
+     * Gets the batch of stored events which follows {@code previous}, so
+     * that it can be uploaded before {@code previous} has been acknowledged.
+     * <p>
+     * Closing a batch only acknowledges its own events, so a batch which
+     * failed to upload keeps its events for retrying even when those after
+     * it have been acknowledged.
+     */
+    synchronized Batch items(Batch previous) {
+        return new EventIterator(db, context, stored, janitor, previous.last());
     }
 
     synchronized void clear() {
+        synchronized (writing) {
+            clearLocked();
+        }
+    }
+
+    private void clearLocked() {
+        pending.clear();
+        bursts.clear();
+        log.discard();
         db.removeEventRows();
+        stored.set(0);
         for (final Location location : Location.values()) {
             if (location.available()) {
                 final File dir = location.storage(context, DIRECTORY);
@@ -187,18 +235,141 @@ class EventStore extends BroadcastReceiver {
             }
         }
 
+        recover = true;
+        LockSupport.unpark(writer);
+        janitor.execute(new Sweep());
         new MigrateLegacyStore(prefs).execute();
     }
 
-    @Nullable
-    private String md5(byte[] content) {
-        if (sha1 == null) return null;
+    /**
+     * Single thread which owns all writes to the {@link EventLog}.
+     * <p>
+     * Events queued by {@link #add(byte[])} are drained in batches, checked
+     * against the store limit using the running {@link #stored} counter, and
+     * appended to the log in as few writes as possible. Bursts queued by
+     * {@link #add(List)} are appended whole, one write each.
+     */
+    private final class Writer extends Thread {
+
+        private final List<byte[]> batch = new ArrayList<>(MAX_BATCH);
 
-        final StringBuilder hex = new StringBuilder();
-        for (final byte aByte : sha1.digest(content)) {
-            hex.append(String.format("%02x", aByte));
+        Writer() {
+            super(EventStore.class.getSimpleName());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    if (recover) {
+                        recover = false;
+
+                        synchronized (writing) {
+                            log.recover();
+                            stored.set(db.getEventsSize() + log.activeSize());
+                        }
+                    }
+
+                    if (pending.isEmpty() && bursts.isEmpty()) {
+                        LockSupport.park(this);
+                    } else {
+                        synchronized (writing) {
+                            drain();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed writing events", e);
+                    batch.clear();
+                }
+            }
+        }
+
+        private void drain() {
+            byte[] bytes;
+            long size = stored.get();
+            while (batch.size() < MAX_BATCH && (bytes = pending.poll()) != null) {
+                size = accept(bytes, size);
+            }
+            append();
+
+            final List<byte[]> burst = bursts.poll();
+            if (burst != null) {
+                size = stored.get();
+                for (final byte[] content : burst) {
+                    size = accept(content, size);
+                }
+                append();
+            }
+        }
+
+        private long accept(byte[] content, long size) {
+            if (size + content.length >= STORE_LIMIT) {
+                Log.w(TAG, "Skipping " + new String(content, UTF8) + " due to full event store");
+                return size;
+            } else {
+                batch.add(content);
+                return size + content.length;
+            }
+        }
+
+        private void append() {
+            if (batch.isEmpty()) return;
+
+            final int appended = log.append(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                final byte[] content = batch.get(i);
+
+                if (i < appended) {
+                    stored.addAndGet(content.length);
+                    Log.v(TAG, "Inserted " + new String(content, UTF8));
+                } else {
+                    Log.w(TAG, "Failed inserting " + new String(content, UTF8));
+                }
+            }
+
+            batch.clear();
+        }
+    }
+
+    /**
+     * Deletes sealed segments which no longer have a row, such as those left
+     * behind when the app was killed before the {@link EventIterator} got to
+     * remove their files or when their location was unavailable at the time.
+     */
+    private final class Sweep implements Runnable {
+
+        @Override
+        public void run() {
+            final List<File> files = new ArrayList<>();
+            for (final Location location : Location.values()) {
+                if (location.available()) {
+                    final File[] listed = location
+                            .storage(context, DIRECTORY)
+                            .listFiles();
+                    if (listed == null) continue;
+
+                    for (final File file : listed) {
+                        if (file.getName().endsWith(EventLog.SUFFIX_SEALED)) {
+                            files.add(file);
+                        }
+                    }
+                }
+            }
+
+            // rows are inserted before segments are renamed, so reading them
+            // after listing the files cannot miss a freshly sealed segment
+            final Set<String> names = db.getEventNames();
+            for (final File file : files) {
+                if (!names.contains(file.getName())) {
+                    if (file.delete()) {
+                        Log.d(TAG, "Deleted orphaned " + file);
+                    } else {
+                        Log.w(TAG, "Failed deleting orphaned " + file);
+                    }
+                }
+            }
         }
-        return hex.toString();
     }
 
     private final class MigrateLegacyStore extends AsyncTask<Void, Void, Void> {
@@ -264,146 +435,103 @@ class EventStore extends BroadcastReceiver {
         }
     }
 
-    private final class SaveTask extends AsyncTask<Void, Void, Void> {
+    /**
+     * Iterator over a batch of stored events, which is at most
+     * {@link #EVENTS_LIMIT} in size.
+     */
+    interface Batch extends CloseableIterator<EventStoreItem> {
 
-        private final byte[] content;
-        private final long time;
+        /**
+         * Gets the id of the last row in the batch, or of the last row in
+         * the preceding batch if this one is empty.
+         */
+        long last();
+    }
 
-        SaveTask(byte[] content) {
-            this.content = content;
-            time = System.currentTimeMillis();
-        }
+    private static final class EventIterator implements Batch {
 
-        @Override
-        protected Void doInBackground(Void... params) {
-            final String name = UUID.randomUUID().toString();
-            final Location location;
-            if (settings.isUseInternalStorageForEvents()) {
-                location = Location.INTERNAL;
-            } else if (Location.EXTERNAL.available()) {
-                location = Location.EXTERNAL;
-            } else {
-                Log.w(TAG, String.format(
-                        Locale.US,
-                        "%s not available, falling back to %s",
-                        Location.EXTERNAL,
-                        Location.INTERNAL));
-                location = Location.INTERNAL;
+        private static final EventStoreItem UNAVAILABLE = new EventStoreItem() {
+            @Override
+            public boolean available() {
+                return false;
             }
-            final String hash = md5(content);
 
-            final File file = new File(
-                    location.storage(context, DIRECTORY),
-                    name);
-            FileOutputStream out = null;
-            try {
-                out = new FileOutputStream(file);
-                out.write(content);
-            } catch (FileNotFoundException e) {
-                Log.e(TAG, "Failed opening stream for " + file, e);
+            @Nullable
+            @Override
+            public String get() {
                 return null;
-            } catch (IOException e) {
-                Log.e(TAG, "Failed writing to stream for " + file, e);
-                //noinspection ResultOfMethodCallIgnored
-                file.delete();
-                return null;
-            } finally {
-                if (out != null) {
-                    try {
-                        out.close();
-                    } catch (IOException e) {
-                        Log.w(TAG, "Failed closing stream for " + file, e);
-                    }
-                }
             }
 
-            boolean dbInsertSucceeded;
-            try {
-                dbInsertSucceeded = db.insertEventRow(time, location, name, hash, file.length());
-            } catch (SQLiteException e) {
-                Log.e(TAG, "An error occurred when trying to insert event row into the database", e);
-                dbInsertSucceeded = false;
+            @Override
+            public int size() {
+                return 0;
             }
 
-            if (!dbInsertSucceeded) {
-                Log.w(TAG, "Failed inserting " + new String(content));
-                //noinspection ResultOfMethodCallIgnored
-                file.delete();
-            } else {
-                Log.v(TAG, "Inserted " + new String(content));
+            @Override
+            public void writeTo(OutputStream output) {
+                throw new IllegalStateException("Item not available");
             }
-
-            return null;
-        }
-    }
-
-    private static final class EventIterator implements
-            CloseableIterator<EventStoreItem> {
+        };
 
         private final DatabaseHelper db;
         private final Context context;
+        private final AtomicLong stored;
+        private final ExecutorService janitor;
 
         private final Cursor cursor;
+        private final long last;
+
+        private final List<EventLog.Source> sources = new ArrayList<>();
+
+        @Nullable
+        private EventLog.Reader reader;
+        @Nullable
+        private EventLog.Source source;
+        @Nullable
+        private EventStoreItem pending;
+
+        EventIterator(
+                DatabaseHelper db,
+                Context context,
+                AtomicLong stored,
+                ExecutorService janitor,
+                long after) {
 
-        EventIterator(DatabaseHelper db, Context context) {
             this.db = db;
             this.context = context;
+            this.stored = stored;
+            this.janitor = janitor;
 
-            cursor = db.getEventRows();
+            cursor = db.getEventRows(after);
+            if (cursor.moveToLast()) {
+                last = getCurrentId();
+                cursor.moveToPosition(-1);
+            } else {
+                last = after;
+            }
         }
 
         @Override
-        public boolean hasNext() {
-            return (cursor.getCount() > 0 && !cursor.isLast());
+        public long last() {
+            return last;
         }
 
         @Override
-        public EventStoreItem next() {
-            if (!cursor.moveToNext()) throw new NoSuchElementException();
-
-            final Location location = getCurrentLocation();
+        public boolean hasNext() {
+            if (pending == null) {
+                pending = advance();
+            }
 
-            return new EventStoreItem() {
-                @Override
-                public boolean available() {
-                    return location.available();
-                }
+            return (pending != null);
+        }
 
-                @Override
-                @Nullable
-                public String get() {
-                    final File file = new File(
-                            location.storage(context, DIRECTORY),
-                            getCurrentName());
-                    final StringBuilder builder = new StringBuilder();
-                    BufferedReader reader = null;
-                    try {
-                        reader = new BufferedReader(new InputStreamReader(
-                                new FileInputStream(file)));
-
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            builder.append(line);
-                        }
-                    } catch (FileNotFoundException e) {
-                        Log.e(TAG, "Failed opening stream for " + file, e);
-                        return null;
-                    } catch (IOException e) {
-                        Log.e(TAG, "Failed reading stream for " + file, e);
-                        return null;
-                    } finally {
-                        if (reader != null) {
-                            try {
-                                reader.close();
-                            } catch (IOException e) {
-                                Log.w(TAG, "Failed closing stream for " + file, e);
-                            }
-                        }
-                    }
+        @Override
+        public EventStoreItem next() {
+            if (!hasNext()) throw new NoSuchElementException();
 
-                    return builder.toString();
-                }
-            };
+            final EventStoreItem item = pending;
+            pending = null;
+            return item;
         }
 
         @Override
@@ -413,25 +541,19 @@ class EventStore extends BroadcastReceiver {
 
         @Override
         public void close(Mode mode) {
+            closeReader();
+            for (final EventLog.Source source : sources) {
+                source.close();
+            }
+
             try {
                 switch (mode) {
                     case ALL:
-                        cursor.moveToFirst();
-                        while (!cursor.isAfterLast()) {
-                            removeRow();
-                            cursor.moveToNext();
-                        }
-
+                        removeRows(cursor.getCount());
                         break;
 
                     case UP_TO_CURRENT:
-                        final int position = cursor.getPosition();
-                        cursor.moveToFirst();
-                        while (cursor.getPosition() < position) {
-                            removeRow();
-                            cursor.moveToNext();
-                        }
-
+                        removeRows(cursor.getPosition());
                         break;
                 }
             } finally {
@@ -439,6 +561,44 @@ class EventStore extends BroadcastReceiver {
             }
         }
 
+        /**
+         * Reads the next event, moving on to the following segment once the
+         * current one has been exhausted.
+         */
+        @Nullable
+        private EventStoreItem advance() {
+            while (true) {
+                if (reader != null) {
+                    if (reader.next()) {
+                        return new Item(source, reader.offset, reader.size);
+                    }
+
+                    closeReader();
+                }
+
+                if (!cursor.moveToNext()) return null;
+
+                final Location location = getCurrentLocation();
+                if (!location.available()) return UNAVAILABLE;
+
+                final File file = getCurrentFile(location);
+                try {
+                    reader = EventLog.read(file);
+                    source = new EventLog.Source(file);
+                    sources.add(source);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed opening stream for " + file, e);
+                }
+            }
+        }
+
+        private void closeReader() {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        }
+
         private long getCurrentId() {
             return cursor.getLong(
                     cursor.getColumnIndex(Events.Column.ID.toString()));
@@ -449,22 +609,92 @@ class EventStore extends BroadcastReceiver {
                     cursor.getColumnIndex(Events.Column.LOCATION.toString())));
         }
 
-        private String getCurrentName() {
-            return cursor.getString(
-                    cursor.getColumnIndex(Events.Column.NAME.toString()));
+        private File getCurrentFile(Location location) {
+            return new File(
+                    location.storage(context, DIRECTORY),
+                    cursor.getString(cursor.getColumnIndex(
+                            Events.Column.NAME.toString())));
+        }
+
+        private static final class Item implements EventStoreItem {
+
+            private final EventLog.Source source;
+            private final long offset;
+            private final int size;
+
+            Item(EventLog.Source source, long offset, int size) {
+                this.source = source;
+                this.offset = offset;
+                this.size = size;
+            }
+
+            @Override
+            public boolean available() {
+                return true;
+            }
+
+            @Nullable
+            @Override
+            public String get() {
+                try {
+                    return new String(source.read(offset, size), UTF8);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed reading event", e);
+                    return null;
+                }
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void writeTo(OutputStream output) throws IOException {
+                source.copy(offset, size, output);
+            }
         }
 
-        private void removeRow() {
-            if (!db.removeEventRow(getCurrentId())) {
-                Log.w(TAG, "Failed to remove event row");
+        /**
+         * Removes the first {@code count} rows with a single delete over
+         * their id range, and leaves their files to be deleted by the
+         * janitor.
+         */
+        private void removeRows(int count) {
+            if (count <= 0) return;
+
+            final List<File> files = new ArrayList<>(count);
+            long size = 0;
+            long last = -1;
+            cursor.moveToFirst();
+            final long first = getCurrentId();
+            while (cursor.getPosition() < count) {
+                files.add(getCurrentFile(getCurrentLocation()));
+                size += cursor.getLong(cursor.getColumnIndex(
+                        Events.Column.SIZE.toString()));
+                last = getCurrentId();
+
+                cursor.moveToNext();
             }
 
-            final File file = new File(
-                    getCurrentLocation().storage(context, DIRECTORY),
-                    getCurrentName());
-            if (!file.delete()) {
-                Log.w(TAG, "Failed deleting " + file);
+            final int removed = db.removeEventRows(first, last);
+            if (removed != count) {
+                Log.w(TAG, String.format(
+                        Locale.US,
+                        "Removed %d event rows instead of %d",
+                        removed,
+                        count));
+            } else {
+                stored.addAndGet(-size);
             }
+
+            janitor.execute(() -> {
+                for (final File file : files) {
+                    if (!file.delete()) {
+                        Log.w(TAG, "Failed deleting " + file);
+                    }
+                }
+            });
         }
     }
 }
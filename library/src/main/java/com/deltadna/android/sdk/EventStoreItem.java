@@ -18,10 +18,24 @@ package com.deltadna.android.sdk;
 
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 interface EventStoreItem {
     
     boolean available();
     
     @Nullable
     String get();
+    
+    /**
+     * Gets the size of the item in bytes.
+     */
+    int size();
+    
+    /**
+     * Copies the content of the item to {@code output} without holding all
+     * of it in memory.
+     */
+    void writeTo(OutputStream output) throws IOException;
 }
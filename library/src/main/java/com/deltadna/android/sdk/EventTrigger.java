@@ -28,7 +28,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.ParseException;
 import java.util.*;
 
 public final class EventTrigger implements Comparable<EventTrigger> {
@@ -47,7 +46,7 @@ public final class EventTrigger implements Comparable<EventTrigger> {
     
     private final int priority;
     private final int limit;
-    private final Object[] condition;
+    private final EventTriggerCondition condition;
     
     private final long campaignId;
     private final long variantId;
@@ -70,21 +69,7 @@ public final class EventTrigger implements Comparable<EventTrigger> {
 
         priority = json.optInt("priority", 0);
         limit = json.optInt("limit", -1);
-        final JSONArray condition = json.optJSONArray("condition");
-        if (condition != null) {
-            this.condition = new Object[condition.length()];
-            for (int i = 0; i < condition.length(); i++) {
-                final JSONObject value = condition.optJSONObject(i);
-                
-                if (value != null && value.has("o")) {
-                    this.condition[i] = Op.valueFromBackend(value.optString("o"));
-                } else if (value != null) {
-                    this.condition[i] = value.opt(value.keys().next());
-                }
-            }
-        } else {
-            this.condition = new Object[0];
-        }
+        condition = EventTriggerCondition.compile(json.optJSONArray("condition"));
 
         campaignId = json.optInt("campaignID", -1);
         variantId = json.optInt("variantID", -1);
@@ -137,99 +122,7 @@ public final class EventTrigger implements Comparable<EventTrigger> {
     boolean evaluate(Event event) {
         if (!event.name.equals(eventName)) return false;
         
-        final Deque<Object> stack = new ArrayDeque<>();
-        for (final Object token : condition) {
-            if (token instanceof Op) {
-                final Op op = (Op) token;
-                final Object right = stack.pop();
-                final Object left = stack.pop();
-                
-                if (left instanceof String) {
-                    final Object leftValue = event.params.json.opt((String) left);
-                    
-                    try {
-                        if (leftValue instanceof Boolean) {
-                            stack.push(op.evaluate(
-                                    (boolean) leftValue,
-                                    (boolean) right));
-                        } else if (leftValue instanceof Integer) {
-                            stack.push(op.evaluate(
-                                    (int) leftValue,
-                                    (int) right));
-                        } else if (leftValue instanceof Long) {
-                            if (right instanceof Integer) {
-                                stack.push(op.evaluate(
-                                        (long) leftValue,
-                                        (int) right));
-                            } else {
-                                stack.push(op.evaluate(
-                                        (long) leftValue,
-                                        (long) right));
-                            }
-                        } else if (leftValue instanceof Float) {
-                            // floats are actually double precision in JSON
-                            stack.push(op.evaluate(
-                                    (double) (float) leftValue,
-                                    (double) right));
-                        } else if (leftValue instanceof Double) {
-                            stack.push(op.evaluate(
-                                    (double) leftValue,
-                                    (double) right));
-                        } else if (leftValue instanceof String) {
-                            final Class<?> type = event.params.typeOf((String) left);
-                            if (type == Date.class) {
-                                stack.push(op.evaluate(
-                                        DDNA.TIMESTAMP_FORMAT.parse((String) leftValue),
-                                        DDNA.TIMESTAMP_FORMAT_ISO.parse((String) right)));
-                            } else if (type == String.class) {
-                                stack.push(op.evaluate(
-                                        (String) leftValue,
-                                        (String) right));
-                            }
-                        } else if (leftValue == null) {
-                            Log.w(TAG, "Failed to find " + left + " in parameters");
-                            return false;
-                        } else {
-                            Log.w(TAG, "Unexpected value " + left + " for left side");
-                            return false;
-                        }
-                    } catch (InvalidOperation e) {
-                        Log.w(TAG, e.getMessage());
-                        return false;
-                    } catch (ClassCastException e) {
-                        Log.w(TAG, "Unexpected value " + right + " for right side");
-                        return false;
-                    } catch (ParseException e) {
-                        Log.w(TAG, String.format(
-                                Locale.ENGLISH,
-                                "Failed parsing %s/%s to a date",
-                                leftValue,
-                                right));
-                        return false;
-                    }
-                } else if (left instanceof Boolean) {
-                    try {
-                        stack.push(op.evaluate((Boolean) left, (Boolean) right));
-                    } catch (InvalidOperation e) {
-                        Log.w(TAG, e.getMessage());
-                        return false;
-                    } catch (ClassCastException e) {
-                        Log.w(TAG, "Unexpected value " + right + " for right side");
-                        return false;
-                    }
-                } else {
-                    Log.w(TAG, "Unexpected value " + left + " for left side");
-                    return false;
-                }
-            } else if (token == null) {
-                Log.w(TAG, "Null token in condition");
-                return false;
-            } else {
-                stack.push(token);
-            }
-        }
-
-        if (stack.isEmpty() || (boolean) stack.pop()) {
+        if (condition.evaluate(event.params)) {
             // Default to true if no conditions exist
             boolean anyCanExecute = campaignTriggerConditions.size() == 0;
 
@@ -304,7 +197,7 @@ public final class EventTrigger implements Comparable<EventTrigger> {
 
 
 
-    private enum Op {
+    enum Op {
         
         AND("and") {
             @Override
@@ -587,7 +480,7 @@ public final class EventTrigger implements Comparable<EventTrigger> {
         }
     }
     
-    private static final class InvalidOperation extends Exception {
+    static final class InvalidOperation extends Exception {
         
         InvalidOperation(String formatMessage, Op op) {
             super(String.format(Locale.ENGLISH, formatMessage, op));
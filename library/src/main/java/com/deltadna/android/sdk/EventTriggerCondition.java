@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import androidx.annotation.Nullable;
+import android.util.Log;
+import com.deltadna.android.sdk.EventTrigger.InvalidOperation;
+import com.deltadna.android.sdk.EventTrigger.Op;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * Condition of an {@link EventTrigger}, compiled from the tokens in reverse
+ * Polish notation sent by the backend into a tree of typed nodes.
+ * <p>
+ * Constant sub-expressions are folded and operations which can never succeed
+ * are detected at compile time, leaving evaluation to look up the parameters
+ * and compare them without allocating.
+ * <p>
+ * A failure anywhere in the tree, such as a missing parameter or a parameter
+ * of the wrong type, fails the whole condition. Sub-expressions are therefore
+ * never short-circuited.
+ */
+abstract class EventTriggerCondition {
+
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EventTriggerCondition.class.getSimpleName();
+
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int FAIL = -1;
+
+    private static final EventTriggerCondition ALWAYS_TRUE = new Constant(TRUE);
+    private static final EventTriggerCondition ALWAYS_FALSE = new Constant(FALSE);
+    private static final EventTriggerCondition ALWAYS_FAIL = new Constant(FAIL);
+
+    /**
+     * Evaluates the condition against the {@code params} of an event.
+     *
+     * @return {@code true} if the condition has been met
+     */
+    final boolean evaluate(Params params) {
+        return evaluateTo(params) == TRUE;
+    }
+
+    abstract int evaluateTo(Params params);
+
+    static EventTriggerCondition compile(@Nullable JSONArray condition) {
+        if (condition == null) return ALWAYS_TRUE;
+
+        final Deque<Object> stack = new ArrayDeque<>(condition.length());
+        for (int i = 0; i < condition.length(); i++) {
+            final JSONObject value = condition.optJSONObject(i);
+
+            final Object token;
+            if (value != null && value.has("o")) {
+                token = Op.valueFromBackend(value.optString("o"));
+            } else if (value != null && value.length() > 0) {
+                token = value.opt(value.keys().next());
+            } else {
+                token = null;
+            }
+
+            if (token instanceof Op) {
+                if (stack.size() < 2) {
+                    Log.w(TAG, "Missing operands for " + token);
+                    return ALWAYS_FAIL;
+                }
+
+                final Object right = stack.pop();
+                final Object left = stack.pop();
+                final EventTriggerCondition node = compile(
+                        (Op) token,
+                        left,
+                        right);
+                if (node == ALWAYS_FAIL) return ALWAYS_FAIL;
+
+                stack.push(node);
+            } else if (token == null || token == JSONObject.NULL) {
+                Log.w(TAG, "Null token in condition");
+                return ALWAYS_FAIL;
+            } else {
+                stack.push(token);
+            }
+        }
+
+        if (stack.isEmpty()) {
+            // default to true if no conditions exist
+            return ALWAYS_TRUE;
+        }
+
+        final EventTriggerCondition result = toNode(stack.pop());
+        if (result == null) {
+            Log.w(TAG, "Condition does not evaluate to a boolean");
+            return ALWAYS_FAIL;
+        }
+
+        return result;
+    }
+
+    private static EventTriggerCondition compile(
+            Op op,
+            Object left,
+            Object right) {
+
+        if (left instanceof String) {
+            final String name = (String) left;
+
+            if (right instanceof Integer) {
+                return supportsCompare(op)
+                        ? new IntegerComparison(op, name, (int) right)
+                        : fail(op, "integers");
+            } else if (right instanceof Long) {
+                return supportsCompare(op)
+                        ? new LongComparison(op, name, (long) right)
+                        : fail(op, "integers");
+            } else if (right instanceof Double) {
+                return supportsCompare(op)
+                        ? new DoubleComparison(op, name, (double) right)
+                        : fail(op, "floats");
+            } else if (right instanceof String) {
+                final boolean strings = supportsStrings(op);
+                final boolean dates = supportsCompare(op);
+
+                return (strings || dates)
+                        ? new StringComparison(
+                                op,
+                                name,
+                                (String) right,
+                                strings,
+                                dates)
+                        : fail(op, "strings");
+            } else {
+                final EventTriggerCondition node = toNode(right);
+                if (node == null) {
+                    Log.w(TAG, "Unexpected value " + right + " for right side");
+                    return ALWAYS_FAIL;
+                }
+
+                return supportsBooleans(op)
+                        ? new BooleanComparison(op, name, node)
+                        : fail(op, "booleans");
+            }
+        } else if (left instanceof Boolean || left instanceof EventTriggerCondition) {
+            final EventTriggerCondition leftNode = toNode(left);
+            final EventTriggerCondition rightNode = toNode(right);
+
+            if (rightNode == null) {
+                Log.w(TAG, "Unexpected value " + right + " for right side");
+                return ALWAYS_FAIL;
+            } else if (!supportsBooleans(op)) {
+                return fail(op, "booleans");
+            } else if (leftNode instanceof Constant && rightNode instanceof Constant) {
+                return evaluate(
+                        op,
+                        leftNode.evaluateTo(null),
+                        rightNode.evaluateTo(null))
+                        == TRUE ? ALWAYS_TRUE : ALWAYS_FALSE;
+            } else {
+                return new Logical(op, leftNode, rightNode);
+            }
+        } else {
+            Log.w(TAG, "Unexpected value " + left + " for left side");
+            return ALWAYS_FAIL;
+        }
+    }
+
+    @Nullable
+    private static EventTriggerCondition toNode(Object value) {
+        if (value instanceof EventTriggerCondition) {
+            return (EventTriggerCondition) value;
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? ALWAYS_TRUE : ALWAYS_FALSE;
+        } else {
+            return null;
+        }
+    }
+
+    private static EventTriggerCondition fail(Op op, String type) {
+        Log.w(TAG, String.format(
+                Locale.ENGLISH,
+                "Cannot perform %s on %s",
+                op,
+                type));
+        return ALWAYS_FAIL;
+    }
+
+    private static boolean supportsCompare(Op op) {
+        try {
+            op.fromCompare(0);
+            return true;
+        } catch (InvalidOperation e) {
+            return false;
+        }
+    }
+
+    private static boolean supportsBooleans(Op op) {
+        try {
+            op.evaluate(false, false);
+            return true;
+        } catch (InvalidOperation e) {
+            return false;
+        }
+    }
+
+    private static boolean supportsStrings(Op op) {
+        try {
+            op.evaluate("", "");
+            return true;
+        } catch (InvalidOperation e) {
+            return false;
+        }
+    }
+
+    private static int evaluate(Op op, int left, int right) {
+        if (left == FAIL || right == FAIL) return FAIL;
+
+        try {
+            return of(op.evaluate(left == TRUE, right == TRUE));
+        } catch (InvalidOperation e) {
+            return FAIL;
+        }
+    }
+
+    private static int compare(Op op, int value) {
+        try {
+            return of(op.fromCompare(value));
+        } catch (InvalidOperation e) {
+            return FAIL;
+        }
+    }
+
+    private static int of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * @return the index of the parameter, or -1 if not found
+     */
+    private static int lookup(Params params, String name) {
+        final int index = params.indexOf(name);
+        if (index < 0) {
+            Log.w(TAG, "Failed to find " + name + " in parameters");
+        }
+
+        return index;
+    }
+
+    private static int unexpected(int index, String name) {
+        if (index < 0) return FAIL;
+
+        Log.w(TAG, "Unexpected value " + name + " for left side");
+        return FAIL;
+    }
+
+    private static final class Constant extends EventTriggerCondition {
+
+        private final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        int evaluateTo(@Nullable Params params) {
+            return value;
+        }
+    }
+
+    private static final class Logical extends EventTriggerCondition {
+
+        private final Op op;
+        private final EventTriggerCondition left;
+        private final EventTriggerCondition right;
+
+        Logical(Op op, EventTriggerCondition left, EventTriggerCondition right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluateTo(Params params) {
+            return evaluate(op, left.evaluateTo(params), right.evaluateTo(params));
+        }
+    }
+
+    private static final class BooleanComparison extends EventTriggerCondition {
+
+        private final Op op;
+        private final String name;
+        private final EventTriggerCondition right;
+
+        BooleanComparison(Op op, String name, EventTriggerCondition right) {
+            this.op = op;
+            this.name = name;
+            this.right = right;
+        }
+
+        @Override
+        int evaluateTo(Params params) {
+            final int value = right.evaluateTo(params);
+            final int left = lookup(params, name);
+
+            if (left >= 0 && params.kindAt(left) == Params.BOOLEAN) {
+                return evaluate(op, of(params.longAt(left) != 0), value);
+            } else {
+                return unexpected(left, name);
+            }
+        }
+    }
+
+    private static final class IntegerComparison extends EventTriggerCondition {
+
+        private final Op op;
+        private final String name;
+        private final int right;
+
+        IntegerComparison(Op op, String name, int right) {
+            this.op = op;
+            this.name = name;
+            this.right = right;
+        }
+
+        @Override
+        int evaluateTo(Params params) {
+            final int left = lookup(params, name);
+            final byte kind = (left >= 0) ? params.kindAt(left) : 0;
+
+            if (kind == Params.INTEGER || kind == Params.LONG) {
+                return compare(op, Long.compare(params.longAt(left), right));
+            } else {
+                return unexpected(left, name);
+            }
+        }
+    }
+
+    private static final class LongComparison extends EventTriggerCondition {
+
+        private final Op op;
+        private final String name;
+        private final long right;
+
+        LongComparison(Op op, String name, long right) {
+            this.op = op;
+            this.name = name;
+            this.right = right;
+        }
+
+        @Override
+        int evaluateTo(Params params) {
+            final int left = lookup(params, name);
+
+            if (left >= 0 && params.kindAt(left) == Params.LONG) {
+                return compare(op, Long.compare(params.longAt(left), right));
+            } else {
+                return unexpected(left, name);
+            }
+        }
+    }
+
+    private static final class DoubleComparison extends EventTriggerCondition {
+
+        private final Op op;
+        private final String name;
+        private final double right;
+
+        DoubleComparison(Op op, String name, double right) {
+            this.op = op;
+            this.name = name;
+            this.right = right;
+        }
+
+        @Override
+        int evaluateTo(Params params) {
+            final int left = lookup(params, name);
+            final byte kind = (left >= 0) ? params.kindAt(left) : 0;
+
+            // floats are actually double precision in JSON
+            if (kind == Params.FLOAT || kind == Params.DOUBLE) {
+                return compare(op, Double.compare(params.doubleAt(left), right));
+            } else {
+                return unexpected(left, name);
+            }
+        }
+    }
+
+    /**
+     * Compares a string parameter, or a timestamp parameter which has been
+     * stored as a string.
+     * <p>
+     * Timestamps are stored in a fixed width format in UTC, so the right side
+     * gets converted into the same format once and then the two are compared
+     * as strings, which orders them the same as comparing the dates.
+     */
+    private static final class StringComparison extends EventTriggerCondition {
+
+        private final Op op;
+        private final String name;
+        private final String right;
+        private final boolean strings;
+        private final boolean dates;
+        @Nullable
+        private final String timestamp;
+
+        StringComparison(
+                Op op,
+                String name,
+                String right,
+                boolean strings,
+                boolean dates) {
+
+            this.op = op;
+            this.name = name;
+            this.right = right;
+            this.strings = strings;
+            this.dates = dates;
+
+            String timestamp = null;
+            if (dates) {
+                try {
+                    timestamp = Timestamps.format(Timestamps.parseIso(right));
+                } catch (ParseException ignored) {
+                    // only fails if compared against a timestamp
+                }
+            }
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        int evaluateTo(Params params) {
+            final int index = lookup(params, name);
+            final byte kind = (index >= 0) ? params.kindAt(index) : 0;
+
+            if (kind == Params.DATE) {
+                final String left = (String) params.refAt(index);
+                if (!dates) {
+                    Log.w(TAG, String.format(
+                            Locale.ENGLISH,
+                            "Cannot perform %s on dates",
+                            op));
+                    return FAIL;
+                } else if (timestamp == null) {
+                    Log.w(TAG, String.format(
+                            Locale.ENGLISH,
+                            "Failed parsing %s/%s to a date",
+                            left,
+                            right));
+                    return FAIL;
+                }
+
+                return compare(op, left.compareTo(timestamp));
+            } else if (kind == Params.STRING) {
+                if (strings) {
+                    try {
+                        return of(op.evaluate((String) params.refAt(index), right));
+                    } catch (InvalidOperation e) {
+                        return FAIL;
+                    }
+                } else {
+                    Log.w(TAG, String.format(
+                            Locale.ENGLISH,
+                            "Cannot perform %s on strings",
+                            op));
+                    return FAIL;
+                }
+            } else {
+                return unexpected(index, name);
+            }
+        }
+    }
+}
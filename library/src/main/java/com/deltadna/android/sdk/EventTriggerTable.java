@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table for dispatching recorded events to their
+ * {@link EventTrigger}s, built once per session configuration.
+ * <p>
+ * Event names are interned and stored in an open addressing table, with the
+ * triggers for each name held in an array which has been sorted by priority,
+ * so that looking up the triggers for an event does not allocate.
+ */
+final class EventTriggerTable {
+
+    static final EventTrigger[] NONE = new EventTrigger[0];
+    static final EventTriggerTable EMPTY = new EventTriggerTable(
+            new ArrayList<EventTrigger>(0));
+
+    private final String[] names;
+    private final EventTrigger[][] triggers;
+    private final int mask;
+
+    EventTriggerTable(Collection<EventTrigger> triggers) {
+        final Map<String, List<EventTrigger>> buckets = new LinkedHashMap<>();
+        for (final EventTrigger trigger : triggers) {
+            List<EventTrigger> bucket = buckets.get(trigger.getEventName());
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(trigger.getEventName(), bucket);
+            }
+            bucket.add(trigger);
+        }
+
+        // keep the load factor at or below a half
+        int capacity = 2;
+        while (capacity < buckets.size() * 2) capacity <<= 1;
+
+        names = new String[capacity];
+        this.triggers = new EventTrigger[capacity][];
+        mask = capacity - 1;
+
+        for (final Map.Entry<String, List<EventTrigger>> bucket
+                : buckets.entrySet()) {
+            final EventTrigger[] sorted = bucket.getValue().toArray(
+                    new EventTrigger[bucket.getValue().size()]);
+            Arrays.sort(sorted);
+
+            final String name = bucket.getKey().intern();
+            int slot = name.hashCode() & mask;
+            while (names[slot] != null) slot = (slot + 1) & mask;
+
+            names[slot] = name;
+            this.triggers[slot] = sorted;
+        }
+    }
+
+    /**
+     * Gets the triggers for the event {@code name}, ordered by priority.
+     *
+     * @return the triggers, or {@link #NONE} if there are none
+     */
+    EventTrigger[] get(String name) {
+        int slot = name.hashCode() & mask;
+
+        String candidate;
+        while ((candidate = names[slot]) != null) {
+            if (candidate == name || candidate.equals(name)) {
+                return triggers[slot];
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return NONE;
+    }
+}
@@ -1,24 +1,146 @@
 package com.deltadna.android.sdk;
 
+import android.database.sqlite.SQLiteException;
+import androidx.annotation.AnyThread;
+import androidx.annotation.WorkerThread;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the execution counts of event triggered campaigns in memory, writing
+ * changed counts behind to the database in batches.
+ * <p>
+ * Counts are loaded once on first use, and changes are flushed at most
+ * {@link #FLUSH_DELAY} seconds after they were made, which bounds what can be
+ * lost if the process gets killed, as well as when the SDK is stopped.
+ */
 public class EventTriggeredCampaignMetricStore {
 
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + EventTriggeredCampaignMetricStore.class.getSimpleName();
+    private static final int FLUSH_DELAY = 5;
+
     private final DatabaseHelper db;
+    private final ScheduledExecutorService executor;
+
+    private final Map<Long, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = Collections.newSetFromMap(
+            new ConcurrentHashMap<Long, Boolean>());
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable writer = this::write;
+
+    private volatile boolean loaded;
 
     EventTriggeredCampaignMetricStore(DatabaseHelper db){
         this.db = db;
+
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(
+                    r,
+                    EventTriggeredCampaignMetricStore.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     void recordETCExecution(long variantId){
-        db.recordETCExecution(variantId);
+        load();
+
+        AtomicLong count = counts.get(variantId);
+        if (count == null) {
+            final AtomicLong created = new AtomicLong();
+            count = counts.putIfAbsent(variantId, created);
+            if (count == null) count = created;
+        }
+        count.incrementAndGet();
+
+        // marked after the increment so that a concurrent flush cannot miss it
+        dirty.add(variantId);
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(writer, FLUSH_DELAY, TimeUnit.SECONDS);
+        }
     }
 
     public long getETCExecutionCount(long variantId){
-        return db.getETCExecutionCount(variantId);
+        load();
+
+        final AtomicLong count = counts.get(variantId);
+        return (count == null) ? 0 : count.get();
     }
 
     public void clear(){
+        synchronized (this) {
+            dirty.clear();
+            counts.clear();
+            loaded = true;
+        }
+
         db.clearETCExecutions();
     }
 
+    /**
+     * Writes any changed counts to the database without waiting for the
+     * scheduled flush.
+     */
+    @AnyThread
+    void flush() {
+        executor.execute(writer);
+    }
+
+    /**
+     * Writes any changed counts to the database in a single transaction.
+     */
+    @WorkerThread
+    synchronized void write() {
+        flushScheduled.set(false);
+        if (dirty.isEmpty()) return;
+
+        final Map<Long, Long> changed = new HashMap<>(dirty.size());
+        final Iterator<Long> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            final Long variantId = iterator.next();
+            iterator.remove();
+
+            final AtomicLong count = counts.get(variantId);
+            if (count != null) changed.put(variantId, count.get());
+        }
+
+        try {
+            db.setETCExecutionCounts(changed);
+            Log.v(TAG, "Flushed " + changed.size() + " execution counts");
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed flushing execution counts, will retry", e);
 
+            dirty.addAll(changed.keySet());
+            if (flushScheduled.compareAndSet(false, true)) {
+                executor.schedule(writer, FLUSH_DELAY, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void load() {
+        if (loaded) return;
+
+        synchronized (this) {
+            if (loaded) return;
+
+            for (final Map.Entry<Long, Long> count
+                    : db.getETCExecutionCounts().entrySet()) {
+                counts.put(count.getKey(), new AtomicLong(count.getValue()));
+            }
+            loaded = true;
+        }
+    }
 }
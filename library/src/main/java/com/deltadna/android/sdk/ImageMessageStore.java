@@ -54,6 +54,10 @@ class ImageMessageStore {
     
     private static final String TAG = BuildConfig.LOG_TAG + ' ' + "IMStore";
     private static final String SUBDIRECTORY = "image_messages";
+    /**
+     * Partially fetched files younger than this may still be in progress.
+     */
+    private static final long PARTIAL_FILE_AGE = 60 * 60 * 1000;
     
     private final ExecutorService executor = Executors.newFixedThreadPool(4);
     private final Handler handler = new Handler(Looper.getMainLooper());
@@ -348,6 +352,26 @@ class ImageMessageStore {
                 
                 Log.d(TAG, "Finished cleanup task with " + count + " removed");
             }
+            
+            // left behind by fetches which did not complete
+            for (final Location location : Location.values()) {
+                if (!location.available()) continue;
+                
+                final File[] partials = location.cache(context, SUBDIRECTORY)
+                        .listFiles((dir, name) -> name.endsWith(
+                                NetworkManager.PARTIAL_FILE_SUFFIX));
+                if (partials == null) continue;
+                
+                for (final File partial : partials) {
+                    if (partial.lastModified() < System.currentTimeMillis()
+                            - PARTIAL_FILE_AGE) {
+                        Log.v(TAG, "Removing partially fetched " + partial);
+                        if (!partial.delete()) {
+                            Log.w(TAG, "Failed to remove " + partial);
+                        }
+                    }
+                }
+            }
         }
     }
     
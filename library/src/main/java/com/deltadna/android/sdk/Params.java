@@ -18,29 +18,51 @@ package com.deltadna.android.sdk;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.deltadna.android.sdk.helpers.Preconditions;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
 
 /**
  * Constructs parameters which can be used with events.
  */
 public class Params implements JsonParams {
     
-    private final Map<String, TypeToken<?>> types;
+    /*
+     * Kinds of values held in the slots, where booleans and integral values
+     * are held in the bits, floating point values as the bits of a double,
+     * and everything else as a reference.
+     */
+    static final byte BOOLEAN = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte FLOAT = 4;
+    static final byte DOUBLE = 5;
+    static final byte STRING = 6;
+    static final byte DATE = 7;
+    static final byte PARAMS = 8;
+    static final byte OBJECT = 9;
+    
+    private static final int CAPACITY = 8;
     
-    final JSONObject json;
+    private String[] keys;
+    private byte[] kinds;
+    private long[] bits;
+    private Object[] refs;
+    private int size;
     
     /**
      * Creates a new instance.
      */
     public Params() {
-        this(new JSONObject(), new HashMap<>());
+        this(CAPACITY);
     }
     
     /**
@@ -51,21 +73,84 @@ public class Params implements JsonParams {
      * @throws JSONException if {@code params} is not valid JSON
      */
     public Params(Params params) throws JSONException {
-        this(   new JSONObject(params.json.toString()),
-                new HashMap<>(params.types));
+        this(Math.max(params.size, CAPACITY));
+        
+        for (int i = 0; i < params.size; i++) {
+            final Object ref = params.refs[i];
+            
+            keys[i] = params.keys[i];
+            kinds[i] = params.kinds[i];
+            bits[i] = params.bits[i];
+            if (ref instanceof Params) {
+                refs[i] = new Params((Params) ref);
+            } else if (ref instanceof JSONObject) {
+                refs[i] = new JSONObject(ref.toString());
+            } else if (ref instanceof JSONArray) {
+                refs[i] = new JSONArray(ref.toString());
+            } else {
+                refs[i] = ref;
+            }
+        }
+        size = params.size;
     }
     
     public Params(JSONObject json) {
-        this(json, new HashMap<>());
+        this(Math.max(json.length(), CAPACITY));
+        
+        final Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            set(key, json.opt(key));
+        }
     }
     
-    private Params(JSONObject json, Map<String, TypeToken<?>> types) {
-        this.json = json;
-        this.types = types;
+    private Params(int capacity) {
+        keys = new String[capacity];
+        kinds = new byte[capacity];
+        bits = new long[capacity];
+        refs = new Object[capacity];
     }
     
     @Override
     public JSONObject toJson() {
+        final JSONObject json = new JSONObject();
+        
+        try {
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case BOOLEAN:
+                        json.put(keys[i], bits[i] != 0);
+                        break;
+                    
+                    case INTEGER:
+                        json.put(keys[i], (int) bits[i]);
+                        break;
+                    
+                    case LONG:
+                        json.put(keys[i], bits[i]);
+                        break;
+                    
+                    case FLOAT:
+                        json.put(keys[i], (Object) (float) doubleAt(i));
+                        break;
+                    
+                    case DOUBLE:
+                        json.put(keys[i], doubleAt(i));
+                        break;
+                    
+                    case PARAMS:
+                        json.put(keys[i], ((Params) refs[i]).toJson());
+                        break;
+                    
+                    default:
+                        json.put(keys[i], refs[i]);
+                }
+            }
+        } catch (JSONException e) {
+            // values are checked when they get put
+            throw new IllegalStateException(e);
+        }
+        
         return json;
     }
     
@@ -84,17 +169,7 @@ public class Params implements JsonParams {
         if (value == null) { // JSONObject does not persist nulls
             Log.w(BuildConfig.LOG_TAG, "null value for " + key);
         } else {
-            try {
-                types.put(key, new TypeToken<>(value.getClass()));
-                
-                if (value instanceof Date) {
-                    json.put(key, DDNA.TIMESTAMP_FORMAT.format(value));
-                } else {
-                    json.put(key, value);
-                }
-            } catch (JSONException e) {
-                throw new IllegalArgumentException(e);
-            }
+            set(key, value);
         }
         
         return this;
@@ -111,23 +186,132 @@ public class Params implements JsonParams {
      * @throws IllegalArgumentException if the {@code key} is null or empty
      */
     public Params put(String key, JsonParams value) {
-        return put(key, (value != null) ? value.toJson() : null);
+        return put(key, (Object) value);
     }
     
+    @Nullable
     Class<?> typeOf(String key) {
-        return types.get(key).type;
+        final int index = indexOf(key);
+        if (index < 0) return null;
+        
+        switch (kinds[index]) {
+            case BOOLEAN:   return Boolean.class;
+            case INTEGER:   return Integer.class;
+            case LONG:      return Long.class;
+            case FLOAT:     return Float.class;
+            case DOUBLE:    return Double.class;
+            case STRING:    return String.class;
+            case DATE:      return Date.class;
+            case PARAMS:    return JSONObject.class;
+            default:        return refs[index].getClass();
+        }
     }
     
     boolean isEmpty() {
-        return (json.length() == 0);
+        return (size == 0);
     }
     
-    static final class TypeToken<T> {
-        
-        final Class<T> type;
+    int size() {
+        return size;
+    }
+    
+    /**
+     * @return the index of the {@code key}, or -1 if not present
+     */
+    int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (key.equals(keys[i])) return i;
+        }
+        return -1;
+    }
+    
+    String keyAt(int index) {
+        return keys[index];
+    }
+    
+    byte kindAt(int index) {
+        return kinds[index];
+    }
+    
+    /**
+     * @return the value for {@link #BOOLEAN}, {@link #INTEGER}, or
+     * {@link #LONG} kinds, with booleans as 1 or 0
+     */
+    long longAt(int index) {
+        return bits[index];
+    }
+    
+    /**
+     * @return the value for {@link #FLOAT} or {@link #DOUBLE} kinds
+     */
+    double doubleAt(int index) {
+        return Double.longBitsToDouble(bits[index]);
+    }
+    
+    /**
+     * @return the value for {@link #STRING} or {@link #DATE} kinds, or the
+     * nested {@link Params} or other value for the remaining kinds
+     */
+    Object refAt(int index) {
+        return refs[index];
+    }
+    
+    private void set(String key, Object value) {
+        if (value instanceof String) {
+            slot(key, STRING, 0, value);
+        } else if (value instanceof Integer) {
+            slot(key, INTEGER, (Integer) value, null);
+        } else if (value instanceof Long) {
+            slot(key, LONG, (Long) value, null);
+        } else if (value instanceof Boolean) {
+            slot(key, BOOLEAN, ((Boolean) value) ? 1 : 0, null);
+        } else if (value instanceof Double) {
+            slot(key, DOUBLE, bits((Double) value), null);
+        } else if (value instanceof Float) {
+            slot(key, FLOAT, bits((Float) value), null);
+        } else if (value instanceof Date) {
+            slot(key, DATE, 0, Timestamps.format((Date) value));
+        } else if (value instanceof Params) {
+            slot(key, PARAMS, 0, value);
+        } else if (value instanceof JsonParams) {
+            slot(key, OBJECT, 0, ((JsonParams) value).toJson());
+        } else {
+            if (value instanceof Number) {
+                check(((Number) value).doubleValue());
+            }
+            slot(key, OBJECT, 0, value);
+        }
+    }
+    
+    private void slot(String key, byte kind, long primitive, @Nullable Object ref) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (size == keys.length) {
+                final int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                bits = Arrays.copyOf(bits, capacity);
+                refs = Arrays.copyOf(refs, capacity);
+            }
+            
+            index = size++;
+            keys[index] = key;
+        }
         
-        TypeToken(Class<T> type) {
-            this.type = type;
+        kinds[index] = kind;
+        bits[index] = primitive;
+        refs[index] = ref;
+    }
+    
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(check(value));
+    }
+    
+    private static double check(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(
+                    "Forbidden numeric value: " + value);
         }
+        return value;
     }
 }
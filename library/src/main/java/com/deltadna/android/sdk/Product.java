@@ -45,7 +45,7 @@ public class Product<T extends Product<T>> implements JsonParams {
         
         try {
             if (!realCurrency.isEmpty()) {
-                contents.put("realCurrency", realCurrency.json);
+                contents.put("realCurrency", realCurrency.toJson());
             }
             if (virtualCurrencies.length() > 0) {
                 contents.put("virtualCurrencies", virtualCurrencies);
@@ -100,7 +100,7 @@ public class Product<T extends Product<T>> implements JsonParams {
                 new Params()
                         .put("virtualCurrencyName", name)
                         .put("virtualCurrencyType", type)
-                        .put("virtualCurrencyAmount", amount)).json);
+                        .put("virtualCurrencyAmount", amount)).toJson());
         
         return (T) this;
     }
@@ -123,7 +123,7 @@ public class Product<T extends Product<T>> implements JsonParams {
                 new Params()
                         .put("itemName", name)
                         .put("itemType", type)
-                        .put("itemAmount", amount)).json);
+                        .put("itemAmount", amount)).toJson());
         
         return (T) this;
     }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Thread-safe formatting and parsing of timestamps, in the
+ * {@code yyyy-MM-dd HH:mm:ss.SSS} format used for events and the
+ * {@code yyyy-MM-dd'T'HH:mm:ss.SSSZ} format used by Engage, always in UTC.
+ * <p>
+ * The date and time up to the second are cached, so formatting the current
+ * time repeatedly only needs to append the milliseconds. Parsing works on the
+ * characters directly into milliseconds since the epoch, without going
+ * through a {@link Date} or {@link java.util.Calendar}.
+ */
+final class Timestamps {
+
+    private static volatile Prefix prefix = new Prefix(Long.MIN_VALUE);
+
+    private Timestamps() {}
+
+    /**
+     * Appends {@code millis} since the epoch to {@code out}, in UTC.
+     */
+    static void append(long millis, StringBuilder out) {
+        final long second = floorDiv(millis, 1000);
+
+        Prefix cached = prefix;
+        if (cached.second != second) {
+            cached = new Prefix(second);
+            prefix = cached;
+        }
+
+        final int milli = (int) (millis - second * 1000);
+        out.append(cached.chars)
+                .append((char) ('0' + milli / 100))
+                .append((char) ('0' + milli / 10 % 10))
+                .append((char) ('0' + milli % 10));
+    }
+
+    static String format(long millis) {
+        final StringBuilder builder = new StringBuilder(23);
+        append(millis, builder);
+        return builder.toString();
+    }
+
+    static String format(Date date) {
+        return format(date.getTime());
+    }
+
+    static String now() {
+        return format(System.currentTimeMillis());
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd HH:mm:ss.SSS} timestamp in UTC.
+     *
+     * @return milliseconds since the epoch
+     *
+     * @throws ParseException if {@code text} is not in the expected format
+     */
+    static long parse(String text) throws ParseException {
+        return parse(text, ' ', false);
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd'T'HH:mm:ss.SSSZ} timestamp, where the zone
+     * may be {@code Z} or an offset such as {@code +0000} or {@code +00:00}.
+     *
+     * @return milliseconds since the epoch
+     *
+     * @throws ParseException if {@code text} is not in the expected format
+     */
+    static long parseIso(String text) throws ParseException {
+        return parse(text, 'T', true);
+    }
+
+    private static long parse(String text, char separator, boolean zoned)
+            throws ParseException {
+
+        if (text.length() < 23) {
+            throw new ParseException("Unparseable timestamp: " + text, text.length());
+        }
+
+        final int year = digits(text, 0, 4);
+        expect(text, 4, '-');
+        final int month = range(text, 5, digits(text, 5, 2), 1, 12);
+        expect(text, 7, '-');
+        final int day = range(text, 8, digits(text, 8, 2), 1, 31);
+        expect(text, 10, separator);
+        final int hours = range(text, 11, digits(text, 11, 2), 0, 23);
+        expect(text, 13, ':');
+        final int minutes = range(text, 14, digits(text, 14, 2), 0, 59);
+        expect(text, 16, ':');
+        final int seconds = range(text, 17, digits(text, 17, 2), 0, 59);
+        expect(text, 19, '.');
+        final int millis = digits(text, 20, 3);
+
+        final int offset = zoned ? offset(text, 23) : 0;
+        if (!zoned && text.length() != 23) {
+            throw new ParseException("Unparseable timestamp: " + text, 23);
+        }
+
+        return ((daysFromCivil(year, month, day) * 86400
+                + hours * 3600
+                + minutes * 60
+                + seconds
+                - offset) * 1000)
+                + millis;
+    }
+
+    /**
+     * @return the offset in seconds
+     */
+    private static int offset(String text, int index) throws ParseException {
+        if (index >= text.length()) {
+            throw new ParseException("Missing zone: " + text, index);
+        }
+
+        final char sign = text.charAt(index);
+        if (sign == 'Z' && text.length() == index + 1) {
+            return 0;
+        } else if (sign != '+' && sign != '-') {
+            throw new ParseException("Unparseable zone: " + text, index);
+        }
+
+        final int hours;
+        final int minutes;
+        switch (text.length() - index) {
+            case 3: // +HH
+                hours = digits(text, index + 1, 2);
+                minutes = 0;
+                break;
+
+            case 5: // +HHMM
+                hours = digits(text, index + 1, 2);
+                minutes = digits(text, index + 3, 2);
+                break;
+
+            case 6: // +HH:MM
+                hours = digits(text, index + 1, 2);
+                expect(text, index + 3, ':');
+                minutes = digits(text, index + 4, 2);
+                break;
+
+            default:
+                throw new ParseException("Unparseable zone: " + text, index);
+        }
+
+        final int offset = range(text, index + 1, hours, 0, 23) * 3600
+                + range(text, index + 1, minutes, 0, 59) * 60;
+        return (sign == '-') ? -offset : offset;
+    }
+
+    private static int digits(String text, int index, int count)
+            throws ParseException {
+
+        int value = 0;
+        for (int i = index; i < index + count; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new ParseException("Unexpected " + c + " in " + text, i);
+            }
+
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void expect(String text, int index, char expected)
+            throws ParseException {
+
+        if (text.charAt(index) != expected) {
+            throw new ParseException(
+                    "Expected " + expected + " in " + text,
+                    index);
+        }
+    }
+
+    private static int range(String text, int index, int value, int min, int max)
+            throws ParseException {
+
+        if (value < min || value > max) {
+            throw new ParseException("Out of range " + value + " in " + text, index);
+        }
+        return value;
+    }
+
+    /**
+     * Days since the epoch from a civil date, from Howard Hinnant's date
+     * algorithms.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        final long y = (month <= 2) ? year - 1 : year;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5
+                + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+        return era * 146097 + doe - 719468;
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long result = x / y;
+        return ((x % y != 0) && ((x ^ y) < 0)) ? result - 1 : result;
+    }
+
+    /**
+     * Date and time formatted up to, and including, the separator before the
+     * milliseconds.
+     */
+    private static final class Prefix {
+
+        final long second;
+        final char[] chars;
+
+        Prefix(long second) {
+            this.second = second;
+
+            // days to civil date, from Howard Hinnant's date algorithms
+            final long days = floorDiv(second, 86400);
+            final int seconds = (int) (second - days * 86400);
+
+            final long z = days + 719468;
+            final long era = (z >= 0 ? z : z - 146096) / 146097;
+            final long doe = z - era * 146097;
+            final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+            final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+            final long mp = (5 * doy + 2) / 153;
+            final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+            final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+            final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+            final StringBuilder builder = new StringBuilder(20);
+            final String years = Long.toString(year);
+            for (int i = years.length(); i < 4; i++) builder.append('0');
+            builder.append(years).append('-');
+            pad(builder, month).append('-');
+            pad(builder, day).append(' ');
+            pad(builder, seconds / 3600).append(':');
+            pad(builder, seconds / 60 % 60).append(':');
+            pad(builder, seconds % 60).append('.');
+
+            chars = new char[builder.length()];
+            builder.getChars(0, builder.length(), chars, 0);
+        }
+
+        private static StringBuilder pad(StringBuilder builder, int value) {
+            return builder
+                    .append((char) ('0' + value / 10))
+                    .append((char) ('0' + value % 10));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk;
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for event uploads, which stops batches from being read out
+ * of the store and sent while Collect cannot be reached.
+ * <p>
+ * The circuit opens after {@link #THRESHOLD} consecutive failed uploads and
+ * stays open for an exponentially growing backoff with jitter. Once that has
+ * elapsed, or the network connectivity changes, a single upload is let
+ * through as a probe which either closes the circuit again or reopens it for
+ * longer.
+ */
+final class UploadBreaker {
+    
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + UploadBreaker.class.getSimpleName();
+    
+    static final int THRESHOLD = 3;
+    static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(30);
+    
+    private final long base;
+    private final Random random;
+    private final Listener listener;
+    
+    private UploadCircuit state = UploadCircuit.CLOSED;
+    private int failures;
+    private int openings;
+    private long until;
+    
+    /**
+     * @param base      the backoff in milliseconds after the circuit opens
+     *                  for the first time
+     * @param random    source of jitter
+     * @param listener  notified whenever the state changes
+     */
+    UploadBreaker(long base, Random random, Listener listener) {
+        this.base = Math.max(base, 1);
+        this.random = random;
+        this.listener = listener;
+    }
+    
+    synchronized UploadCircuit state() {
+        return state;
+    }
+    
+    /**
+     * Checks whether an upload should go ahead, moving an open circuit to
+     * {@link UploadCircuit#HALF_OPEN} if its backoff has elapsed.
+     *
+     * @param now the current time in milliseconds
+     *
+     * @return {@code true} if the upload should go ahead
+     */
+    synchronized boolean allow(long now) {
+        if (state != UploadCircuit.OPEN) {
+            return true;
+        } else if (now < until) {
+            return false;
+        }
+        
+        set(UploadCircuit.HALF_OPEN);
+        return true;
+    }
+    
+    synchronized void succeeded() {
+        failures = 0;
+        openings = 0;
+        set(UploadCircuit.CLOSED);
+    }
+    
+    synchronized void failed(long now) {
+        failures++;
+        
+        if (state == UploadCircuit.HALF_OPEN || failures >= THRESHOLD) {
+            final long backoff = backoff(openings++);
+            Log.w(TAG, String.format(
+                    Locale.ENGLISH,
+                    "Pausing event uploads for %d ms after %d failures",
+                    backoff,
+                    failures));
+            
+            until = now + backoff;
+            set(UploadCircuit.OPEN);
+        }
+    }
+    
+    /**
+     * Lets the next upload through as a probe, as the network which the
+     * failures happened on may have changed.
+     */
+    synchronized void connectivityChanged(long now) {
+        if (state == UploadCircuit.OPEN) {
+            until = now;
+        }
+    }
+    
+    /**
+     * @param now       the current time in milliseconds
+     * @param interval  the regular interval between uploads in milliseconds
+     *
+     * @return the delay until the next upload should be attempted
+     */
+    synchronized long delay(long now, long interval) {
+        return (state == UploadCircuit.OPEN)
+                ? Math.max(until - now, 0)
+                : interval;
+    }
+    
+    private long backoff(int attempt) {
+        final long ceiling = Math.min(MAX_BACKOFF, base << Math.min(attempt, 20));
+        
+        return ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+    }
+    
+    private void set(UploadCircuit state) {
+        if (this.state != state) {
+            Log.d(TAG, "Upload circuit changed from " + this.state + " to " + state);
+            
+            this.state = state;
+            listener.onChanged(state);
+        }
+    }
+    
+    interface Listener {
+        
+        void onChanged(UploadCircuit state);
+    }
+}
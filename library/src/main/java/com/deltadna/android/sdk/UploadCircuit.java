@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk;
+
+/**
+ * State of the circuit breaker in front of event uploads to Collect.
+ *
+ * @see com.deltadna.android.sdk.listeners.EventListener#onUploadCircuitChanged(UploadCircuit)
+ */
+public enum UploadCircuit {
+    
+    /**
+     * Uploads are going through as normal.
+     */
+    CLOSED,
+    /**
+     * Uploads have been failing, so they are being skipped until the
+     * backoff elapses or the network connectivity changes.
+     */
+    OPEN,
+    /**
+     * A single upload is being let through to probe whether Collect can be
+     * reached again.
+     */
+    HALF_OPEN
+}
@@ -16,7 +16,18 @@
 
 package com.deltadna.android.sdk.helpers;
 
+import androidx.annotation.Nullable;
+
+import com.deltadna.android.sdk.Engagement;
 import com.deltadna.android.sdk.EventActionHandler;
+import com.deltadna.android.sdk.net.Transport;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * DeltaDNA runtime setting.
@@ -73,6 +84,30 @@ public class Settings{
      */
     private int httpRequestEngageTimeout = 5;
 
+    private Compression httpRequestCompression = Compression.NONE;
+	/**
+     * In bytes.
+     */
+    private int httpRequestCompressionThreshold = 1024;
+
+    private int eventUploadWindow = 1;
+
+    private int evaluationThreads = 1;
+
+    private int evaluationQueueSize = 256;
+
+    @Nullable
+    private Executor evaluationExecutor;
+
+    @Nullable
+    private Transport transport;
+
+    private boolean warmUpConnections;
+
+    private final Map<String, Engagement.Mode> engageModes = new HashMap<>();
+    private Set<String> prefetchDecisionPoints = Collections.emptySet();
+    private int prefetchFromHistory;
+
 	private boolean useInternalStorageForEvents;
 	private boolean useInternalStorageForEngage;
 	private boolean useInternalStorageForImageMessages;
@@ -267,6 +302,112 @@ public class Settings{
         return this;
     }
     
+    /**
+     * Gets how engagements for a decision point are served when a response
+     * for them has been cached.
+     *
+     * @param decisionPoint the decision point
+     *
+     * @return the mode, or {@code null} if none has been set
+     */
+    @Nullable
+    public synchronized Engagement.Mode getEngageMode(String decisionPoint) {
+        return engageModes.get(decisionPoint);
+    }
+    
+    /**
+     * Sets how engagements for a decision point should be served when a
+     * response for them has been cached, unless overridden by
+     * {@link Engagement#setMode(Engagement.Mode)}.
+     * <p>
+     * The default is {@link Engagement.Mode#NETWORK_FIRST}.
+     *
+     * @param decisionPoint the decision point
+     * @param mode          the mode, or {@code null} for the default
+     *
+     * @return this {@link Settings} instance
+     */
+    public synchronized Settings setEngageMode(
+            String decisionPoint,
+            @Nullable Engagement.Mode mode) {
+        
+        Preconditions.checkString(decisionPoint, "decisionPoint cannot be null or empty");
+        
+        if (mode == null) {
+            engageModes.remove(decisionPoint);
+        } else {
+            engageModes.put(decisionPoint, mode);
+        }
+        return this;
+    }
+    
+    /**
+     * Gets the decision points which will be prefetched when a session has
+     * been configured.
+     *
+     * @return the decision points
+     */
+    public Set<String> getPrefetchDecisionPoints() {
+        return prefetchDecisionPoints;
+    }
+    
+    /**
+     * Sets the decision points which should be requested in the background
+     * as soon as a session has been configured, so that the first request
+     * for each of them during the session can be answered without waiting
+     * for the network.
+     * <p>
+     * Only engagements without parameters, using the default flavour, will
+     * be answered from a prefetched response. Decision points which are not
+     * whitelisted by the session configuration will not be prefetched.
+     *
+     * @param decisionPoints the decision points
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if any decision point is null or empty
+     */
+    public Settings setPrefetchDecisionPoints(String... decisionPoints) {
+        final Set<String> temp = new LinkedHashSet<>(decisionPoints.length);
+        for (final String decisionPoint : decisionPoints) {
+            Preconditions.checkString(decisionPoint, "decisionPoint cannot be null or empty");
+            temp.add(decisionPoint);
+        }
+        
+        prefetchDecisionPoints = Collections.unmodifiableSet(temp);
+        return this;
+    }
+    
+    /**
+     * Gets the number of recently cached decision points which will be
+     * prefetched when a session has been configured.
+     *
+     * @return the number of decision points
+     */
+    public int getPrefetchFromHistory() {
+        return prefetchFromHistory;
+    }
+    
+    /**
+     * Sets the number of decision points, most recently cached first, which
+     * should be prefetched from those previously requested in addition to
+     * those set through {@link #setPrefetchDecisionPoints(String...)}.
+     * <p>
+     * The default is 0, which disables learning from history.
+     *
+     * @param count the number of decision points
+     *
+     * @return this {@link Settings} instance
+     *
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public Settings setPrefetchFromHistory(int count) {
+        Preconditions.checkArg(count >= 0, "count cannot be negative");
+        
+        prefetchFromHistory = count;
+        return this;
+    }
+    
     /**
      * Gets the number of retries to perform when an HTTP request fails.
      * <p>
@@ -364,6 +505,207 @@ public class Settings{
         httpRequestEngageTimeout = seconds;
     }
     
+    /**
+     * Gets the compression applied to Collect and Engage HTTP request bodies.
+     *
+     * @return the compression mode
+     */
+    public Compression getHttpRequestCompression() {
+        return httpRequestCompression;
+    }
+    
+    /**
+     * Sets the compression applied to Collect and Engage HTTP request bodies.
+     * Responses which have been compressed by the server are always
+     * decompressed.
+     *
+     * @param compression the compression mode
+     *
+     * @throws IllegalArgumentException if {@code compression} is null
+     */
+    public void setHttpRequestCompression(Compression compression) {
+        Preconditions.checkArg(compression != null, "compression cannot be null");
+        
+        httpRequestCompression = compression;
+    }
+    
+    /**
+     * Gets the minimum size in bytes of a request body for it to be
+     * compressed.
+     *
+     * @return the threshold in bytes
+     */
+    public int getHttpRequestCompressionThreshold() {
+        return httpRequestCompressionThreshold;
+    }
+    
+    /**
+     * Sets the minimum size in bytes of a request body for it to be
+     * compressed, as compressing small bodies does not pay off.
+     *
+     * @param bytes the threshold in bytes
+     *
+     * @throws IllegalArgumentException if the {@code bytes} is negative
+     */
+    public void setHttpRequestCompressionThreshold(int bytes) {
+        Preconditions.checkArg(bytes >= 0, "value cannot be negative");
+        
+        httpRequestCompressionThreshold = bytes;
+    }
+    
+    /**
+     * Gets the maximum number of event batches which can be uploaded at the
+     * same time.
+     *
+     * @return the number of batches
+     */
+    public int getEventUploadWindow() {
+        return eventUploadWindow;
+    }
+    
+    /**
+     * Sets the maximum number of event batches which can be uploaded at the
+     * same time while the event store is being drained. Draining stops at
+     * the first failed batch, while those already in flight get completed.
+     *
+     * @param batches the number of batches
+     *
+     * @throws IllegalArgumentException if the {@code batches} is not positive
+     */
+    public void setEventUploadWindow(int batches) {
+        Preconditions.checkArg(batches > 0, "batches must be positive");
+        
+        eventUploadWindow = batches;
+    }
+    
+    /**
+     * Gets the number of threads used by the SDK for evaluating event
+     * triggers and dispatching engagements.
+     *
+     * @return the number of threads
+     */
+    public int getEvaluationThreads() {
+        return evaluationThreads;
+    }
+    
+    /**
+     * Sets the number of threads used by the SDK for evaluating event
+     * triggers and dispatching engagements. Needs to be set before the first
+     * event or engagement has been evaluated in order to have an effect.
+     * <p>
+     * The default is 1, which keeps evaluations in the order the events were
+     * recorded. With more threads event triggers may be evaluated out of
+     * order, which can affect their limits and execution counts.
+     *
+     * @param threads the number of threads
+     *
+     * @throws IllegalArgumentException if the {@code threads} is not positive
+     */
+    public void setEvaluationThreads(int threads) {
+        Preconditions.checkArg(threads > 0, "threads must be positive");
+        
+        evaluationThreads = threads;
+    }
+    
+    /**
+     * Gets the number of evaluations which can be waiting for a thread before
+     * further ones get rejected.
+     *
+     * @return the size of the queue
+     */
+    public int getEvaluationQueueSize() {
+        return evaluationQueueSize;
+    }
+    
+    /**
+     * Sets the number of evaluations which can be waiting for a thread before
+     * further ones get rejected. A rejected engagement completes its listener
+     * with a {@link java.util.concurrent.RejectedExecutionException}, and a
+     * rejected {@link com.deltadna.android.sdk.EventAction} does not evaluate
+     * its triggers. Needs to be set before the first event or engagement has
+     * been evaluated in order to have an effect.
+     *
+     * @param size the size of the queue
+     *
+     * @throws IllegalArgumentException if the {@code size} is not positive
+     */
+    public void setEvaluationQueueSize(int size) {
+        Preconditions.checkArg(size > 0, "size must be positive");
+        
+        evaluationQueueSize = size;
+    }
+    
+    /**
+     * Gets the app owned {@link Executor} used for evaluating event triggers
+     * and dispatching engagements.
+     *
+     * @return the executor, or {@code null} if the SDK uses its own threads
+     */
+    @Nullable
+    public Executor getEvaluationExecutor() {
+        return evaluationExecutor;
+    }
+    
+    /**
+     * Sets an app owned {@link Executor} to be used for evaluating event
+     * triggers and dispatching engagements, instead of the threads owned by
+     * the SDK. The evaluations perform database operations, so the executor
+     * should not run them on the main thread.
+     *
+     * @param executor the executor, or {@code null} for the SDK to use its
+     *                 own threads
+     */
+    public void setEvaluationExecutor(@Nullable Executor executor) {
+        evaluationExecutor = executor;
+    }
+    
+    /**
+     * Gets the app provided {@link Transport} used for performing requests.
+     *
+     * @return the transport, or {@code null} if the SDK uses the platform
+     *         {@link java.net.HttpURLConnection}
+     */
+    @Nullable
+    public Transport getTransport() {
+        return transport;
+    }
+    
+    /**
+     * Sets a {@link Transport} to be used for performing requests, for
+     * example to use a different HTTP stack. Needs to be set before the SDK
+     * is initialised.
+     *
+     * @param transport the transport, or {@code null} for the SDK to use the
+     *                  platform {@link java.net.HttpURLConnection}
+     */
+    public void setTransport(@Nullable Transport transport) {
+        this.transport = transport;
+    }
+    
+    /**
+     * Gets whether connections to Collect and Engage will be opened when the
+     * SDK is started, ahead of the first requests.
+     *
+     * @return {@code true} if connections will be warmed up
+     */
+    public boolean isWarmUpConnections() {
+        return warmUpConnections;
+    }
+    
+    /**
+     * Sets whether connections to Collect and Engage should be opened when
+     * the SDK is started, so that the first event upload and engagement do
+     * not have to wait for the connection to be set up. Connections are only
+     * warmed up once the consents of the user have been checked and given.
+     * <p>
+     * The default is {@code false}.
+     *
+     * @param warmUp whether to warm up connections
+     */
+    public void setWarmUpConnections(boolean warmUp) {
+        warmUpConnections = warmUp;
+    }
+    
     public boolean isUseInternalStorageForEvents() {
         return useInternalStorageForEvents;
     }
@@ -513,4 +855,19 @@ public class Settings{
 	public boolean getImageMessageAutoNavigateLinkEnabled() {
 		return mImageMessageAutoNavigateLinkEnabled;
 	}
+
+    /**
+     * Compression modes for HTTP request bodies.
+     */
+    public enum Compression {
+        /**
+         * Bodies are sent as they are.
+         */
+        NONE,
+        /**
+         * Bodies over the threshold are sent with
+         * {@code Content-Encoding: gzip}.
+         */
+        GZIP
+    }
 }
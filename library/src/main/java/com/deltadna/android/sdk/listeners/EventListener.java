@@ -16,6 +16,8 @@
 
 package com.deltadna.android.sdk.listeners;
 
+import com.deltadna.android.sdk.UploadCircuit;
+
 public interface EventListener {
     
     /**
@@ -43,4 +45,28 @@ public interface EventListener {
      * @param reason the reason for the failure
      */
     default void onImageCachingFailed(Throwable reason) {}
+    
+    /**
+     * Will be called when the circuit breaker for event uploads changes
+     * state, such as when uploads get paused after repeatedly failing to
+     * reach Collect.
+     *
+     * @param state the new state of the circuit
+     */
+    default void onUploadCircuitChanged(UploadCircuit state) {}
+    
+    /**
+     * Will be called when a round of engagement prefetching ends, either as
+     * a new session gets configured or the SDK stops.
+     *
+     * @param prefetched    the number of decision points which were
+     *                      prefetched
+     * @param hits          the number of decision points answered from a
+     *                      prefetched response
+     * @param requests      the number of distinct decision points which were
+     *                      requested
+     *
+     * @see com.deltadna.android.sdk.helpers.Settings#setPrefetchDecisionPoints(String...)
+     */
+    default void onEngagePrefetchReport(int prefetched, int hits, int requests) {}
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the body of a request straight into an {@link OutputStream}, so
+ * that the content does not have to be held in memory.
+ * <p>
+ * Implementations must be able to write the same content more than once, as
+ * the body may be read for hashing and written again when the request is
+ * retried.
+ */
+public interface BodyWriter {
+
+    /**
+     * Gets the number of bytes which will be written.
+     *
+     * @return the length in bytes, or {@code -1} if not known in advance
+     */
+    long length();
+
+    void writeTo(OutputStream output) throws IOException;
+}
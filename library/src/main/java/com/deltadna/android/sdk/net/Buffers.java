@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of read buffers shared by the network threads, along with helpers for
+ * reading response bodies in bulk.
+ */
+final class Buffers {
+    
+    static final int SIZE = 16 * 1024;
+    
+    private static final int MAX_POOLED = 8;
+    private static final int MAX_CHUNK = 256 * 1024;
+    
+    private static final ConcurrentLinkedQueue<byte[]> POOL =
+            new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    
+    private Buffers() {}
+    
+    static byte[] acquire() {
+        final byte[] buffer = POOL.poll();
+        if (buffer != null) {
+            POOLED.decrementAndGet();
+            return buffer;
+        } else {
+            return new byte[SIZE];
+        }
+    }
+    
+    static void release(byte[] buffer) {
+        if (buffer.length != SIZE) return;
+        
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Reads the whole of {@code input}, without closing it.
+     * <p>
+     * When {@code length} is known the bytes are read straight into an array
+     * of that size, otherwise they are read into a pooled buffer followed by
+     * growing chunks and each byte is copied exactly once into the result.
+     *
+     * @param input     the stream to read
+     * @param length    the expected length, or {@code -1} if not known
+     *
+     * @return the bytes read
+     *
+     * @throws IOException if reading fails
+     */
+    static byte[] read(InputStream input, int length) throws IOException {
+        if (length >= 0) {
+            // HttpURLConnection does not read beyond the content length
+            final byte[] bytes = new byte[length];
+            int count = 0;
+            int read;
+            while (     count < length
+                    && (read = input.read(bytes, count, length - count)) != -1) {
+                count += read;
+            }
+            
+            return (count == length) ? bytes : copy(null, bytes, count);
+        }
+        
+        final byte[] first = acquire();
+        try {
+            List<byte[]> full = null;
+            byte[] chunk = first;
+            int count = 0;
+            int read;
+            while ((read = input.read(chunk, count, chunk.length - count)) != -1) {
+                count += read;
+                
+                if (count == chunk.length) {
+                    if (full == null) full = new ArrayList<>();
+                    full.add(chunk);
+                    
+                    chunk = new byte[Math.min(chunk.length * 2, MAX_CHUNK)];
+                    count = 0;
+                }
+            }
+            
+            return copy(full, chunk, count);
+        } finally {
+            release(first);
+        }
+    }
+    
+    /**
+     * Copies the whole of {@code input} to {@code output} through a pooled
+     * buffer, without closing either of them.
+     *
+     * @return the number of bytes copied
+     *
+     * @throws IOException if reading or writing fails
+     */
+    static long copy(InputStream input, OutputStream output) throws IOException {
+        final byte[] buffer = acquire();
+        try {
+            long total = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+            
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+    
+    private static byte[] copy(List<byte[]> full, byte[] last, int count) {
+        int total = count;
+        if (full != null) {
+            for (final byte[] chunk : full) total += chunk.length;
+        }
+        
+        final byte[] result = new byte[total];
+        int offset = 0;
+        if (full != null) {
+            for (final byte[] chunk : full) {
+                System.arraycopy(chunk, 0, result, offset, chunk.length);
+                offset += chunk.length;
+            }
+        }
+        System.arraycopy(last, 0, result, offset, count);
+        
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net;
+
+import android.util.Log;
+
+import com.deltadna.android.sdk.BuildConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Locale;
+
+/**
+ * Streams a response body to a file.
+ * <p>
+ * The body is written to a temporary file next to the destination through a
+ * single pooled buffer, synced to storage, checked against the length of
+ * the response, and only then renamed over the destination. This way the
+ * destination either does not exist or has the complete body, even if the
+ * process is killed part way through.
+ */
+final class FileResponseBodyConverter
+        implements StreamingResponseBodyConverter<File> {
+    
+    private static final String TAG = BuildConfig.LOG_TAG
+            + ' '
+            + FileResponseBodyConverter.class.getSimpleName();
+    
+    private final File dest;
+    
+    FileResponseBodyConverter(File dest) {
+        this.dest = dest;
+    }
+    
+    @Override
+    public File convert(InputStream input, int length) throws IOException {
+        final File temp = File.createTempFile(
+                dest.getName() + '.',
+                NetworkManager.PARTIAL_FILE_SUFFIX,
+                dest.getParentFile());
+        
+        boolean renamed = false;
+        try {
+            final long written;
+            final FileOutputStream os = new FileOutputStream(temp);
+            try {
+                written = write(Channels.newChannel(input), os.getChannel());
+                os.getFD().sync();
+            } finally {
+                os.close();
+            }
+            
+            if (length >= 0 && written != length) {
+                throw new IOException(String.format(
+                        Locale.ENGLISH,
+                        "Expected %d bytes but received %d for %s",
+                        length,
+                        written,
+                        dest));
+            } else if (!temp.renameTo(dest)) {
+                throw new IOException("Failed to rename " + temp + " to " + dest);
+            }
+            
+            renamed = true;
+            return dest;
+        } finally {
+            if (!renamed && !temp.delete()) {
+                Log.w(TAG, "Failed to delete " + temp);
+            }
+        }
+    }
+    
+    @Override
+    public File convert(byte[] input) throws IOException {
+        final File temp = File.createTempFile(
+                dest.getName() + '.',
+                NetworkManager.PARTIAL_FILE_SUFFIX,
+                dest.getParentFile());
+        
+        try {
+            final FileOutputStream os = new FileOutputStream(temp);
+            try {
+                os.write(input);
+                os.getFD().sync();
+            } finally {
+                os.close();
+            }
+            
+            if (!temp.renameTo(dest)) {
+                throw new IOException("Failed to rename " + temp + " to " + dest);
+            }
+            
+            return dest;
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                Log.w(TAG, "Failed to delete " + temp);
+            }
+        }
+    }
+    
+    private static long write(ReadableByteChannel input, FileChannel output)
+            throws IOException {
+        
+        final byte[] array = Buffers.acquire();
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(array);
+            long total = 0;
+            while (input.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += output.write(buffer);
+                }
+                buffer.clear();
+            }
+            
+            return total;
+        } finally {
+            Buffers.release(array);
+        }
+    }
+}
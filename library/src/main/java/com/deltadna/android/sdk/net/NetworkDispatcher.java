@@ -25,43 +25,84 @@ import android.util.Log;
 import com.deltadna.android.sdk.BuildConfig;
 import com.deltadna.android.sdk.listeners.RequestListener;
 
+import java.util.EnumMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Handles enqueuing of network requests on an {@link ExecutorService}
+ * Handles enqueuing of network requests on separate lanes of threads
  * and calling back on the listeners (if supplied) either with the
  * success result or the failure cause.
+ * <p>
+ * Each {@link Lane} has its own threads, so that latency critical Engage
+ * requests never wait behind slow Collect uploads or image fetches. Within a
+ * lane requests are ordered by their priority, and then in the order they
+ * were enqueued, and the time they spend queued is recorded.
  */
 final class NetworkDispatcher {
     
     private static final String TAG = BuildConfig.LOG_TAG
             + ' '
             + NetworkDispatcher.class.getSimpleName();
-    private static final int MAX_REQUESTS = 10;
+    private static final int KEEP_ALIVE = 30;
     
-    private final Map<Request, Cancelable> requests =
-            new ConcurrentHashMap<>(MAX_REQUESTS);
+    /**
+     * Lanes on which requests get dispatched, with the number of requests
+     * which can be performed at the same time on each.
+     */
+    enum Lane {
+        
+        /**
+         * Engage and configuration requests, which are latency critical.
+         */
+        ENGAGE(4),
+        /**
+         * Collect uploads, which can take a long time to complete.
+         */
+        COLLECT(4),
+        /**
+         * Image message fetches and any other requests.
+         */
+        FETCH(2);
+        
+        final int threads;
+        
+        Lane(int threads) {
+            this.threads = threads;
+        }
+    }
     
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private final ScheduledExecutorService executor;
+    private final Map<Lane, LaneExecutor> lanes = new EnumMap<>(Lane.class);
+    private final ScheduledExecutorService retries =
+            Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("retries"));
+    private final AtomicLong sequence = new AtomicLong();
+    
+    private final Transport transport;
     
     NetworkDispatcher() {
-        this.executor = new NetworkExecutor(MAX_REQUESTS);
+        this(UrlConnectionTransport.INSTANCE);
+    }
+    
+    NetworkDispatcher(Transport transport) {
+        this.transport = transport;
+        
+        for (final Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneExecutor(lane));
+        }
     }
     
     CancelableRequest enqueue(
@@ -78,53 +119,96 @@ final class NetworkDispatcher {
         
         Log.d(TAG, "Enqueuing " + request);
         
-        final Future<Response<T>> future = executor.submit(request
-                .setConverter(converter)
-                .setRequestListener(listener));
+        request.setConverter(converter)
+                .setTransport(transport)
+                .setRequestListener(listener);
         
-        final Cancelable cancelable = new Cancelable(future);
-        requests.put(request, cancelable);
+        final Cancelable cancelable = new Cancelable();
+        submit(request, cancelable);
         
         return cancelable;
     }
     
-    private final class NetworkExecutor extends ScheduledThreadPoolExecutor {
+    /**
+     * @return the number of requests waiting on the {@code lane}
+     */
+    int queued(Lane lane) {
+        return lanes.get(lane).getQueue().size();
+    }
+    
+    /**
+     * @return the longest time a request has waited on the {@code lane} in
+     * milliseconds
+     */
+    long maxQueueTime(Lane lane) {
+        return TimeUnit.NANOSECONDS.toMillis(lanes.get(lane).maxQueued.get());
+    }
+    
+    /**
+     * @return the average time requests have waited on the {@code lane} in
+     * milliseconds
+     */
+    long averageQueueTime(Lane lane) {
+        final LaneExecutor executor = lanes.get(lane);
+        final long started = executor.started.get();
+        
+        return (started == 0)
+                ? 0
+                : TimeUnit.NANOSECONDS.toMillis(executor.totalQueued.get() / started);
+    }
+    
+    private <T> void submit(Request<T> request, Cancelable cancelable) {
+        final RequestTask<T> task = new RequestTask<>(
+                request,
+                cancelable,
+                sequence.getAndIncrement());
+        
+        if (cancelable.setTask(task)) {
+            lanes.get(request.lane).execute(task);
+        }
+    }
+    
+    private final class LaneExecutor extends ThreadPoolExecutor {
         
-        NetworkExecutor(int maxRequests) {
-            super(  1,
-                    new ThreadFactory() {
-                        private final ThreadFactory inner =
-                                Executors.defaultThreadFactory();
-                        
-                        @Override
-                        public Thread newThread(@NonNull Runnable r) {
-                            final Thread thread = inner.newThread(r);
-                            thread.setName(NetworkDispatcher.class.getSimpleName()
-                                    + "-" + thread.getName());
-                            return thread;
-                        }
-                    });
+        private final Lane lane;
+        
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong totalQueued = new AtomicLong();
+        private final AtomicLong maxQueued = new AtomicLong();
+        
+        LaneExecutor(Lane lane) {
+            super(  lane.threads,
+                    lane.threads,
+                    KEEP_ALIVE,
+                    TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    new NamedThreadFactory(lane.name().toLowerCase(Locale.US)));
             
-            setMaximumPoolSize(maxRequests);
+            this.lane = lane;
+            allowCoreThreadTimeOut(true);
         }
         
         @Override
-        protected <V> RunnableScheduledFuture<V> decorateTask(
-                Callable<V> callable,
-                RunnableScheduledFuture<V> task) {
+        protected void beforeExecute(Thread t, Runnable r) {
+            super.beforeExecute(t, r);
             
-            if (callable instanceof Request) {
-                final Request<V> request = (Request<V>) callable;
+            if (r instanceof RequestTask) {
+                final RequestTask<?> task = (RequestTask<?>) r;
+                final long queued = System.nanoTime() - task.enqueued;
                 
-                return new RequestFuture<>(
-                        super.decorateTask(callable, task),
-                        request,
-                        request.listener);
-            } else {
-                throw new IllegalArgumentException(String.format(
+                started.incrementAndGet();
+                totalQueued.addAndGet(queued);
+                long max;
+                while (queued > (max = maxQueued.get())) {
+                    if (maxQueued.compareAndSet(max, queued)) break;
+                }
+                
+                Log.v(TAG, String.format(
                         Locale.US,
-                        "Only %s tasks allowed",
-                        Request.class.getSimpleName()));
+                        "Performing %s after %d ms queued on %s",
+                        task.request,
+                        TimeUnit.NANOSECONDS.toMillis(queued),
+                        lane));
             }
         }
         
@@ -132,132 +216,100 @@ final class NetworkDispatcher {
         protected void afterExecute(Runnable r, Throwable t) {
             super.afterExecute(r, t);
             
-            if (t == null && r instanceof RequestFuture) {
-                final RequestFuture<Response> future = (RequestFuture) r;
-                
-                try {
-                    final Response response = future.get();
-                    
-                    Log.d(TAG, String.format(
-                            Locale.US,
-                            "Successfully performed %s with %s",
-                            future.request,
-                            response));
-                    
-                    if (future.listener != null) {
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                future.listener.onCompleted(response);
-                            }
-                        });
-                    }
-                    
-                    requests.remove(future.request);
-                } catch (InterruptedException e) {
-                    // TODO is this appropriate?
-                    Thread.currentThread().interrupt();
-                } catch (final ExecutionException e) {
-                    Log.w(TAG, "Failed performing " + future.request, e);
-                    
-                    if (future.request.shouldRetry()) {
-                        Log.w(TAG, "Retrying " + future.request);
-                        
-                        final Future newFuture = schedule(
-                                future.request,
-                                future.request.retryDelay,
-                                TimeUnit.MILLISECONDS);
-                        requests.get(future.request).setTask(newFuture);
-                    } else if (future.listener != null) {
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                future.listener.onError(e.getCause());
-                            }
-                        });
-
-                        requests.remove(future.request);
-                    }
-                } catch (CancellationException e) {
-                    // TODO should the listener be notified of the cancellation?
-                    Log.d(TAG, "Cancelled " + future.request);
-                    
-                    requests.remove(future.request);
-                }
-            } else if (t != null) {
+            if (t != null) {
                 Log.e(TAG, "Failed executing task", t);
             }
         }
     }
     
     /**
-     * Wrapper around a {@link RunnableScheduledFuture} which encapsulates
-     * some fields which we'll need for later use.
+     * Task for performing a {@link Request} once, which reports the outcome
+     * to the listener or schedules a retry once it is done.
      */
-    private final class RequestFuture<V> implements RunnableScheduledFuture<V> {
-
-        private final RunnableScheduledFuture<V> delegate;
+    private final class RequestTask<V>
+            extends FutureTask<Response<V>>
+            implements Comparable<RequestTask<?>> {
+        
         private final Request<V> request;
-        @Nullable
-        private final RequestListener<V> listener;
-
-        private RequestFuture(
-                RunnableScheduledFuture<V> delegate,
-                Request<V> request,
-                @Nullable RequestListener<V> listener) {
-
-            this.delegate = delegate;
+        private final Cancelable cancelable;
+        private final long sequence;
+        private final long enqueued = System.nanoTime();
+        
+        RequestTask(Request<V> request, Cancelable cancelable, long sequence) {
+            super(request);
+            
             this.request = request;
-            this.listener = listener;
-        }
-
-        @Override
-        public boolean isPeriodic() {
-            return delegate.isPeriodic();
-        }
-
-        @Override
-        public void run() {
-            delegate.run();
-        }
-
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            return delegate.cancel(mayInterruptIfRunning);
+            this.cancelable = cancelable;
+            this.sequence = sequence;
         }
-
-        @Override
-        public boolean isCancelled() {
-            return delegate.isCancelled();
-        }
-
-        @Override
-        public boolean isDone() {
-            return delegate.isDone();
-        }
-
+        
         @Override
-        public V get() throws InterruptedException, ExecutionException {
-            return delegate.get();
+        public int compareTo(@NonNull RequestTask<?> another) {
+            final int priority = Integer.compare(
+                    another.request.priority,
+                    request.priority);
+            
+            return (priority != 0)
+                    ? priority
+                    : Long.compare(sequence, another.sequence);
         }
-
+        
         @Override
-        public V get(long timeout, @NonNull TimeUnit unit) throws
-                InterruptedException,
-                ExecutionException,
-                TimeoutException {
+        protected void done() {
+            final RequestListener<V> listener = request.listener;
             
-            return delegate.get(timeout, unit);
+            try {
+                final Response<V> response = get();
+                
+                Log.d(TAG, String.format(
+                        Locale.US,
+                        "Successfully performed %s with %s",
+                        request,
+                        response));
+                
+                if (listener != null) {
+                    handler.post(() -> listener.onCompleted(response));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                Log.w(TAG, "Failed performing " + request, e);
+                
+                if (request.shouldRetry()) {
+                    Log.w(TAG, "Retrying " + request);
+                    
+                    retries.schedule(
+                            () -> submit(request, cancelable),
+                            request.nextRetryDelay(),
+                            TimeUnit.MILLISECONDS);
+                } else if (listener != null) {
+                    handler.post(() -> listener.onError(e.getCause()));
+                }
+            } catch (CancellationException e) {
+                // TODO should the listener be notified of the cancellation?
+                Log.d(TAG, "Cancelled " + request);
+            }
         }
-
-        @Override
-        public long getDelay(@NonNull TimeUnit unit) {
-            return delegate.getDelay(unit);
+    }
+    
+    private static final class NamedThreadFactory implements ThreadFactory {
+        
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        NamedThreadFactory(String name) {
+            this.name = name;
         }
-
+        
         @Override
-        public int compareTo(@NonNull Delayed another) {
-            return delegate.compareTo(another);
+        public Thread newThread(@NonNull Runnable r) {
+            final Thread thread = new Thread(
+                    r,
+                    NetworkDispatcher.class.getSimpleName()
+                            + '-' + name
+                            + '-' + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
     
@@ -268,19 +320,25 @@ final class NetworkDispatcher {
      */
     private static final class Cancelable implements CancelableRequest {
         
+        @Nullable
         private Future task;
-        
-        Cancelable(Future task) {
-            this.task = task;
-        }
+        private boolean cancelled;
         
         @Override
         public synchronized void cancel() {
-            task.cancel(false);
+            cancelled = true;
+            if (task != null) {
+                task.cancel(false);
+            }
         }
         
-        synchronized void setTask(Future task) {
+        /**
+         * @return {@code false} if the request has been cancelled and the
+         * {@code task} should not be submitted
+         */
+        synchronized boolean setTask(Future task) {
             this.task = task;
+            return !cancelled;
         }
     }
 }
@@ -27,8 +27,12 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
@@ -39,9 +43,23 @@ import java.util.Locale;
  */
 public class NetworkManager {
     
+    /**
+     * Suffix of the temporary files which {@link #fetch(String, File,
+     * RequestListener)} downloads into, before they are renamed to the
+     * destination.
+     */
+    public static final String PARTIAL_FILE_SUFFIX = ".part";
+    
     private static final String TAG = BuildConfig.LOG_TAG
             + ' '
             + NetworkManager.class.getSimpleName();
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {}
+        
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    };
     
     private final String collectUrl;
     private final String engageUrl;
@@ -80,7 +98,40 @@ public class NetworkManager {
         }
         md5 = md;
         
-        dispatcher = new NetworkDispatcher();
+        dispatcher = new NetworkDispatcher((settings.getTransport() != null)
+                ? settings.getTransport()
+                : UrlConnectionTransport.INSTANCE);
+    }
+    
+    /**
+     * Opens connections to the Collect and Engage hosts ahead of the first
+     * requests, so that those can reuse the kept alive connections instead
+     * of waiting for the TCP and TLS handshakes.
+     */
+    public void warmUp() {
+        for (final String url : new String[] { collectUrl, engageUrl }) {
+            final String root;
+            try {
+                final URL parsed = new URL(url);
+                root = new URL(
+                        parsed.getProtocol(),
+                        parsed.getHost(),
+                        parsed.getPort(),
+                        "/").toString();
+            } catch (MalformedURLException e) {
+                Log.w(TAG, "Failed to warm up connection to " + url, e);
+                continue;
+            }
+            
+            Log.v(TAG, "Warming up connection to " + root);
+            dispatcher.enqueue(
+                    new Request.Builder<Void>()
+                            .head()
+                            .url(root)
+                            .lane(NetworkDispatcher.Lane.FETCH)
+                            .build(),
+                    null);
+        }
     }
 
     public CancelableRequest get(String url, @Nullable RequestListener<JSONObject> listener) {
@@ -89,6 +140,8 @@ public class NetworkManager {
                 .url(url)
                 .maxRetries(settings.getHttpRequestMaxRetries())
                 .retryDelay(settings.getHttpRequestRetryDelay() * 1000)
+                .lane(NetworkDispatcher.Lane.FETCH)
+                .priority(Request.PRIORITY_HIGH)
                 .build();
         return dispatcher.enqueue(request, ResponseBodyConverter.JSON, listener);
     }
@@ -98,7 +151,7 @@ public class NetworkManager {
             @Nullable RequestListener<Void> listener) {
 
         Request.Builder<Void> builder = new Request.Builder<Void>()
-                .post(RequestBody.json(payload))
+                .post(compress(RequestBody.json(payload)))
                 .url(payload.has("eventList")
                          ? buildHashedEndpoint(collectUrl + "/bulk", payload.toString())
                          : buildHashedEndpoint(collectUrl, payload.toString()))
@@ -106,13 +159,36 @@ public class NetworkManager {
                 .header("Accept", "application/json")
                 .maxRetries(settings.getHttpRequestMaxRetries())
                 .retryDelay(settings.getHttpRequestRetryDelay() * 1000)
-                .connectionTimeout(settings.getHttpRequestCollectTimeout() * 1000);
+                .connectionTimeout(settings.getHttpRequestCollectTimeout() * 1000)
+                .lane(NetworkDispatcher.Lane.COLLECT);
 
         addPIPLHeadersToRequest(builder);
         
         return dispatcher.enqueue(builder.build(), listener);
     }
     
+    /**
+     * Uploads a bulk collect payload which is streamed into the request by
+     * {@code payload}, so that the events do not have to be held in memory.
+     */
+    public CancelableRequest collectBulk(
+            BodyWriter payload,
+            @Nullable RequestListener<Void> listener) {
+
+        Request.Builder<Void> builder = new Request.Builder<Void>()
+                .post(compress(RequestBody.json(payload)))
+                .url(buildHashedEndpoint(collectUrl, payload))
+                .header("Accept", "application/json")
+                .maxRetries(settings.getHttpRequestMaxRetries())
+                .retryDelay(settings.getHttpRequestRetryDelay() * 1000)
+                .connectionTimeout(settings.getHttpRequestCollectTimeout() * 1000)
+                .lane(NetworkDispatcher.Lane.COLLECT);
+
+        addPIPLHeadersToRequest(builder);
+
+        return dispatcher.enqueue(builder.build(), listener);
+    }
+    
     public CancelableRequest engage(
             JSONObject payload,
             RequestListener<JSONObject> listener) {
@@ -140,10 +216,14 @@ public class NetworkManager {
         }
 
         Request.Builder<JSONObject> builder = new Request.Builder<JSONObject>()
-                .post(RequestBody.json(payload))
+                .post(compress(RequestBody.json(payload)))
                 .url(buildHashedEndpoint(engageUrl, payload.toString()))
                 .header("Accept", "application/json")
-                .connectionTimeout(timeoutInSeconds * 1000);
+                .connectionTimeout(timeoutInSeconds * 1000)
+                .lane(NetworkDispatcher.Lane.ENGAGE)
+                .priority(isConfigurationRequest
+                        ? Request.PRIORITY_NORMAL
+                        : Request.PRIORITY_HIGH);
 
         addPIPLHeadersToRequest(builder);
 
@@ -155,29 +235,21 @@ public class NetworkManager {
     
     public CancelableRequest fetch(
             String url,
-            final File dest,
+            File dest,
             RequestListener<File> listener) {
 
         Request.Builder<File> builder = new Request.Builder<File>()
                 .get()
                 .url(url)
-                .connectionTimeout(settings.getHttpRequestEngageTimeout() * 1000);
+                .connectionTimeout(settings.getHttpRequestEngageTimeout() * 1000)
+                .lane(NetworkDispatcher.Lane.FETCH);
 
         addPIPLHeadersToRequest(builder);
         
         // TODO tweak timeouts as this should come back quickly as well
         return dispatcher.enqueue(
                 builder.build(),
-                new ResponseBodyConverter<File>() {
-                    @Override
-                    public File convert(byte[] input) throws Exception {
-                        final FileOutputStream os = new FileOutputStream(dest);
-                        os.write(input);
-                        os.close();
-                        
-                        return dest;
-                    }
-                },
+                new FileResponseBodyConverter(dest),
                 listener);
     }
     
@@ -194,7 +266,10 @@ public class NetworkManager {
                 throw new IllegalStateException(e);
             }
             
-            final byte[] digest = md5.digest(messageBytes);
+            final byte[] digest;
+            synchronized (md5) {
+                digest = md5.digest(messageBytes);
+            }
             for (final byte b : digest) {
                 builder.append(String.format(Locale.US, "%02X", b));
             }
@@ -203,6 +278,55 @@ public class NetworkManager {
         return builder.toString();
     }
 
+    /**
+     * Builds the endpoint for a streamed {@code payload}, which is read once
+     * through the digest to compute the hash without being held in memory.
+     */
+    private String buildHashedEndpoint(String endpoint, BodyWriter payload) {
+        if (hash == null || md5 == null) return endpoint;
+        
+        final StringBuilder builder = new StringBuilder(endpoint);
+        builder.append("/hash/");
+        
+        final byte[] digest;
+        synchronized (md5) {
+            md5.reset();
+            try {
+                payload.writeTo(new DigestOutputStream(NULL_STREAM, md5));
+            } catch (IOException e) {
+                md5.reset();
+                throw new IllegalStateException("Failed hashing payload", e);
+            }
+            try {
+                md5.update(hash.getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            digest = md5.digest();
+        }
+        
+        for (final byte b : digest) {
+            builder.append(String.format(Locale.US, "%02X", b));
+        }
+        
+        return builder.toString();
+    }
+
+    /**
+     * Applies the configured compression to {@code body}, as long as it is
+     * large enough for compression to be worth it.
+     */
+    private RequestBody compress(RequestBody body) {
+        if (settings.getHttpRequestCompression() != Settings.Compression.GZIP) {
+            return body;
+        }
+        
+        final long length = body.length();
+        return (length < 0 || length >= settings.getHttpRequestCompressionThreshold())
+                ? body.gzip()
+                : body;
+    }
+
     private void addPIPLHeadersToRequest(Request.Builder requestBuilder) {
         if (DDNA.instance().consentTracker.useConsentStatus == ConsentStatus.consentGiven) {
             requestBuilder.header("PIPL_CONSENT", "");
@@ -27,6 +27,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.Callable;
 
 /**
@@ -37,8 +38,13 @@ import java.util.concurrent.Callable;
  */
 final class Request<T> implements Callable<Response<T>> {
     
+    static final int PRIORITY_NORMAL = 0;
+    static final int PRIORITY_HIGH = 1;
+    
     private static final int CONNECTION_TIMEOUT = 15 * 1000;
     private static final int READ_TIMEOUT = 10 * 1000;
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+    private static final Random JITTER = new Random();
     
     private final URL url;
     private final RequestMethod method;
@@ -52,8 +58,11 @@ final class Request<T> implements Callable<Response<T>> {
     
     @Nullable
     private ResponseBodyConverter<T> converter;
+    private Transport transport = UrlConnectionTransport.INSTANCE;
     
     // TODO following members should perhaps be moved out
+    final NetworkDispatcher.Lane lane;
+    final int priority;
     final int retryDelay;
     @Nullable
     RequestListener<T> listener;
@@ -67,7 +76,9 @@ final class Request<T> implements Callable<Response<T>> {
             int connectionTimeout,
             int readTimeout,
             int maxRetries,
-            int retryDelay) {
+            int retryDelay,
+            NetworkDispatcher.Lane lane,
+            int priority) {
         
         this.url = url;
         this.method = method;
@@ -78,6 +89,8 @@ final class Request<T> implements Callable<Response<T>> {
         this.readTimeout = readTimeout;
         this.maxRetries = maxRetries;
         this.retryDelay = retryDelay;
+        this.lane = lane;
+        this.priority = priority;
     }
     
     Request<T> setConverter(@Nullable ResponseBodyConverter<T> converter) {
@@ -85,6 +98,11 @@ final class Request<T> implements Callable<Response<T>> {
         return this;
     }
     
+    Request<T> setTransport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+    
     Request<T> setRequestListener(@Nullable RequestListener<T> listener) {
         this.listener = listener;
         return this;
@@ -94,13 +112,30 @@ final class Request<T> implements Callable<Response<T>> {
         return (runs <= maxRetries);
     }
     
+    /**
+     * @return the delay before the next retry in milliseconds, which is the
+     *         configured delay for the first retry. Later retries of Collect
+     *         uploads back off exponentially with jitter, so that clients
+     *         which failed at the same time do not retry at the same time.
+     */
+    long nextRetryDelay() {
+        if (lane != NetworkDispatcher.Lane.COLLECT || runs <= 1) return retryDelay;
+        
+        final long ceiling = Math.max(
+                retryDelay,
+                Math.min(MAX_RETRY_DELAY, (long) retryDelay << Math.min(runs - 1, 16)));
+        
+        return retryDelay + (long) (JITTER.nextDouble() * (ceiling - retryDelay));
+    }
+    
     @Override
     public Response<T> call() throws Exception {
         runs++;
         
         HttpURLConnection connection = null;
+        boolean reusable = false;
         try {
-            connection = (HttpURLConnection) url.openConnection();
+            connection = transport.open(url);
             
             connection.setConnectTimeout(connectionTimeout);
             connection.setReadTimeout(readTimeout);
@@ -117,10 +152,13 @@ final class Request<T> implements Callable<Response<T>> {
             
             connection.connect();
             
-            return Response.create(connection, converter);
+            final Response<T> response = Response.create(connection, converter);
+            // body has been read in full so the connection can be kept alive
+            reusable = true;
+            return response;
         } finally {
             if (connection != null) {
-                connection.disconnect();
+                transport.release(connection, reusable);
             }
         }
     }
@@ -132,6 +170,8 @@ final class Request<T> implements Callable<Response<T>> {
                 .add("method", method)
                 .add("headers", headers)
                 .add("body", body)
+                .add("lane", lane)
+                .add("priority", priority)
                 .toString();
     }
 
@@ -151,6 +191,8 @@ final class Request<T> implements Callable<Response<T>> {
         private int readTimeout = READ_TIMEOUT;
         private int maxRetries;
         private int retryDelay;
+        private NetworkDispatcher.Lane lane = NetworkDispatcher.Lane.FETCH;
+        private int priority = PRIORITY_NORMAL;
         
         Builder() {
             method = RequestMethod.GET;
@@ -161,6 +203,10 @@ final class Request<T> implements Callable<Response<T>> {
             return method(RequestMethod.GET, null);
         }
         
+        Builder<T> head() {
+            return method(RequestMethod.HEAD, null);
+        }
+        
         Builder<T> post(RequestBody body) {
             Preconditions.checkArg(body != null, "body cannot be empty");
             return method(RequestMethod.POST, body);
@@ -204,6 +250,17 @@ final class Request<T> implements Callable<Response<T>> {
             return this;
         }
         
+        Builder<T> lane(NetworkDispatcher.Lane lane) {
+            Preconditions.checkArg(lane != null, "lane cannot be null");
+            this.lane = lane;
+            return this;
+        }
+        
+        Builder<T> priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+        
         Request<T> build() {
             Preconditions.checkArg(url != null, "url has not been specified");
             return new Request<>(
@@ -214,7 +271,9 @@ final class Request<T> implements Callable<Response<T>> {
                     connectionTimeout,
                     readTimeout,
                     maxRetries,
-                    retryDelay);
+                    retryDelay,
+                    lane,
+                    priority);
         }
         
         private Builder<T> method(
@@ -16,46 +16,111 @@
 
 package com.deltadna.android.sdk.net;
 
+import androidx.annotation.Nullable;
+
 import com.deltadna.android.sdk.helpers.Objects;
 import com.deltadna.android.sdk.helpers.Preconditions;
 
 import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * HTTP message body for a {@link Request}.
+ * <p>
+ * The body is either held in memory as {@link #content}, or streamed into
+ * the connection by a {@link BodyWriter}.
  */
 final class RequestBody {
     
     private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8 * 1024;
     
     final String type;
+    @Nullable
     final byte[] content;
+    @Nullable
+    final BodyWriter writer;
+    final boolean gzip;
     
     RequestBody(String type, byte[] content) {
-        Preconditions.checkArg(
-                !type.isEmpty(),
-                "type cannot be null or empty");
+        this(type, content, null, false);
+        
         Preconditions.checkArg(
                 content != null && content.length > 0,
                 "content cannot be null or empty");
+    }
+    
+    RequestBody(String type, BodyWriter writer) {
+        this(type, null, writer, false);
+        
+        Preconditions.checkArg(writer != null, "writer cannot be null");
+    }
+    
+    private RequestBody(
+            String type,
+            @Nullable byte[] content,
+            @Nullable BodyWriter writer,
+            boolean gzip) {
+        
+        Preconditions.checkArg(
+                !type.isEmpty(),
+                "type cannot be null or empty");
         
         this.type = type;
         this.content = content;
+        this.writer = writer;
+        this.gzip = gzip;
+    }
+    
+    /**
+     * Gets the length of the uncompressed body.
+     *
+     * @return the length in bytes, or {@code -1} if not known in advance
+     */
+    long length() {
+        return (content != null) ? content.length : writer.length();
+    }
+    
+    /**
+     * Creates a copy of this body which will be compressed with gzip while
+     * being written to the connection.
+     */
+    RequestBody gzip() {
+        return new RequestBody(type, content, writer, true);
     }
     
     void fill(HttpURLConnection connection) throws IOException {
-        connection.setFixedLengthStreamingMode(content.length);
+        if (gzip) {
+            // compressed length is only known once written
+            connection.setChunkedStreamingMode(0);
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        } else if (length() >= 0) {
+            connection.setFixedLengthStreamingMode((int) length());
+        } else {
+            connection.setChunkedStreamingMode(0);
+        }
         connection.setRequestProperty("Content-Type", type);
         
         OutputStream output = null;
         try {
             output = connection.getOutputStream();
-            output.write(content);
+            if (gzip) {
+                output = new GZIPOutputStream(output, BUFFER_SIZE);
+            } else if (content == null) {
+                output = new BufferedOutputStream(output, BUFFER_SIZE);
+            }
+            
+            if (content != null) {
+                output.write(content);
+            } else {
+                writer.writeTo(output);
+            }
         } finally {
             if (output != null) {
                 output.close();
@@ -67,7 +132,8 @@ final class RequestBody {
     public String toString() {
         return new Objects.ToStringHelper(this)
                 .add("type", type)
-                .add("content", new String(content))
+                .add("content", (content != null) ? new String(content) : writer)
+                .add("gzip", gzip)
                 .toString();
     }
     
@@ -76,4 +142,8 @@ final class RequestBody {
                 "application/json; charset=utf-8",
                 content.toString().getBytes(UTF8));
     }
+    
+    static RequestBody json(BodyWriter writer) {
+        return new RequestBody("application/json; charset=utf-8", writer);
+    }
 }
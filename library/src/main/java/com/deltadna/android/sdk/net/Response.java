@@ -20,16 +20,17 @@ import androidx.annotation.Nullable;
 
 import com.deltadna.android.sdk.helpers.Objects;
 
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 /**
  * HTTP response, including the code, body, and error if applicable.
  * <p>
  * The body is in byte form and {@link T} if a {@link ResponseBodyConverter}
- * has been provided.
+ * has been provided. Bodies consumed by a
+ * {@link StreamingResponseBodyConverter} will not be available in byte form.
  *
  * @param <T> type of the converted response body
  */
@@ -111,46 +112,67 @@ public final class Response<T> {
             @Nullable ResponseBodyConverter<T> converter) throws Exception {
         
         final int code = connection.getResponseCode();
-        return create(
-                code,
-                connection.getContentLength(),
-                isSuccess(code)
-                        ? connection.getInputStream()
-                        : connection.getErrorStream(),
-                converter);
+        final InputStream stream = isSuccess(code)
+                ? connection.getInputStream()
+                : connection.getErrorStream();
+        
+        if (    stream != null
+                && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            // compressed length is no use for sizing the buffer
+            return create(code, -1, new GZIPInputStream(stream), converter);
+        } else {
+            return create(
+                    code,
+                    connection.getContentLength(),
+                    stream,
+                    converter);
+        }
     }
     
     private static <T> Response<T> create(
             int code,
             int contentLength,
-            InputStream stream,
+            @Nullable InputStream stream,
             @Nullable ResponseBodyConverter<T> converter) throws Exception {
         
-        final ByteArrayOutputStream buffer;
+        if (stream == null) {
+            return new Response<>(
+                    code,
+                    false,
+                    new byte[0],
+                    (isSuccess(code) && converter != null)
+                            ? converter.convert(new byte[0])
+                            : null,
+                    !isSuccess(code) ? "" : null);
+        }
+        
         //noinspection TryFinallyCanBeTryWithResources
         try {
-            buffer = (contentLength != -1)
-                    ? new ByteArrayOutputStream(contentLength)
-                    : new ByteArrayOutputStream();
-            int read;
-            while ((read = stream.read()) != -1) {
-                buffer.write(read);
+            if (isSuccess(code) && converter instanceof StreamingResponseBodyConverter) {
+                return new Response<>(
+                        code,
+                        false,
+                        null,
+                        ((StreamingResponseBodyConverter<T>) converter).convert(
+                                stream,
+                                contentLength),
+                        null);
             }
+            
+            final byte[] bytes = Buffers.read(stream, contentLength);
+            return new Response<>(
+                    code,
+                    false,
+                    bytes,
+                    (isSuccess(code) && converter != null)
+                            ? converter.convert(bytes)
+                            : null,
+                    !isSuccess(code)
+                            ? ResponseBodyConverter.STRING.convert(bytes)
+                            : null);
         } finally {
             stream.close();
         }
-        
-        final byte[] bytes = buffer.toByteArray();
-        return new Response<>(
-                code,
-                false,
-                bytes,
-                (isSuccess(code) && converter != null)
-                        ? converter.convert(bytes)
-                        : null,
-                !isSuccess(code)
-                        ? ResponseBodyConverter.STRING.convert(bytes)
-                        : null);
     }
     
     static boolean isSuccess(int code) {
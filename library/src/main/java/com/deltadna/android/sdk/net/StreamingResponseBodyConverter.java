@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net;
+
+import java.io.InputStream;
+
+/**
+ * {@link ResponseBodyConverter} which can consume the body of a successful
+ * {@link Response} straight from the connection, without it being read into
+ * memory first.
+ * <p>
+ * Responses converted this way will not have their {@link Response#bytes}
+ * set. The byte form of {@link #convert(byte[])} is still used for bodies
+ * which have already been read, such as from a cache.
+ *
+ * @param <T> type to convert the {@link Response} body to
+ */
+interface StreamingResponseBodyConverter<T> extends ResponseBodyConverter<T> {
+    
+    /**
+     * Converts the body of a response, which will be closed by the caller.
+     *
+     * @param input     the body of the response
+     * @param length    length of the body, or {@code -1} if not known
+     *
+     * @return the converted body
+     *
+     * @throws Exception if the conversion fails
+     */
+    T convert(InputStream input, int length) throws Exception;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens the connections which the SDK performs its HTTP requests over, and
+ * decides what happens to them afterwards.
+ * <p>
+ * The default transport uses the platform {@link HttpURLConnection}, which
+ * keeps connections alive and pools them between requests to the same host.
+ * An app can provide its own transport through
+ * {@link com.deltadna.android.sdk.helpers.Settings#setTransport(Transport)},
+ * for example one backed by OkHttp's {@code OkUrlFactory} in order to use
+ * HTTP/2 multiplexing.
+ * <p>
+ * Implementations need to be thread-safe, as requests are performed on
+ * several threads at the same time.
+ */
+public interface Transport {
+    
+    /**
+     * Opens a connection for a request to {@code url}, which will be
+     * configured and connected by the SDK.
+     *
+     * @param url the url to request
+     *
+     * @return the connection
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    HttpURLConnection open(URL url) throws IOException;
+    
+    /**
+     * Called once the SDK has finished with a connection.
+     *
+     * @param connection    the connection
+     * @param reusable      {@code true} if the response was read in full and
+     *                      closed, so the underlying socket can be kept alive
+     *                      for another request, {@code false} if the request
+     *                      failed part way through
+     */
+    void release(HttpURLConnection connection, boolean reusable);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Default {@link Transport} using the platform {@link HttpURLConnection}.
+ * <p>
+ * Connections which have had their response read in full are not
+ * disconnected, which leaves the socket in the platform's keep-alive pool
+ * for the next request to the same host, avoiding another TCP and TLS
+ * handshake.
+ */
+final class UrlConnectionTransport implements Transport {
+    
+    static final Transport INSTANCE = new UrlConnectionTransport();
+    
+    private UrlConnectionTransport() {}
+    
+    @Override
+    public HttpURLConnection open(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+    
+    @Override
+    public void release(HttpURLConnection connection, boolean reusable) {
+        if (!reusable) connection.disconnect();
+    }
+}
@@ -105,6 +105,11 @@ class DDNADelegateTest {
             verify(tracking).requestEngagement(same(first), same(second))
         }
         
+        with(EngageBatch()) {
+            uut.requestEngagements(this)
+            verify(tracking).requestEngagements(same(this))
+        }
+        
         uut.requestSessionConfiguration()
         verify(tracking).requestSessionConfiguration()
         
@@ -178,6 +183,11 @@ class DDNADelegateTest {
             verify(nonTracking).requestEngagement(same(first), same(second))
         }
         
+        with(EngageBatch()) {
+            uut.requestEngagements(this)
+            verify(nonTracking).requestEngagements(same(this))
+        }
+        
         uut.requestSessionConfiguration()
         verify(nonTracking).requestSessionConfiguration()
         
@@ -325,6 +335,11 @@ class DDNADelegateTest {
             uut.requestEngagement(first, second)
             verify(nonTracking).requestEngagement(same(first), same(second))
         }
+        
+        with(EngageBatch()) {
+            uut.requestEngagements(this)
+            verify(nonTracking).requestEngagements(same(this))
+        }
 
         uut.requestSessionConfiguration()
         verify(nonTracking).requestSessionConfiguration()
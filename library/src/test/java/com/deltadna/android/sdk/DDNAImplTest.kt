@@ -41,6 +41,7 @@ import org.robolectric.RobolectricTestRunner
 import org.robolectric.RuntimeEnvironment
 import org.robolectric.shadows.ShadowLog
 import java.util.*
+import java.util.concurrent.Executor
 import java.util.concurrent.TimeUnit
 import com.deltadna.android.sdk.EventActionHandler.GameParametersHandler as GPH
 
@@ -69,7 +70,10 @@ class DDNAImplTest {
                 "environmentKey",
                 server.url("/collect").toString(),
                 server.url("/engage").toString(),
-                Settings(),
+                Settings().apply {
+                    evaluationExecutor = Executor { it.run() }
+                    isWarmUpConnections = false
+                },
                 null,
                 null,
                 null,
@@ -125,7 +129,7 @@ class DDNAImplTest {
         uut.settings.setBackgroundEventUpload(false)
         uut.userId = "id1"
         val database = DatabaseHelper(RuntimeEnvironment.application)
-        database.insertEngagementRow("dp", "flavour", Date(), byteArrayOf())
+        database.insertEngagementRow("dp", "flavour", Date(), byteArrayOf(), DatabaseHelper.Engagements.ENCODING_UTF8)
         database.insertActionRow("name", 1L, Date(), JSONObject())
 
         uut.startSdk("id2")
@@ -268,6 +272,27 @@ class DDNAImplTest {
         }
     }
 
+    @Test
+    fun `burst of events is recorded together`() {
+        server.enqueue(MockResponse().setResponseCode(200).setBody("{}"))
+        server.enqueue(MockResponse().setResponseCode(200))
+        uut.settings.setBackgroundEventUpload(false)
+        uut.startSdk()
+        server.takeRequest()
+
+        uut.recordEvents(listOf(KEvent("a"), KEvent("b", "c" to 1))).run()
+        uut.upload()
+
+        server.takeRequest().run {
+            assertThat(path).startsWith("/collect")
+            with(body.readUtf8()) {
+                assertThat(this).contains("\"eventName\":\"a\"")
+                assertThat(this).contains("\"eventName\":\"b\"")
+                assertThat(this).contains("\"c\":1")
+            }
+        }
+    }
+
     @Test
     fun `event whitelisting`() {
         // session config
@@ -593,7 +618,7 @@ class DDNAImplTest {
     fun `persistent data is cleared`() {
         val database = DatabaseHelper(RuntimeEnvironment.application).apply {
             insertEventRow(1L, Location.INTERNAL, "name", null, 2L)
-            insertEngagementRow("dp", "flavour", Date(), byteArrayOf())
+            insertEngagementRow("dp", "flavour", Date(), byteArrayOf(), DatabaseHelper.Engagements.ENCODING_UTF8)
             insertActionRow("name", 1L, Date(), JSONObject())
             insertImageMessage("url", Location.INTERNAL, "name", 1L, Date())
         }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.consent.ConsentStatus
+import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.net.Transport
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.*
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+class DDNAImplWarmUpTest {
+    
+    private val application by lazy { RuntimeEnvironment.application }
+    
+    private val opened = Collections.synchronizedList(mutableListOf<URL>())
+    
+    private lateinit var uut: DDNAImpl
+    
+    @Before
+    fun before() {
+        DDNA.initialise(DDNA.Configuration(
+                application,
+                "environmentKey",
+                COLLECT,
+                ENGAGE))
+        
+        uut = DDNAImpl(
+                application,
+                "environmentKey",
+                COLLECT,
+                ENGAGE,
+                Settings().apply {
+                    evaluationExecutor = Executor { it.run() }
+                    isWarmUpConnections = true
+                    setBackgroundEventUpload(false)
+                    transport = object : Transport {
+                        override fun open(url: URL): HttpURLConnection {
+                            opened.add(url)
+                            throw IOException("offline")
+                        }
+                        
+                        override fun release(connection: HttpURLConnection, reusable: Boolean) {}
+                    }
+                },
+                null,
+                null,
+                null,
+                null,
+                mutableSetOf(),
+                mutableSetOf())
+    }
+    
+    @After
+    fun after() {
+        DDNA.instance().scrub()
+    }
+    
+    @Test
+    fun `does not warm up before consent has been checked`() {
+        uut.startSdk()
+        Thread.sleep(500)
+        
+        assertThat(warmedUp()).isEmpty()
+    }
+    
+    @Test
+    fun `does not warm up when consent has been denied`() {
+        uut.consentTracker.useConsentStatus = ConsentStatus.consentDenied
+        uut.consentTracker.exportConsentStatus = ConsentStatus.consentGiven
+        
+        uut.startSdk()
+        Thread.sleep(500)
+        
+        assertThat(warmedUp()).isEmpty()
+    }
+    
+    @Test
+    fun `warms up once consent has been given`() {
+        uut.consentTracker.useConsentStatus = ConsentStatus.consentGiven
+        uut.consentTracker.exportConsentStatus = ConsentStatus.consentGiven
+        
+        uut.startSdk()
+        
+        val deadline = System.currentTimeMillis() + 1000
+        while (warmedUp().size < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertThat(warmedUp()).containsExactly(
+                "http://collect.test/",
+                "http://engage.test/")
+    }
+    
+    private fun warmedUp() = synchronized(opened) { opened.filter { it.path == "/" }.map { it.toString() } }
+    
+    private companion object {
+        
+        const val COLLECT = "http://collect.test/collect"
+        const val ENGAGE = "http://engage.test/engage"
+    }
+}
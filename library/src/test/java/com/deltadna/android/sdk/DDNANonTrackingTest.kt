@@ -179,6 +179,24 @@ class DDNANonTrackingTest {
         }
     }
     
+    @Test
+    fun requestEngagements() {
+        val listeners = Pair(
+                mock<EngageListener<KEngagement>>(),
+                mock<EngageListener<KEngagement>>())
+        
+        uut.requestEngagements(EngageBatch()
+                .add(KEngagement("a"), listeners.first)
+                .add(KEngagement("b"), listeners.second))
+        
+        verify(listeners.first).onCompleted(argThat {
+            getDecisionPoint() == "a" && isSuccessful && json.toString() == "{}"
+        })
+        verify(listeners.second).onCompleted(argThat {
+            getDecisionPoint() == "b" && isSuccessful && json.toString() == "{}"
+        })
+    }
+    
     @Test
     fun requestSessionConfiguration() {
         val l1 = mock<IEventListener>()
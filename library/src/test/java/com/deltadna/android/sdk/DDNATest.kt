@@ -213,6 +213,11 @@ class DDNATest {
             return this
         }
         
+        override fun requestEngagements(batch: EngageBatch?): DDNA {
+            listener.requestEngagements(batch)
+            return this
+        }
+        
         override fun requestSessionConfiguration(): DDNA {
             listener.requestSessionConfiguration()
             return this
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+/**
+ * Measures how long selecting the next upload batch takes as the number of
+ * queued event rows grows, which should stay flat.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Ignore("Benchmark, to be run manually")
+class DatabaseHelperBenchmark {
+    
+    private lateinit var uut: DatabaseHelper
+    
+    @Before
+    fun before() {
+        uut = DatabaseHelper(RuntimeEnvironment.application)
+    }
+    
+    @Test
+    fun `event rows selection stays flat as backlog grows`() {
+        val timings = listOf(1_000, 10_000, 50_000).map { backlog ->
+            uut.removeEventRows()
+            uut.writableDatabase.beginTransaction()
+            try {
+                (0 until backlog).forEach {
+                    uut.insertEventRow(
+                            it.toLong(), Location.INTERNAL, "$it", null, 1024)
+                }
+                uut.writableDatabase.setTransactionSuccessful()
+            } finally {
+                uut.writableDatabase.endTransaction()
+            }
+            
+            // warm up
+            repeat(5) { uut.eventRows.use { it.count } }
+            
+            val start = System.nanoTime()
+            repeat(RUNS) { uut.eventRows.use { it.count } }
+            val average = (System.nanoTime() - start) / RUNS
+            
+            println("$backlog rows: ${average / 1000}us per selection")
+            average
+        }
+        
+        assertThat(timings.last()).isLessThan(timings.first() * 5)
+    }
+    
+    private companion object {
+        
+        const val RUNS = 20
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.deltadna.android.sdk
 
+import android.provider.BaseColumns
 import com.github.salomonbrys.kotson.jsonObject
 import com.google.common.truth.Truth.*
 import org.json.JSONObject
@@ -38,6 +39,55 @@ class DatabaseHelperTest {
         uut = DatabaseHelper(RuntimeEnvironment.application)
     }
     
+    @Test
+    fun `event rows are returned up to the limit`() {
+        val half = EventStore.EVENTS_LIMIT / 2L
+        listOf(half, half, 1L, half).forEachIndexed { i, size ->
+            uut.insertEventRow(i.toLong(), Location.INTERNAL, "$i", null, size)
+        }
+        
+        uut.eventRows.use {
+            assertThat(it.count).isEqualTo(2)
+            it.moveToLast()
+            assertThat(it.getString(it.getColumnIndex("Name"))).isEqualTo("1")
+        }
+    }
+    
+    @Test
+    fun `event rows are returned across windows`() {
+        (0 until 200).forEach {
+            uut.insertEventRow(it.toLong(), Location.INTERNAL, "$it", null, 1)
+        }
+        
+        uut.eventRows.use { assertThat(it.count).isEqualTo(200) }
+    }
+    
+    @Test
+    fun `no event rows are returned when first is over the limit`() {
+        uut.insertEventRow(0, Location.INTERNAL, "0", null, EventStore.EVENTS_LIMIT + 1L)
+        uut.insertEventRow(1, Location.INTERNAL, "1", null, 1)
+        
+        uut.eventRows.use { assertThat(it.count).isEqualTo(0) }
+    }
+    
+    @Test
+    fun `event rows are removed within range`() {
+        (0 until 5).forEach {
+            uut.insertEventRow(it.toLong(), Location.INTERNAL, "$it", null, 1)
+        }
+        
+        val ids = uut.eventRows.use { cursor ->
+            (0 until cursor.count).map {
+                cursor.moveToPosition(it)
+                cursor.getLong(cursor.getColumnIndex(BaseColumns._ID))
+            }
+        }
+        
+        assertThat(uut.removeEventRows(ids[1], ids[3])).isEqualTo(3)
+        assertThat(uut.eventNames).containsExactly("0", "4")
+        assertThat(uut.eventsSize).isEqualTo(2)
+    }
+    
     @Test
     fun `null returned when action not found`() {
         assertThat(uut.getAction(1)).isNull()
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.listeners.EngageListener
+import com.deltadna.android.sdk.net.Response
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.*
+import org.json.JSONObject
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeoutException
+
+@RunWith(RobolectricTestRunner::class)
+class EngageDeadlineTest {
+    
+    private val store = mock<EngageStore>()
+    
+    private val uut = EngageDeadline(store, Executor { it.run() })
+    
+    @Test
+    fun `delivers result before deadline`() {
+        val engagement = KEngagement("a", "engagement")
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        uut.track(engagement, listener).onCompleted(engagement)
+        uut.expire()
+        
+        verify(listener).onCompleted(same(engagement))
+        verifyNoMoreInteractions(listener)
+        verifyZeroInteractions(store)
+    }
+    
+    @Test
+    fun `completes from cache after deadline and ignores late result`() {
+        val engagement = KEngagement("a", "engagement")
+        val listener = mock<EngageListener<KEngagement>>()
+        whenever(store.get(same(engagement))).then { JSONObject("{\"a\":1}") }
+        
+        val tracked = uut.track(engagement, listener)
+        uut.expire()
+        tracked.onCompleted(engagement)
+        tracked.onError(Exception())
+        
+        verify(listener).onCompleted(argThat {
+            isCached && json!!.getInt("a") == 1 && json!!.getBoolean("isCachedResponse")
+        })
+        verifyNoMoreInteractions(listener)
+    }
+    
+    @Test
+    fun `fails after deadline without cache`() {
+        val engagement = KEngagement("a", "engagement")
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        uut.track(engagement, listener)
+        uut.expire()
+        
+        verify(listener).onError(isA<TimeoutException>())
+    }
+    
+    @Test
+    fun `passes through further results once delivered`() {
+        val engagement = KEngagement("a", "engagement")
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        val tracked = uut.track(engagement, listener)
+        tracked.onCompleted(engagement)
+        uut.expire()
+        tracked.onCompleted(engagement)
+        
+        verify(listener, times(2)).onCompleted(same(engagement))
+    }
+    
+    @Test
+    fun `delivers result onto the engagement which was asked for`() {
+        val engagement = KEngagement("a", "engagement")
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        val tracked = uut.track(engagement, listener)
+        tracked.request.setResponse(Response(200, false, null, JSONObject("{\"a\":1}"), null))
+        tracked.onCompleted(tracked.request)
+        
+        verify(listener).onCompleted(same(engagement))
+        assertThat(engagement.json!!.getInt("a")).isEqualTo(1)
+    }
+    
+    @Test
+    fun `late result does not change delivered engagement`() {
+        val engagement = KEngagement("a", "engagement")
+        val listener = mock<EngageListener<KEngagement>>()
+        whenever(store.get(same(engagement))).then { JSONObject("{\"a\":1}") }
+        
+        val tracked = uut.track(engagement, listener)
+        assertThat(tracked.request).isNotSameAs(engagement)
+        assertThat(tracked.request).isInstanceOf(KEngagement::class.java)
+        
+        uut.expire()
+        tracked.request.setResponse(Response(200, false, null, JSONObject("{\"a\":2}"), null))
+        tracked.onCompleted(tracked.request)
+        
+        verify(listener).onCompleted(same(engagement))
+        verifyNoMoreInteractions(listener)
+        assertThat(engagement.isCached).isTrue()
+        assertThat(engagement.json!!.getInt("a")).isEqualTo(1)
+    }
+}
@@ -17,6 +17,7 @@
 package com.deltadna.android.sdk
 
 import com.deltadna.android.sdk.listeners.EngageListener
+import com.google.common.truth.Truth.assertThat
 import com.nhaarman.mockito_kotlin.*
 import org.json.JSONObject
 import org.junit.Before
@@ -49,7 +50,7 @@ class EngageFactoryTest {
         verify(analytics).requestEngagement(
                 argThat<Engagement<*>> {
                     getDecisionPoint() == "decisionPoint" &&
-                    params.json.toString() == "{\"a\":1}"
+                    params.toJson().toString() == "{\"a\":1}"
                 },
                 any())
     }
@@ -67,11 +68,39 @@ class EngageFactoryTest {
         verify(analytics).requestEngagement(
                 argThat<Engagement<*>> {
                     getDecisionPoint() == "decisionPoint" &&
-                    params.json.toString() == "{\"a\":1}"
+                    params.toJson().toString() == "{\"a\":1}"
                 },
                 any())
     }
     
+    @Test
+    fun batch() {
+        val parameters = mock<EngageFactory.Callback<JSONObject>>()
+        val image = mock<EngageFactory.Callback<ImageMessage>>()
+        
+        uut.batch()
+                .requestGameParameters("a", parameters)
+                .requestImageMessage("b", Params().put("c", 1), image)
+                .setTimeout(2)
+                .send()
+        
+        argumentCaptor<EngageBatch>().apply {
+            verify(analytics).requestEngagements(capture())
+            
+            assertThat(firstValue.size()).isEqualTo(2)
+            assertThat(firstValue.timeout).isEqualTo(2)
+            assertThat(firstValue.items().map { it.engagement.getDecisionPoint() })
+                    .containsExactly("a", "b")
+                    .inOrder()
+            assertThat(firstValue.items()[1].engagement.params.toJson().toString())
+                    .isEqualTo("{\"c\":1}")
+            
+            (firstValue.items()[0].listener as EngageListener<Engagement<*>>)
+                    .onError(mock())
+            verify(parameters).onCompleted(argThat { length() == 0 })
+        }
+    }
+    
     @Test
     fun callbacks() {
         var callback = mock<EngageFactory.Callback<JSONObject>>()
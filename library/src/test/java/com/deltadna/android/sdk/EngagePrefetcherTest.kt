@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.listeners.EngageListener
+import com.deltadna.android.sdk.net.Response
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.*
+import org.json.JSONObject
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+class EngagePrefetcherTest {
+    
+    private val settings = Settings()
+    private val store = mock<EngageStore>()
+    private val requester = mock<EngagePrefetcher.Requester>()
+    private val reporter = mock<EngagePrefetcher.Reporter>()
+    
+    private lateinit var uut: EngagePrefetcher
+    
+    @Before
+    fun before() {
+        uut = EngagePrefetcher(settings, store, Executor { it.run() }, requester, reporter)
+    }
+    
+    @Test
+    fun `does nothing without decision points`() {
+        uut.prefetch(emptySet())
+        
+        verifyZeroInteractions(requester, store)
+    }
+    
+    @Test
+    fun `prefetches declared and learned decision points once`() {
+        settings.setPrefetchDecisionPoints("a", "b")
+        settings.setPrefetchFromHistory(2)
+        whenever(store.recent(eq(EngagePrefetcher.INTERNAL_FLAVOUR), eq(2))).then {
+            listOf(Engagement<KEngagement>("b"), Engagement<KEngagement>("c", "other"))
+        }
+        
+        uut.prefetch(emptySet())
+        
+        argumentCaptor<Engagement<*>>().apply {
+            verify(requester, times(3)).request(capture(), any())
+            
+            assertThat(allValues.map { it.decisionPointAndFlavour }).containsExactly(
+                    "a@engagement", "b@engagement", "c@other").inOrder()
+        }
+    }
+    
+    @Test
+    fun `does not prefetch decision points which are not whitelisted`() {
+        settings.setPrefetchDecisionPoints("a", "b")
+        
+        uut.prefetch(setOf("b@engagement"))
+        
+        argumentCaptor<Engagement<*>>().apply {
+            verify(requester).request(capture(), any())
+            
+            assertThat(firstValue.decisionPointAndFlavour).isEqualTo("b@engagement")
+        }
+    }
+    
+    @Test
+    fun `answers first request from prefetched response`() {
+        settings.setPrefetchDecisionPoints("a")
+        prefetch(success())
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        assertThat(uut.serve(KEngagement("a", "engagement"), listener)).isTrue()
+        verify(listener).onCompleted(argThat { json.toString() == "{\"a\":1}" })
+        
+        assertThat(uut.serve(KEngagement("a", "engagement"), listener)).isFalse()
+    }
+    
+    @Test
+    fun `does not answer requests with parameters`() {
+        settings.setPrefetchDecisionPoints("a")
+        prefetch(success())
+        
+        assertThat(uut.serve(
+                KEngagement("a", "engagement").putParam("level", 1),
+                mock()))
+                .isFalse()
+    }
+    
+    @Test
+    fun `does not keep failed or cached responses`() {
+        settings.setPrefetchDecisionPoints("a")
+        prefetch(Response(200, true, ByteArray(0), JSONObject("{\"a\":1}"), null))
+        
+        assertThat(uut.serve(KEngagement("a", "engagement"), mock())).isFalse()
+    }
+    
+    @Test
+    fun `reports hit rate when round ends`() {
+        settings.setPrefetchDecisionPoints("a", "b")
+        prefetch(success())
+        
+        uut.serve(KEngagement("a", "engagement"), mock())
+        uut.serve(KEngagement("c", "engagement"), mock())
+        uut.serve(KEngagement("c", "engagement"), mock())
+        uut.stop()
+        
+        verify(reporter).report(eq(2), eq(1), eq(2))
+        
+        uut.stop()
+        verifyNoMoreInteractions(reporter)
+    }
+    
+    @Test
+    fun `discards responses from previous round`() {
+        settings.setPrefetchDecisionPoints("a")
+        uut.prefetch(emptySet())
+        val listener = argumentCaptor<EngageListener<Engagement<*>>>().run {
+            verify(requester).request(any(), capture())
+            firstValue
+        }
+        
+        uut.prefetch(emptySet())
+        listener.onCompleted(Engagement<KEngagement>("a").apply { setResponse(success()) })
+        
+        assertThat(uut.serve(KEngagement("a", "engagement"), mock())).isFalse()
+    }
+    
+    @Suppress("UNCHECKED_CAST")
+    private fun prefetch(response: Response<JSONObject>) {
+        doAnswer {
+            val engagement = it.arguments[0] as Engagement<*>
+            engagement.setResponse(response)
+            (it.arguments[1] as EngageListener<Engagement<*>>).onCompleted(engagement)
+        }.whenever(requester).request(any(), any())
+        
+        uut.prefetch(emptySet())
+    }
+    
+    private fun success() = Response(200, false, ByteArray(0), JSONObject("{\"a\":1}"), null)
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import android.content.ContentValues
+import android.util.Base64
+import com.deltadna.android.sdk.DatabaseHelper.Engagements
+import com.deltadna.android.sdk.helpers.Settings
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.io.File
+
+/**
+ * Compares how long reading a cached response back from the database takes
+ * when it was stored as Base64 against when it was stored as raw UTF-8.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(shadows = [EngageStoreTest.ShadowBase64::class])
+@Ignore("Benchmark, to be run manually")
+class EngageStoreBenchmark {
+    
+    private lateinit var database: DatabaseHelper
+    private lateinit var path: File
+    
+    private lateinit var uut: EngageStore
+    
+    @Before
+    fun before() {
+        database = DatabaseHelper(RuntimeEnvironment.application)
+        path = createTempDir()
+        
+        uut = EngageStore(database, path, Settings())
+    }
+    
+    @After
+    fun after() {
+        path.deleteRecursively()
+    }
+    
+    @Test
+    fun `load raw and base64 rows`() {
+        val response = JSONObject().apply {
+            put("transactionID", 1L)
+            put("parameters", JSONObject().apply {
+                (0 until 50).forEach { put("key$it", "value $it") }
+            })
+        }.toString().toByteArray()
+        
+        insert("base64", Base64.encode(response, Base64.DEFAULT), Engagements.ENCODING_BASE64)
+        insert("raw", response, Engagements.ENCODING_UTF8)
+        
+        val base64 = time("base64")
+        val raw = time("raw")
+        
+        println("base64: ${base64 / 1000}us, raw: ${raw / 1000}us per load")
+    }
+    
+    private fun insert(name: String, response: ByteArray, encoding: Int) {
+        database.writableDatabase.insert(Engagements.TABLE, null, ContentValues().apply {
+            put(Engagements.Column.DECISION_POINT.toString(), name)
+            put(Engagements.Column.FLAVOUR.toString(), "flavour")
+            put(Engagements.Column.CACHED.toString(), System.currentTimeMillis())
+            put(Engagements.Column.RESPONSE.toString(), response)
+            put(Engagements.Column.ENCODING.toString(), encoding)
+        })
+    }
+    
+    private fun time(name: String): Long {
+        // warm up
+        repeat(5) { uut.load(name, "flavour", Long.MAX_VALUE) }
+        
+        val start = System.nanoTime()
+        repeat(RUNS) { uut.load(name, "flavour", Long.MAX_VALUE) }
+        return (System.nanoTime() - start) / RUNS
+    }
+    
+    private companion object {
+        
+        const val RUNS = 200
+    }
+}
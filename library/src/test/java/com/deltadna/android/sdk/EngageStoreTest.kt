@@ -20,6 +20,7 @@ import android.database.Cursor
 import android.util.Base64
 import com.deltadna.android.sdk.DatabaseHelper.Engagements.Column.*
 import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.net.Response
 import com.github.salomonbrys.kotson.jsonObject
 import com.google.common.collect.Range
 import com.google.common.truth.Truth.assertThat
@@ -29,6 +30,7 @@ import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
 import org.robolectric.annotation.Config
 import org.robolectric.annotation.Implementation
 import org.robolectric.annotation.Implements
@@ -36,6 +38,7 @@ import org.robolectric.shadow.api.Shadow
 import org.robolectric.shadows.ShadowAsyncTask
 import java.io.File
 import java.util.*
+import java.util.concurrent.CountDownLatch
 
 @RunWith(RobolectricTestRunner::class)
 @Config(shadows = [EngageStoreTest.ShadowBase64::class, ShadowAsyncTask::class])
@@ -51,6 +54,7 @@ class EngageStoreTest {
     @Before
     fun before() {
         database = mock()
+        whenever(database.base64Engagements).then { emptyCursor() }
         path = createTempDir()
         
         uut = EngageStore(database, path, settings)
@@ -78,16 +82,41 @@ class EngageStoreTest {
             whenever(getJson()).then { jsonObject("a" to 1).convert() }
         })
         
-        verify(database).insertEngagementRow(
+        verify(database, timeout(500)).insertEngagementRow(
                 eq("dp"),
                 eq("flavour"),
                 argThat { Range
                         .closed(Date(System.currentTimeMillis() - 500),
                                 Date(System.currentTimeMillis() + 500))
                         .contains(this) },
-                eq(Base64.encode(
-                        jsonObject("a" to 1).toString().toByteArray(),
-                        Base64.DEFAULT)))
+                eq(jsonObject("a" to 1).toString().toByteArray()),
+                eq(DatabaseHelper.Engagements.ENCODING_UTF8))
+    }
+    
+    @Test
+    fun `compresses large engagement inserted into database`() {
+        val json = jsonObject("a" to "b".repeat(EngageStore.COMPRESSION_THRESHOLD))
+        uut.put(mock<Engagement<*>>().apply {
+            whenever(isSuccessful()).then { true }
+            whenever(getDecisionPoint()).then { "dp" }
+            whenever(getFlavour()).then { "flavour" }
+            whenever(getJson()).then { json.convert() }
+        })
+        
+        argumentCaptor<ByteArray>().apply {
+            verify(database, timeout(500)).insertEngagementRow(
+                    eq("dp"),
+                    eq("flavour"),
+                    any(),
+                    capture(),
+                    eq(DatabaseHelper.Engagements.ENCODING_GZIP))
+            
+            assertThat(firstValue.size).isLessThan(json.toString().length)
+            assertThat(EngageStore.decode(
+                    firstValue,
+                    DatabaseHelper.Engagements.ENCODING_GZIP))
+                    .isEqualTo(json.toString())
+        }
     }
     
     @Test
@@ -145,6 +174,83 @@ class EngageStoreTest {
         verify(database, never()).removeEngagementRow(any())
     }
     
+    @Test
+    fun `returns cached engagement stored as utf-8`() {
+        whenever(database.getEngagement(eq("dp"), eq("flavour"))).then {
+            row(jsonObject("a" to 1).toString().toByteArray(),
+                    DatabaseHelper.Engagements.ENCODING_UTF8)
+        }
+        
+        assertThat(uut.get(KEngagement("dp", "flavour")).toString())
+                .isEqualTo(jsonObject("a" to 1).toString())
+    }
+    
+    @Test
+    fun `returns cached engagement stored compressed`() {
+        val json = jsonObject("a" to "b".repeat(EngageStore.COMPRESSION_THRESHOLD))
+        whenever(database.getEngagement(eq("dp"), eq("flavour"))).then {
+            row(EngageStore.compress(json.toString().toByteArray())!!,
+                    DatabaseHelper.Engagements.ENCODING_GZIP)
+        }
+        
+        assertThat(uut.get(KEngagement("dp", "flavour")).toString())
+                .isEqualTo(json.toString())
+    }
+    
+    @Test
+    fun `converts engagements stored as base64`() {
+        whenever(database.base64Engagements).then {
+            mock<Cursor>().apply {
+                whenever(moveToNext()).thenReturn(true, false)
+                whenever(getColumnIndex(eq(ID.toString()))).then { 0 }
+                whenever(getLong(eq(0))).then { 1L }
+                whenever(getColumnIndex(eq(RESPONSE.toString()))).then { 4 }
+                whenever(getBlob(eq(4))).then { Base64.encode(
+                        jsonObject("a" to 1).toString().toByteArray(),
+                        Base64.DEFAULT)
+                }
+            }}
+        whenever(database.getEngagement(eq("dp"), eq("flavour"))).then {
+            mock<Cursor>().apply { whenever(moveToFirst()).then { false } }}
+        
+        uut.get(KEngagement("dp", "flavour"))
+        uut.get(KEngagement("dp", "flavour"))
+        
+        verify(database, timeout(500)).updateEngagementResponse(
+                eq(1L),
+                eq(jsonObject("a" to 1).toString().toByteArray()),
+                eq(DatabaseHelper.Engagements.ENCODING_UTF8))
+        verify(database, times(1)).base64Engagements
+    }
+    
+    @Test
+    fun `returns recently cached engagements`() {
+        whenever(database.getRecentEngagements(eq("internal"), eq(2))).then {
+            mock<Cursor>().apply {
+                whenever(moveToNext()).thenReturn(true, true, false)
+                whenever(getColumnIndex(eq(DECISION_POINT.toString()))).then { 1 }
+                whenever(getString(eq(1))).thenReturn("a", "b")
+                whenever(getColumnIndex(eq(FLAVOUR.toString()))).then { 2 }
+                whenever(getString(eq(2))).thenReturn("flavour")
+            }}
+        
+        assertThat(uut.recent("internal", 2).map { it.decisionPointAndFlavour })
+                .containsExactly("a@flavour", "b@flavour")
+                .inOrder()
+    }
+    
+    @Test
+    fun `returns no recent engagements while clearing`() {
+        val cleared = CountDownLatch(1)
+        whenever(database.removeEngagementRows()).then { cleared.await() }
+        
+        uut.clear()
+        
+        assertThat(uut.recent("internal", 2)).isEmpty()
+        verify(database, never()).getRecentEngagements(any(), any())
+        cleared.countDown()
+    }
+    
     @Test
     fun `disabled with expiry value of 0`() {
         uut = EngageStore(database, path, Settings().apply { engageCacheExpiry = 0 })
@@ -157,7 +263,117 @@ class EngageStoreTest {
     fun `clear removes stored engagements`() {
         uut.clear()
         
-        verify(database).removeEngagementRows()
+        verify(database, timeout(500)).removeEngagementRows()
+    }
+    
+    @Test
+    fun `clear after put removes inserted row`() {
+        database = DatabaseHelper(RuntimeEnvironment.application)
+        uut = EngageStore(database, path, settings)
+        
+        uut.put(KEngagement("dp", "flavour").apply {
+            setResponse(Response(200, false, null, jsonObject("a" to 1).convert(), null))
+        })
+        uut.clear()
+        // the writer has caught up once this one has been inserted
+        uut.put(KEngagement("other", "flavour").apply {
+            setResponse(Response(200, false, null, jsonObject("a" to 1).convert(), null))
+        })
+        
+        val until = System.currentTimeMillis() + 1000
+        while (     database.getEngagement("other", "flavour").use { it.count } == 0
+                && System.currentTimeMillis() < until) {
+            Thread.sleep(10)
+        }
+        assertThat(database.getEngagement("other", "flavour").use { it.count }).isEqualTo(1)
+        assertThat(database.getEngagement("dp", "flavour").use { it.count }).isEqualTo(0)
+    }
+    
+    @Test
+    fun `returns put engagement from memory`() {
+        uut.put(mock<Engagement<*>>().apply {
+            whenever(isSuccessful()).then { true }
+            whenever(getDecisionPoint()).then { "dp" }
+            whenever(getFlavour()).then { "flavour" }
+            whenever(getJson()).then { jsonObject("a" to 1).convert() }
+        })
+        
+        val first = uut.get(KEngagement("dp", "flavour"))!!
+        first.put("b", 2)
+        
+        assertThat(uut.get(KEngagement("dp", "flavour")).toString())
+                .isEqualTo(jsonObject("a" to 1).toString())
+        verify(database, never()).getEngagement(any(), any())
+    }
+    
+    @Test
+    fun `keeps engagement read from database in memory`() {
+        whenever(database.getEngagement(eq("dp"), eq("flavour"))).then {
+            mock<Cursor>().apply {
+                whenever(moveToFirst()).then { true }
+                whenever(getColumnIndex(eq(CACHED.toString()))).then { 3 }
+                whenever(getLong(eq(3))).then { System.currentTimeMillis() }
+                whenever(getColumnIndex(eq(RESPONSE.toString()))).then { 4 }
+                whenever(getBlob(eq(4))).then { Base64.encode(
+                        jsonObject("a" to 1).toString().toByteArray(),
+                        Base64.DEFAULT)
+                }
+            }}
+        
+        uut.get(KEngagement("dp", "flavour"))
+        
+        assertThat(uut.get(KEngagement("dp", "flavour")).toString())
+                .isEqualTo(jsonObject("a" to 1).toString())
+        verify(database).getEngagement(any(), any())
+    }
+    
+    @Test
+    fun `expires engagement held in memory`() {
+        settings.engageCacheExpiry = 1
+        uut.put(mock<Engagement<*>>().apply {
+            whenever(isSuccessful()).then { true }
+            whenever(getDecisionPoint()).then { "dp" }
+            whenever(getFlavour()).then { "flavour" }
+            whenever(getJson()).then { jsonObject("a" to 1).convert() }
+        })
+        whenever(database.getEngagement(eq("dp"), eq("flavour"))).then {
+            mock<Cursor>().apply { whenever(moveToFirst()).then { false } }}
+        
+        Thread.sleep(1100)
+        
+        assertThat(uut.get(KEngagement("dp", "flavour"))).isNull()
+        verify(database).getEngagement(eq("dp"), eq("flavour"))
+    }
+    
+    @Test
+    fun `clear evicts engagements held in memory`() {
+        uut.put(mock<Engagement<*>>().apply {
+            whenever(isSuccessful()).then { true }
+            whenever(getDecisionPoint()).then { "dp" }
+            whenever(getFlavour()).then { "flavour" }
+            whenever(getJson()).then { jsonObject("a" to 1).convert() }
+        })
+        whenever(database.getEngagement(eq("dp"), eq("flavour"))).then {
+            mock<Cursor>().apply { whenever(moveToFirst()).then { false } }}
+        
+        uut.clear()
+        verify(database, timeout(500)).removeEngagementRows()
+        
+        assertThat(uut.get(KEngagement("dp", "flavour"))).isNull()
+    }
+    
+    private fun emptyCursor() = mock<Cursor>().apply {
+        whenever(moveToNext()).then { false }
+    }
+    
+    private fun row(response: ByteArray, encoding: Int) = mock<Cursor>().apply {
+        whenever(moveToFirst()).then { true }
+        whenever(getColumnIndex(eq(CACHED.toString()))).then { 3 }
+        whenever(getLong(eq(3))).then { System.currentTimeMillis() }
+        whenever(getColumnIndex(eq(RESPONSE.toString()))).then { 4 }
+        whenever(getBlob(eq(4))).then { response }
+        whenever(getColumnIndex(eq(ENCODING.toString()))).then { 5 }
+        whenever(getInt(eq(5))).then { encoding }
     }
     
     // no built-in shadow in Robolectric for Base64 class
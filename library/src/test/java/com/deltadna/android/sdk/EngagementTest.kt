@@ -117,6 +117,16 @@ class EngagementTest {
         assertThat(KEngagement("a", "b").decisionPointAndFlavour).isEqualTo("a@b")
     }
     
+    @Test
+    fun mode() {
+        with(KEngagement("point")) {
+            assertThat(mode).isNull()
+            
+            assertThat(setMode(Engagement.Mode.STALE_WHILE_REVALIDATE)).isSameAs(this)
+            assertThat(mode).isEqualTo(Engagement.Mode.STALE_WHILE_REVALIDATE)
+        }
+    }
+    
     private class KEngagement : Engagement<KEngagement> {
         constructor(point: String) : super(point)
         constructor(point: String, flavour: String?) : super(point, flavour)
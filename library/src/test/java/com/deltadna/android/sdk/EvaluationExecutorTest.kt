@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class EvaluationExecutorTest {
+    
+    private val settings = Settings()
+    
+    private val uut = EvaluationExecutor(settings)
+    
+    @Test
+    fun `runs on named sdk threads`() {
+        val latch = CountDownLatch(1)
+        var name: String? = null
+        
+        uut.execute {
+            name = Thread.currentThread().name
+            latch.countDown()
+        }
+        
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(name).startsWith("EvaluationExecutor-")
+    }
+    
+    @Test
+    fun `runs on app owned executor`() {
+        val queued = mutableListOf<Runnable>()
+        settings.evaluationExecutor = Executor { queued.add(it) }
+        var ran = 0
+        
+        uut.execute { ran++ }
+        uut.execute { ran++ }
+        assertThat(uut.depth()).isEqualTo(2)
+        assertThat(uut.peak()).isEqualTo(2)
+        
+        queued.forEach { it.run() }
+        assertThat(ran).isEqualTo(2)
+        assertThat(uut.depth()).isEqualTo(0)
+        assertThat(uut.peak()).isEqualTo(2)
+        assertThat(uut.executed()).isEqualTo(2L)
+    }
+    
+    @Test
+    fun `rejects instead of running on calling thread`() {
+        settings.evaluationExecutor = Executor { throw RejectedExecutionException() }
+        var ran = false
+        
+        assertThrown<RejectedExecutionException> { uut.execute { ran = true } }
+        
+        assertThat(ran).isFalse()
+        assertThat(uut.rejected()).isEqualTo(1L)
+        assertThat(uut.depth()).isEqualTo(0)
+    }
+    
+    @Test
+    fun `rejects when queue is full`() {
+        settings.evaluationQueueSize = 1
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        
+        uut.execute {
+            started.countDown()
+            release.await()
+        }
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue()
+        uut.execute {}
+        
+        assertThrown<RejectedExecutionException> { uut.execute {} }
+        assertThat(uut.rejected()).isEqualTo(1L)
+        assertThat(uut.depth()).isEqualTo(1)
+        release.countDown()
+    }
+    
+    @Test
+    fun `runs in order on one thread`() {
+        val latch = CountDownLatch(10)
+        val order = mutableListOf<Int>()
+        val threads = mutableSetOf<Thread>()
+        
+        for (i in 0 until 10) {
+            uut.execute {
+                synchronized(order) {
+                    order.add(i)
+                    threads.add(Thread.currentThread())
+                }
+                latch.countDown()
+            }
+        }
+        
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue()
+        assertThat(order).containsExactlyElementsIn(0 until 10).inOrder()
+        assertThat(threads).hasSize(1)
+        assertThat(threads).doesNotContain(Thread.currentThread())
+    }
+}
@@ -24,12 +24,14 @@ import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
 import java.util.*
+import java.util.concurrent.Executor
 
 @RunWith(RobolectricTestRunner::class)
 @Ignore("Failing tests that had previously been silenced. Suspected background/async issues, but investigate in LOSDK-867")
 class EventActionTest {
 
     private lateinit var store: ActionStore
+    private val executor = Executor { it.run() }
 
     @Before
     fun before() {
@@ -58,7 +60,7 @@ class EventActionTest {
             add(t1)
             add(t2)
             add(t3)
-        }, store , settings
+        }, store, settings, executor
                 ).run()
 
         inOrder(t1, t2, t3) {
@@ -79,7 +81,7 @@ class EventActionTest {
         val settings = mock<Settings>()
         whenever(settings.isMultipleActionsForEventTriggerEnabled).then { false }
 
-        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings)
+        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings, executor)
                 .add(h1)
                 .add(h2)
                 .add(h3)
@@ -105,11 +107,11 @@ class EventActionTest {
         val settings = mock<Settings>()
         whenever(settings.isMultipleActionsForEventTriggerEnabled).then { false }
 
-        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store,  settings)
+        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings, executor)
         whenever(h1.handle(same(t), same(store))).then { false }
         whenever(h2.handle(same(t), same(store))).then { true }
 
-        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings)
+        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings, executor)
                 .add(h1)
                 .add(h2)
                 .add(h3)
@@ -132,7 +134,7 @@ class EventActionTest {
         val settings = mock<Settings>()
         whenever(settings.isMultipleActionsForEventTriggerEnabled).then { true }
 
-        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings)
+        EventAction(e, TreeSet<EventTrigger>().apply { add(t) }, store, settings, executor)
                 .add(h1)
                 .add(h2)
                 .add(h3)
@@ -164,7 +166,7 @@ class EventActionTest {
         whenever(t1.action).then{"notImageMessage"}
         whenever(t2.action).then{"notImageMessage"}
 
-        EventAction(e, TreeSet<EventTrigger>().apply { add(t1); add(t2) }, store, settings)
+        EventAction(e, TreeSet<EventTrigger>().apply { add(t1); add(t2) }, store, settings, executor)
                 .add(h1)
                 .add(h2)
                 .add(h3)
@@ -199,7 +201,7 @@ class EventActionTest {
         whenever(t1.action).then{"imageMessage"}
         whenever(t2.action).then{"imageMessage"}
 
-        EventAction(e, TreeSet<EventTrigger>().apply { add(t1); add(t2) }, store, settings)
+        EventAction(e, TreeSet<EventTrigger>().apply { add(t1); add(t2) }, store, settings, executor)
                 .add(h1)
                 .add(h2)
                 .add(h3)
@@ -224,7 +226,7 @@ class EventActionTest {
 
         val mockEvaluateCompleteHandler = mock<EventActionEvaluateCompleteHandler>()
 
-        EventAction(mockEvent, TreeSet<EventTrigger>().apply { add(mockEventTrigger); }, store, mockSettings)
+        EventAction(mockEvent, TreeSet<EventTrigger>().apply { add(mockEventTrigger); }, store, mockSettings, executor)
                 .addEvaluateCompleteHandler(mockEvaluateCompleteHandler)
                 .run()
 
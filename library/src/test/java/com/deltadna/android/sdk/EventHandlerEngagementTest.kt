@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.listeners.EngageListener
+import com.deltadna.android.sdk.listeners.RequestListener
+import com.deltadna.android.sdk.net.NetworkManager
+import com.deltadna.android.sdk.net.Response
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.*
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+
+@RunWith(RobolectricTestRunner::class)
+class EventHandlerEngagementTest {
+    
+    private val engagements = mock<EngageStore>()
+    private val network = mock<NetworkManager>()
+    private val settings = Settings()
+    
+    private val uut = EventHandler(
+            mock(),
+            engagements,
+            network,
+            settings,
+            Executor { it.run() },
+            UploadBreaker(1000, Random(0)) {})
+    
+    private val pending = mutableListOf<RequestListener<JSONObject>>()
+    
+    init {
+        whenever(network.engage(any(), any(), any())).thenAnswer {
+            pending.add(it.arguments[1] as RequestListener<JSONObject>)
+            null
+        }
+    }
+    
+    @After
+    fun after() {
+        uut.stop(false)
+    }
+    
+    @Test
+    fun `identical engagements of different flavours do not share a request`() {
+        val first = KEngagement("point", "first")
+        val second = KEngagement("point", "second")
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        engage(first, listener)
+        engage(second, listener)
+        pending.forEach {
+            it.onCompleted(Response(200, false, null, JSONObject().put("result", 1), null))
+        }
+        
+        verify(network, times(2)).engage(any(), any(), any())
+        verify(engagements).put(same(first))
+        verify(engagements).put(same(second))
+        verify(listener).onCompleted(same(first))
+        verify(listener).onCompleted(same(second))
+    }
+    
+    @Test
+    fun `concurrent identical engagements share a request`() {
+        val first = KEngagement("point", "flavour")
+        val second = KEngagement("point", "flavour")
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        engage(first, listener)
+        engage(second, listener)
+        pending.single().onCompleted(
+                Response(200, false, null, JSONObject().put("result", 1), null))
+        
+        verify(network).engage(any(), any(), any())
+        verify(engagements).put(same(first))
+        verify(listener).onCompleted(same(first))
+        verify(listener).onCompleted(same(second))
+        assertThat(first.json).isNotSameAs(second.json)
+        assertThat(second.json.toString()).isEqualTo(first.json.toString())
+    }
+    
+    @Test
+    fun `failed shared request errors every waiting engagement`() {
+        val first = KEngagement("point", "flavour")
+        val second = KEngagement("point", "flavour")
+        val listener = mock<EngageListener<KEngagement>>()
+        val cause = Exception()
+        
+        engage(first, listener)
+        engage(second, listener)
+        pending.single().onError(cause)
+        runTasks()
+        
+        verify(listener, times(2)).onError(same(cause))
+    }
+    
+    @Test
+    fun `stale while revalidate completes with cached response`() {
+        val engagement = KEngagement("point", "flavour")
+                .setMode(Engagement.Mode.STALE_WHILE_REVALIDATE)
+        val listener = mock<EngageListener<KEngagement>>()
+        whenever(engagements.get(same(engagement))).thenReturn(JSONObject().put("result", 0))
+        
+        engage(engagement, listener)
+        runTasks()
+        
+        verify(listener).onCompleted(argThat {
+            assertThat(this.isCached).isTrue()
+            assertThat(this.json!!.getBoolean("isCachedResponse")).isTrue()
+            true
+        })
+        
+        pending.single().onCompleted(
+                Response(200, false, null, JSONObject().put("result", 1), null))
+        runTasks()
+        
+        verify(engagements).put(argThat { json.toString() == "{\"result\":1}" })
+        verify(listener).onCompleted(any())
+    }
+    
+    @Test
+    fun `stale while revalidate notifies again when changed`() {
+        settings.setEngageMode("point", Engagement.Mode.STALE_WHILE_REVALIDATE_NOTIFY)
+        val engagement = KEngagement("point", "flavour")
+        val listener = mock<EngageListener<KEngagement>>()
+        whenever(engagements.get(same(engagement))).thenReturn(JSONObject().put("result", 0))
+        
+        engage(engagement, listener)
+        runTasks()
+        verify(listener).onCompleted(any())
+        
+        pending.single().onCompleted(
+                Response(200, false, null, JSONObject().put("result", 1), null))
+        runTasks()
+        
+        val completed = argumentCaptor<KEngagement>()
+        verify(listener, times(2)).onCompleted(completed.capture())
+        assertThat(completed.firstValue).isSameAs(engagement)
+        assertThat(engagement.isCached).isTrue()
+        assertThat(engagement.json!!.getInt("result")).isEqualTo(0)
+        assertThat(completed.secondValue).isNotSameAs(engagement)
+        assertThat(completed.secondValue.isCached).isFalse()
+        assertThat(completed.secondValue.json!!.getInt("result")).isEqualTo(1)
+    }
+    
+    @Test
+    fun `stale while revalidate does not notify again when unchanged`() {
+        settings.setEngageMode("point", Engagement.Mode.STALE_WHILE_REVALIDATE_NOTIFY)
+        val engagement = KEngagement("point", "flavour")
+        val listener = mock<EngageListener<KEngagement>>()
+        whenever(engagements.get(same(engagement))).thenReturn(JSONObject().put("result", 0))
+        
+        engage(engagement, listener)
+        pending.single().onCompleted(
+                Response(200, false, null, JSONObject().put("result", 0), null))
+        runTasks()
+        
+        verify(listener).onCompleted(any())
+    }
+    
+    @Test
+    fun `rejected engagement completes with error`() {
+        val rejecting = EventHandler(
+                mock(),
+                engagements,
+                network,
+                settings,
+                Executor { throw RejectedExecutionException() },
+                UploadBreaker(1000, Random(0)) {})
+        val listener = mock<EngageListener<KEngagement>>()
+        
+        rejecting.handleEngagement(
+                KEngagement("point", "flavour"),
+                listener,
+                "userId",
+                "sessionId",
+                0,
+                "sdkVersion",
+                "platform")
+        runTasks()
+        
+        verify(listener).onError(isA<RejectedExecutionException>())
+        verify(network, never()).engage(any(), any(), any())
+    }
+    
+    private fun <E : Engagement<E>> engage(engagement: E, listener: EngageListener<E>) {
+        uut.handleEngagement(
+                engagement,
+                listener,
+                "userId",
+                "sessionId",
+                0,
+                "sdkVersion",
+                "platform")
+    }
+}
@@ -16,8 +16,10 @@
 
 package com.deltadna.android.sdk
 
+import com.deltadna.android.sdk.helpers.Settings
 import com.deltadna.android.sdk.listeners.EngageListener
 import com.deltadna.android.sdk.listeners.RequestListener
+import com.deltadna.android.sdk.net.BodyWriter
 import com.deltadna.android.sdk.net.NetworkManager
 import com.deltadna.android.sdk.net.Response
 import com.deltadna.android.sdk.util.CloseableIterator
@@ -30,6 +32,10 @@ import org.junit.Ignore
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.*
+import java.util.concurrent.Executor
 
 @RunWith(JUnit4::class) @Ignore
 class EventHandlerTest {
@@ -37,6 +43,7 @@ class EventHandlerTest {
     private lateinit var events: EventStore
     private lateinit var engagements: EngageStore
     private lateinit var network: NetworkManager
+    private lateinit var settings: Settings
     
     private lateinit var uut: EventHandler
     
@@ -45,8 +52,17 @@ class EventHandlerTest {
         events = mock()
         engagements = mock()
         network = mock()
+        settings = Settings()
         
-        uut = EventHandler(events, engagements, network)
+        whenever(events.items(any())).thenReturn(StoredEventsIterator(listOf()))
+        
+        uut = EventHandler(
+                events,
+                engagements,
+                network,
+                settings,
+                Executor { it.run() },
+                UploadBreaker(1000, Random(0)) {})
     }
     
     @After
@@ -66,13 +82,13 @@ class EventHandlerTest {
         
         verify(events, times(3)).items()
         var run = 0
-        verify(network, times(2)).collect(
+        verify(network, times(2)).collectBulk(
                 argThat {
-                    assertThat(toString()).isEqualTo(
+                    assertThat(render()).isEqualTo(
                             when (run) {
                                 0 -> "{\"eventList\":[{\"value\":0},{\"value\":1}]}"
                                 1 -> "{\"eventList\":[{\"value\":0}]}"
-                                else -> toString()
+                                else -> render()
                             })
                     run++
                     true
@@ -87,7 +103,7 @@ class EventHandlerTest {
         Thread.sleep(2200)
         
         verify(events, never()).items()
-        verify(network, never()).collect(any(), any())
+        verify(network, never()).collectBulk(any(), any())
     }
     
     @Test
@@ -100,18 +116,18 @@ class EventHandlerTest {
             Thread.sleep(2200)
             
             verify(events).items()
-            verify(network).collect(
-                    any<JSONObject>(),
+            verify(network).collectBulk(
+                    any<BodyWriter>(),
                     any<RequestListener<Void>>())
         }
     }
     
     @Test
     fun handleEvent() {
-        with(JSONObject()) {
+        with(JSONObject().toString().toByteArray()) {
             uut.handleEvent(this)
             
-            verify(events).add(eq(toString()))
+            verify(events).add(eq(this))
         }
     }
     
@@ -270,8 +286,10 @@ class EventHandlerTest {
     }
     
     @Test
-    fun closesWhenNoItems() {
-        withStoreEvents(listOf()) {
+    fun itemsNotClearedOnServerError() {
+        withStoreEvents(listOf("0")) {
+            withListeners { onCompleted(Response(500, false, null, null, null)) }
+            
             uut.start(0, 1)
             Thread.sleep(500)
             
@@ -280,39 +298,66 @@ class EventHandlerTest {
     }
     
     @Test
-    fun pausesOnUnavailableItems() {
-        withStoreEventsAndAvailability(
-                listOf("0", "1", "2"),
-                listOf(true, false, true)) {
-            withListeners { onCompleted(Response(200, false, null, null, null)) }
-            
+    fun drainsSuccessiveBatches() {
+        val first = spy(StoredEventsIterator(listOf("0")))
+        val second = spy(StoredEventsIterator(listOf("1")))
+        whenever(events.items()).thenReturn(first)
+        whenever(events.items(same(first))).thenReturn(second)
+        withListeners { onCompleted(Response(200, false, null, null, null)) }
+        
+        uut.dispatch()
+        Thread.sleep(500)
+        
+        verify(network, times(2)).collectBulk(any(), any())
+        verify(first).close(same(CloseableIterator.Mode.ALL))
+        verify(second).close(same(CloseableIterator.Mode.ALL))
+        verify(events).items(same(second))
+    }
+    
+    @Test
+    fun drainingStopsOnFailure() {
+        val first = spy(StoredEventsIterator(listOf("0")))
+        val second = spy(StoredEventsIterator(listOf("1")))
+        whenever(events.items()).thenReturn(first)
+        whenever(events.items(same(first))).thenReturn(second)
+        withListeners { onError(Exception()) }
+        
+        uut.dispatch()
+        Thread.sleep(500)
+        
+        verify(network).collectBulk(any(), any())
+        verify(first).close(same(CloseableIterator.Mode.NONE))
+        verify(events, never()).items(any())
+    }
+    
+    @Test
+    fun closesWhenNoItems() {
+        withStoreEvents(listOf()) {
             uut.start(0, 1)
             Thread.sleep(500)
             
-            verify(this, times(2)).next()
-            verify(this).close(same(CloseableIterator.Mode.UP_TO_CURRENT))
+            verify(this[0]).close(same(CloseableIterator.Mode.ALL))
         }
     }
     
     @Test
-    fun skipsMissingItems() {
-        withStoreEventsAndAvailability(listOf("0", null, "2")) {
+    fun pausesOnUnavailableItems() {
+        withStoreEventsAndAvailability(
+                listOf("0", "1", "2"),
+                listOf(true, false, true)) {
             withListeners { onCompleted(Response(200, false, null, null, null)) }
             
             uut.start(0, 1)
             Thread.sleep(500)
             
-            verify(network).collect(
-                    argThat { toString() == "{\"eventList\":[0,2]}" },
-                    any())
-            verify(this, times(3)).next()
-            verify(this).close(same(CloseableIterator.Mode.ALL))
+            verify(this, times(2)).next()
+            verify(this).close(same(CloseableIterator.Mode.UP_TO_CURRENT))
         }
     }
     
     private fun withStoreEvents(
             vararg items: List<String>,
-            block: List<CloseableIterator<EventStoreItem>>.() -> Unit = {}) {
+            block: List<EventStore.Batch>.() -> Unit = {}) {
         var stubbing = whenever(events.items())
         block.invoke(items.map {
             spy(StoredEventsIterator(it)).apply {
@@ -324,7 +369,7 @@ class EventHandlerTest {
     private fun withStoreEventsAndAvailability(
             values: List<String?>,
             availabilities: List<Boolean> = listOf(),
-            block: CloseableIterator<EventStoreItem>.() -> Unit = {}) {
+            block: EventStore.Batch.() -> Unit = {}) {
         spy(StoredEventsIterator(values, availabilities)).apply {
             whenever(events.items()).thenReturn(this)
             block.invoke(this)
@@ -332,7 +377,7 @@ class EventHandlerTest {
     }
     
     private fun withListeners(action: RequestListener<Any>.() -> Unit) {
-        whenever(network.collect(any(), any())).thenAnswer {
+        whenever(network.collectBulk(any(), any())).thenAnswer {
             action.invoke(it.arguments[1] as RequestListener<Any>)
             null
         }
@@ -341,7 +386,7 @@ class EventHandlerTest {
     open inner class StoredEventsIterator(
             backingValues: List<String?>,
             backingAvailabilities: List<Boolean> = listOf()) :
-            CloseableIterator<EventStoreItem> {
+            EventStore.Batch {
         
         private val backing: List<EventStoreItemImpl> = (0 until backingValues.size)
                 .map { EventStoreItemImpl(
@@ -354,6 +399,7 @@ class EventHandlerTest {
         override fun next() = backing[++index]
         override fun close(mode: CloseableIterator.Mode) {}
         override fun remove() {}
+        override fun last() = -1L
     }
     
     open inner class EventStoreItemImpl(
@@ -361,5 +407,11 @@ class EventHandlerTest {
             private val availability: Boolean) : EventStoreItem {
         override fun available() = availability
         override fun get() = value
+        override fun size() = value?.toByteArray()?.size ?: 0
+        override fun writeTo(output: OutputStream) = output.write(value!!.toByteArray())
     }
+    
+    private fun BodyWriter.render() = ByteArrayOutputStream()
+            .also { writeTo(it) }
+            .toString("UTF-8")
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.consent.ConsentStatus
+import com.deltadna.android.sdk.helpers.Settings
+import com.deltadna.android.sdk.listeners.RequestListener
+import com.deltadna.android.sdk.net.CancelableRequest
+import com.deltadna.android.sdk.net.NetworkManager
+import com.deltadna.android.sdk.net.Response
+import com.deltadna.android.sdk.util.CloseableIterator
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.*
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.io.OutputStream
+import java.util.*
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+class EventHandlerUploadTest {
+    
+    private val application by lazy { RuntimeEnvironment.application }
+    
+    private val network = mock<NetworkManager>()
+    
+    private lateinit var database: DatabaseHelper
+    private lateinit var events: EventStore
+    
+    @Before
+    fun before() {
+        DDNA.initialise(DDNA.Configuration(
+                application,
+                "environmentKey",
+                "collectUrl",
+                "engageUrl"))
+        DDNA.instance().consentTracker.useConsentStatus = ConsentStatus.consentGiven
+        DDNA.instance().consentTracker.exportConsentStatus = ConsentStatus.consentGiven
+        
+        database = DatabaseHelper(application)
+    }
+    
+    @After
+    fun after() {
+        database.removeEventRows()
+    }
+    
+    @Test
+    fun `drops rows whose segments are missing`() {
+        events = EventStore(application, database, Settings(), Preferences(application))
+        database.insertEventRow(
+                System.currentTimeMillis(), Location.INTERNAL, "missing", null, 16)
+        
+        uut(events).dispatch()
+        
+        waitFor { database.eventRows.use { it.count } == 0 }
+        verify(network, never()).collectBulk(any(), any())
+    }
+    
+    @Test
+    fun `closes empty batch after those before it`() {
+        val first = batch(true)
+        val second = batch(false)
+        events = mock()
+        whenever(events.items()).thenReturn(first)
+        whenever(events.items(same(first))).thenReturn(second)
+        var pending: RequestListener<Void>? = null
+        whenever(network.collectBulk(any(), any())).thenAnswer {
+            pending = it.arguments[1] as RequestListener<Void>
+            mock<CancelableRequest>()
+        }
+        
+        uut(events).dispatch()
+        waitFor { pending != null }
+        Thread.sleep(100)
+        verify(second, never()).close(any())
+        
+        pending!!.onCompleted(Response(200, false, null, null, null))
+        
+        inOrder(first, second) {
+            verify(first, timeout(500)).close(same(CloseableIterator.Mode.ALL))
+            verify(second, timeout(500)).close(same(CloseableIterator.Mode.ALL))
+        }
+    }
+    
+    @Test
+    fun `completes batches in flight after a failure`() {
+        val first = batch(true)
+        val second = batch(true)
+        events = mock()
+        whenever(events.items()).thenReturn(first)
+        whenever(events.items(same(first))).thenReturn(second)
+        val pending = Collections.synchronizedList(mutableListOf<RequestListener<Void>>())
+        val requests = mutableListOf<CancelableRequest>()
+        whenever(network.collectBulk(any(), any())).thenAnswer {
+            pending.add(it.arguments[1] as RequestListener<Void>)
+            mock<CancelableRequest>().apply { requests.add(this) }
+        }
+        
+        uut(events).dispatch()
+        waitFor { pending.size == 2 }
+        
+        pending[0].onError(Exception())
+        Thread.sleep(100)
+        verify(second, never()).close(any())
+        
+        pending[1].onCompleted(Response(200, false, null, null, null))
+        
+        verify(first, timeout(500)).close(same(CloseableIterator.Mode.NONE))
+        verify(second, timeout(500)).close(same(CloseableIterator.Mode.ALL))
+        verify(events, never()).items(same(second))
+        requests.forEach { verify(it, never()).cancel() }
+    }
+    
+    private fun uut(events: EventStore) = EventHandler(
+            events,
+            mock(),
+            network,
+            Settings().apply { eventUploadWindow = 2 },
+            Executor { it.run() },
+            UploadBreaker(1000, Random(0)) {})
+    
+    private fun batch(withEvent: Boolean) = mock<EventStore.Batch>().apply {
+        whenever(hasNext()).thenReturn(withEvent, false)
+        whenever(next()).thenReturn(object : EventStoreItem {
+            override fun available() = true
+            override fun get() = "{}"
+            override fun size() = 2
+            override fun writeTo(output: OutputStream) = output.write("{}".toByteArray())
+        })
+    }
+    
+    private fun waitFor(condition: () -> Boolean) {
+        val until = System.currentTimeMillis() + 1000
+        while (!condition() && System.currentTimeMillis() < until) {
+            Thread.sleep(10)
+        }
+        assertThat(condition()).isTrue()
+    }
+}
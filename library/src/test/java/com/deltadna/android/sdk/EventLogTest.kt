@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.deltadna.android.sdk.helpers.Settings
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.io.File
+import java.io.RandomAccessFile
+
+@RunWith(RobolectricTestRunner::class)
+class EventLogTest {
+
+    private val application by lazy { RuntimeEnvironment.application }
+    private val directory by lazy {
+        Location.INTERNAL.storage(application, "events" + File.separator)
+    }
+
+    private lateinit var database: DatabaseHelper
+
+    private lateinit var uut: EventLog
+
+    @Before
+    fun before() {
+        directory.mkdirs()
+
+        database = DatabaseHelper(application)
+        uut = EventLog(
+                application,
+                database,
+                Settings().apply { isUseInternalStorageForEvents = true },
+                "events" + File.separator)
+    }
+
+    @Test
+    fun `events are not visible until sealed`() {
+        assertThat(uut.append("1".toByteArray())).isTrue()
+        assertThat(uut.append("2".toByteArray())).isTrue()
+
+        assertThat(uut.activeSize()).isEqualTo(2)
+        assertThat(database.eventsSize).isEqualTo(0)
+
+        uut.seal()
+
+        assertThat(uut.activeSize()).isEqualTo(0)
+        assertThat(database.eventsSize).isEqualTo(2)
+        assertThat(segments()).hasSize(1)
+        assertThat(read(segments().single())).containsExactly("1", "2").inOrder()
+    }
+
+    @Test
+    fun `segment is rolled at limit`() {
+        val content = ByteArray(EventLog.SEGMENT_LIMIT / 2 + 1) { 'a'.toByte() }
+
+        uut.append(content)
+        uut.append(content)
+        uut.append(content)
+        uut.seal()
+
+        assertThat(segments()).hasSize(3)
+    }
+
+    @Test
+    fun `empty segment is not sealed`() {
+        uut.seal()
+
+        assertThat(database.eventsSize).isEqualTo(0)
+        assertThat(directory.listFiles()).isEmpty()
+    }
+
+    @Test
+    fun `discarded segment is deleted`() {
+        uut.append("1".toByteArray())
+        uut.discard()
+        uut.seal()
+
+        assertThat(database.eventsSize).isEqualTo(0)
+        assertThat(directory.listFiles()).isEmpty()
+    }
+
+    @Test
+    fun `torn record is truncated on recovery`() {
+        uut.append("1".toByteArray())
+        uut.append("22".toByteArray())
+
+        val active = directory.listFiles()!!.single()
+        RandomAccessFile(active, "rw").use { it.setLength(it.length() - 1) }
+
+        EventLog(application, database, Settings(), "events" + File.separator)
+                .recover()
+
+        assertThat(database.eventsSize).isEqualTo(1)
+        assertThat(read(segments().single())).containsExactly("1")
+    }
+
+    @Test
+    fun `legacy file is read as single record`() {
+        val file = File(directory, "legacy").apply { writeText("{\"a\":1}") }
+
+        assertThat(read(file)).containsExactly("{\"a\":1}")
+    }
+
+    private fun segments() = directory
+            .listFiles { _, name -> name.endsWith(EventLog.SUFFIX_SEALED) }!!
+            .toList()
+
+    private fun read(file: File) = EventLog.Source(file).use { source ->
+        EventLog.read(file).use { reader ->
+            generateSequence { if (reader.next()) reader.offset to reader.size else null }
+                    .map { (offset, size) -> String(source.read(offset, size)) }
+                    .toList()
+        }
+    }
+}
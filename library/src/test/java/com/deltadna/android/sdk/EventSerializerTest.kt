@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+
+@RunWith(RobolectricTestRunner::class)
+class EventSerializerTest {
+    
+    @Test
+    fun `output matches json object`() {
+        val event = KEvent("name")
+                .putParam("string", "a \"quoted\"/\n\u0001 value")
+                .putParam("int", 1)
+                .putParam("double", 1.5)
+                .putParam("bool", true)
+                .putParam("nested", Params().put("key", "value"))
+                .putParam("array", JSONArray().put(1).put("two"))
+                .putParam("platform", "overridden")
+        
+        val actual = String(
+                EventSerializer.serialize(event, "sessionId", "userId", "platform", "version"),
+                Charsets.UTF_8)
+        val parsed = JSONObject(actual)
+        
+        val expected = JSONObject()
+                .put("eventName", "name")
+                .put("eventTimestamp", parsed.getString("eventTimestamp"))
+                .put("eventUUID", parsed.getString("eventUUID"))
+                .put("sessionID", "sessionId")
+                .put("userID", "userId")
+                .put("eventParams", JSONObject()
+                        .put("string", "a \"quoted\"/\n\u0001 value")
+                        .put("int", 1)
+                        .put("double", 1.5)
+                        .put("bool", true)
+                        .put("nested", JSONObject().put("key", "value"))
+                        .put("array", JSONArray().put(1).put("two"))
+                        .put("platform", "platform")
+                        .put("sdkVersion", "version"))
+        
+        assertThat(actual).isEqualTo(expected.toString())
+    }
+    
+    @Test
+    fun `floats match json object`() {
+        val floats = listOf(1f, -2f, 1.5f, 0.1f, 3.4028235e38f, 1e10f)
+        val event = KEvent("name")
+        floats.forEachIndexed { i, value -> event.putParam("float$i", value) }
+        
+        val actual = String(
+                EventSerializer.serialize(event, null, null, null, "version"),
+                Charsets.UTF_8)
+        val parsed = JSONObject(actual)
+        
+        val expected = JSONObject()
+                .put("eventName", "name")
+                .put("eventTimestamp", parsed.getString("eventTimestamp"))
+                .put("eventUUID", parsed.getString("eventUUID"))
+                .put("eventParams", JSONObject().apply {
+                    floats.forEachIndexed { i, value -> put("float$i", value) }
+                    put("sdkVersion", "version")
+                })
+        
+        assertThat(actual).isEqualTo(expected.toString())
+    }
+    
+    @Test
+    fun `missing session and user are omitted`() {
+        with(JSONObject(String(EventSerializer.serialize(
+                KEvent("name"), null, null, null, "version")))) {
+            assertThat(has("sessionID")).isFalse()
+            assertThat(has("userID")).isFalse()
+            assertThat(getJSONObject("eventParams").toString())
+                    .isEqualTo("{\"sdkVersion\":\"version\"}")
+        }
+    }
+    
+    @Test
+    fun `event ids are random version 4 uuids`() {
+        val ids = (0 until 100).map {
+            JSONObject(String(EventSerializer.serialize(
+                    KEvent("name"), null, null, null, "version")))
+                    .getString("eventUUID")
+        }
+        
+        assertThat(ids.toSet()).hasSize(ids.size)
+        ids.map { UUID.fromString(it) }.forEach {
+            assertThat(it.version()).isEqualTo(4)
+            assertThat(it.variant()).isEqualTo(2)
+        }
+    }
+}
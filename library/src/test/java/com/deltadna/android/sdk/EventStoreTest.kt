@@ -28,6 +28,7 @@ import org.robolectric.RobolectricTestRunner
 import org.robolectric.RuntimeEnvironment
 import org.robolectric.shadows.ShadowEnvironment
 import java.io.File
+import java.util.concurrent.atomic.AtomicLong
 
 @RunWith(RobolectricTestRunner::class)
 //@Config(shadows = [ShadowAsyncTask::class])
@@ -95,6 +96,24 @@ class EventStoreTest {
         }
     }
     
+    @Test
+    fun burstAddedTogether() {
+        val items = listOf("1", "2", "3")
+        with(uut) {
+            add("0")
+            add(items.map { it.toByteArray() })
+            waitAndRunTasks(1000)
+            
+            with(items()) {
+                (listOf("0") + items).forEach {
+                    assertThat(next().get()).isEqualTo(it)
+                }
+                
+                assertThat(hasNext()).isFalse()
+            }
+        }
+    }
+    
     @Test
     fun itemAddedOnInternal() {
         settings.isUseInternalStorageForEvents = true
@@ -285,5 +304,17 @@ class EventStoreTest {
         }
     }
     
+    @Test
+    fun clearDiscardsEventsBeingWritten() {
+        with(uut) {
+            (0 until 1000).forEach { add(it.toString()) }
+            clear()
+            Thread.sleep(500)
+            
+            assertThat(items().hasNext()).isFalse()
+            assertThat(read<AtomicLong>("stored").get()).isEqualTo(0L)
+        }
+    }
+    
    // private fun waitAndRunTasks(1000) = Thread.sleep(1000)
 }
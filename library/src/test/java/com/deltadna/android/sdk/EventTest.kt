@@ -56,13 +56,13 @@ class EventTest {
         with(KEvent("name")) {
             putParam("key", "value")
             
-            assertThat(params.json.get("key")).isEqualTo("value")
+            assertThat(params.toJson().get("key")).isEqualTo("value")
             
             val params = Params()
             params.put("param", "value")
             putParam("params", params)
             
-            assertThat(this.params.json.getJSONObject("params").get("param"))
+            assertThat(this.params.toJson().getJSONObject("params").get("param"))
                     .isEqualTo("value")
         }
     }
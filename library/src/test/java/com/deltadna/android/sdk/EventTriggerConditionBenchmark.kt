@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.github.salomonbrys.kotson.jsonArray
+import com.github.salomonbrys.kotson.jsonObject
+import com.google.common.truth.Truth.assertThat
+import org.json.JSONArray
+import org.junit.Ignore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Measures evaluating the condition used by the triggers-performance support
+ * app, in the style of a JMH average time benchmark.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Ignore("Benchmark, to be run manually")
+class EventTriggerConditionBenchmark {
+    
+    private val condition = EventTriggerCondition.compile(JSONArray(jsonArray(
+            jsonObject("p" to "c"),
+            jsonObject("s" to "c"),
+            jsonObject("o" to "equal to"),
+            jsonObject("p" to "a"),
+            jsonObject("i" to 15),
+            jsonObject("o" to "less than"),
+            jsonObject("o" to "and"),
+            jsonObject("p" to "b"),
+            jsonObject("i" to 15),
+            jsonObject("o" to "greater than eq"),
+            jsonObject("o" to "and"),
+            jsonObject("p" to "d"),
+            jsonObject("b" to true),
+            jsonObject("o" to "equal to"),
+            jsonObject("o" to "or"))
+            .toString()))
+    private val params = Params()
+            .put("a", 10)
+            .put("b", 5)
+            .put("c", "c")
+            .put("d", true)
+    
+    @Test
+    fun `evaluate support app condition`() {
+        repeat(WARMUP_ITERATIONS) { iteration() }
+        
+        val average = (0 until ITERATIONS).map { iteration() }.average()
+        println("${"%.1f".format(average)} ns/op")
+        
+        assertThat(condition.evaluate(params)).isTrue()
+    }
+    
+    private fun iteration(): Double {
+        var matched = 0
+        val start = System.nanoTime()
+        for (i in 0 until OPERATIONS) {
+            if (condition.evaluate(params)) matched++
+        }
+        val elapsed = System.nanoTime() - start
+        
+        assertThat(matched).isEqualTo(OPERATIONS)
+        return elapsed.toDouble() / OPERATIONS
+    }
+    
+    private companion object {
+        
+        const val WARMUP_ITERATIONS = 5
+        const val ITERATIONS = 10
+        const val OPERATIONS = 100_000
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.github.salomonbrys.kotson.jsonObject
+import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.mock
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class EventTriggerTableTest {
+    
+    private val ddna = mock<DDNA>()
+    private val etcMetricStore = mock<EventTriggeredCampaignMetricStore>()
+    
+    @Test
+    fun `triggers are grouped by event name and sorted by priority`() {
+        val a1 = trigger(0, "a", 1)
+        val b = trigger(1, "b", 0)
+        val a2 = trigger(2, "a", 2)
+        val a3 = trigger(3, "a", 1)
+        
+        with(EventTriggerTable(listOf(a1, b, a2, a3))) {
+            assertThat(get("a")).asList().containsExactly(a2, a1, a3).inOrder()
+            assertThat(get(String(charArrayOf('b')))).asList().containsExactly(b)
+        }
+    }
+    
+    @Test
+    fun `misses share the same empty triggers`() {
+        val table = EventTriggerTable((0 until 20).map { trigger(it, "event$it", 0) })
+        
+        assertThat(table.get("other")).isSameAs(EventTriggerTable.NONE)
+        assertThat(EventTriggerTable.EMPTY.get("event0")).isSameAs(EventTriggerTable.NONE)
+        (0 until 20).forEach {
+            assertThat(table.get("event$it").single().eventName).isEqualTo("event$it")
+        }
+    }
+    
+    private fun trigger(index: Int, name: String, priority: Int) = EventTrigger(
+            ddna,
+            index,
+            jsonObject("eventName" to name, "priority" to priority).convert(),
+            etcMetricStore)
+}
@@ -186,7 +186,7 @@ class EventTriggerTest {
 
         verify(ddna).recordEvent(argThat<Event<KEvent>> {
             name == "ddnaEventTriggeredAction" &&
-            with(params.json) {
+            with(params.toJson()) {
                 get("ddnaEventTriggeredCampaignID") == campaignId &&
                 get("ddnaEventTriggeredCampaignPriority") == priority &&
                 get("ddnaEventTriggeredVariantID") == variantId &&
@@ -220,7 +220,7 @@ class EventTriggerTest {
 
         verify(ddna).recordEvent(argThat<Event<KEvent>> {
             name == "ddnaEventTriggeredAction" &&
-                    with(params.json) {
+                    with(params.toJson()) {
                         get("ddnaEventTriggeredCampaignID") == campaignId &&
                                 get("ddnaEventTriggeredCampaignPriority") == priority &&
                                 get("ddnaEventTriggeredVariantID") == variantId &&
@@ -624,7 +624,7 @@ class EventTriggerTest {
     @Test
     fun `evaluation disambiguates between strings and timestamps`() {
         assertThat(cond(KEvent(
-                params = *arrayOf("a" to "value", "b" to DDNA.TIMESTAMP_FORMAT.parse("1970-01-01 00:00:00.000"))),
+                params = *arrayOf("a" to "value", "b" to Date(Timestamps.parse("1970-01-01 00:00:00.000")))),
                 "a".p(), "value".s(), "not equal to".o(), "b".p(), jsonObject("t" to "1971-01-01T00:00:00.000+0000"), "less than".o(), "or".o()))
                 .isTrue()
     }
@@ -637,6 +637,27 @@ class EventTriggerTest {
                 .isFalse()
     }
 
+    @Test
+    fun `evaluation fails on missing operands`() {
+        assertThat(cond(KEvent(), true.b(), "and".o())).isFalse()
+    }
+    
+    @Test
+    fun `evaluation fails when any part of the condition fails`() {
+        assertThat(cond(KEvent(
+                params = *arrayOf("a" to 5)),
+                "b".p(), 5.i(), "equal to".o(), true.b(), "or".o()))
+                .isFalse()
+    }
+    
+    @Test
+    fun `evaluation of constant expressions`() {
+        assertThat(cond(KEvent(), true.b(), false.b(), "or".o(), true.b(), "and".o()))
+                .isTrue()
+        assertThat(cond(KEvent(), true.b(), false.b(), "and".o(), true.b(), "and".o()))
+                .isFalse()
+    }
+    
     @Test
     fun `evaluation fails on mismatched parameter types`() {
         assertThat(cond(KEvent(
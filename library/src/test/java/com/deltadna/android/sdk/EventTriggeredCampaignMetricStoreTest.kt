@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(RobolectricTestRunner::class)
+class EventTriggeredCampaignMetricStoreTest {
+    
+    private lateinit var database: DatabaseHelper
+    
+    private lateinit var uut: EventTriggeredCampaignMetricStore
+    
+    @Before
+    fun before() {
+        database = DatabaseHelper(RuntimeEnvironment.application)
+        uut = EventTriggeredCampaignMetricStore(database)
+    }
+    
+    @Test
+    fun `executions are counted in memory`() {
+        uut.recordETCExecution(1)
+        uut.recordETCExecution(1)
+        uut.recordETCExecution(2)
+        
+        assertThat(uut.getETCExecutionCount(1)).isEqualTo(2)
+        assertThat(uut.getETCExecutionCount(2)).isEqualTo(1)
+        assertThat(uut.getETCExecutionCount(3)).isEqualTo(0)
+        assertThat(database.etcExecutionCounts).isEmpty()
+    }
+    
+    @Test
+    fun `changed counts are written`() {
+        uut.recordETCExecution(1)
+        uut.recordETCExecution(1)
+        uut.write()
+        uut.recordETCExecution(2)
+        uut.write()
+        
+        assertThat(database.etcExecutionCounts).containsExactly(1L, 2L, 2L, 1L)
+    }
+    
+    @Test
+    fun `counts are loaded from database`() {
+        database.setETCExecutionCounts(mapOf(1L to 5L))
+        
+        uut.recordETCExecution(1)
+        
+        assertThat(uut.getETCExecutionCount(1)).isEqualTo(6)
+    }
+    
+    @Test
+    fun `clear removes counts`() {
+        uut.recordETCExecution(1)
+        uut.write()
+        
+        uut.clear()
+        uut.write()
+        
+        assertThat(uut.getETCExecutionCount(1)).isEqualTo(0)
+        assertThat(database.etcExecutionCounts).isEmpty()
+    }
+}
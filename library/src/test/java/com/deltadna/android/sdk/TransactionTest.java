@@ -36,42 +36,42 @@ public final class TransactionTest {
         
         assertThat(uut.name).isEqualTo("transaction");
         
-        assertThat(uut.params.json.get("transactionName")).isEqualTo("name");
-        assertThat(uut.params.json.get("transactionType")).isEqualTo("type");
+        assertThat(uut.params.toJson().get("transactionName")).isEqualTo("name");
+        assertThat(uut.params.toJson().get("transactionType")).isEqualTo("type");
         
-        assertThat(uut.params.json.getJSONObject("productsReceived").toString())
+        assertThat(uut.params.toJson().getJSONObject("productsReceived").toString())
                 .isEqualTo(new Product().toJson().toString());
-        assertThat(uut.params.json.getJSONObject("productsSpent").toString())
+        assertThat(uut.params.toJson().getJSONObject("productsSpent").toString())
                 .isEqualTo(new Product().toJson().toString());
     }
     
     @Test
     public void setId() throws JSONException {
-        assertThat(transaction().setId("value").params.json.get("transactionID"))
+        assertThat(transaction().setId("value").params.toJson().get("transactionID"))
                 .isEqualTo("value");
     }
     
     @Test
     public void setProductId() throws JSONException {
-        assertThat(transaction().setProductId("value").params.json.get("productID"))
+        assertThat(transaction().setProductId("value").params.toJson().get("productID"))
                 .isEqualTo("value");
     }
     
     @Test
     public void setReceipt() throws JSONException {
-        assertThat(transaction().setReceipt("value").params.json.get("transactionReceipt"))
+        assertThat(transaction().setReceipt("value").params.toJson().get("transactionReceipt"))
                 .isEqualTo("value");
     }
     
     @Test
     public void setServer() throws JSONException {
-        assertThat(transaction().setServer("value").params.json.get("transactionServer"))
+        assertThat(transaction().setServer("value").params.toJson().get("transactionServer"))
                 .isEqualTo("value");
     }
     
     @Test
     public void setTransactorId() throws JSONException {
-        assertThat(transaction().setTransactorId("value").params.json.get("transactorID"))
+        assertThat(transaction().setTransactorId("value").params.toJson().get("transactorID"))
                 .isEqualTo("value");
     }
     
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+
+@RunWith(RobolectricTestRunner::class)
+class UploadBreakerTest {
+    
+    private val changes = mutableListOf<UploadCircuit>()
+    private val uut = UploadBreaker(BASE, Random(0)) { changes.add(it) }
+    
+    @Test
+    fun opensAfterThreshold() {
+        (1 until UploadBreaker.THRESHOLD).forEach {
+            uut.failed(0)
+            assertThat(uut.state()).isEqualTo(UploadCircuit.CLOSED)
+            assertThat(uut.allow(0)).isTrue()
+        }
+        
+        uut.failed(0)
+        
+        assertThat(uut.state()).isEqualTo(UploadCircuit.OPEN)
+        assertThat(uut.allow(0)).isFalse()
+        assertThat(changes).containsExactly(UploadCircuit.OPEN)
+    }
+    
+    @Test
+    fun successResetsFailures() {
+        (1 until UploadBreaker.THRESHOLD).forEach { uut.failed(0) }
+        uut.succeeded()
+        uut.failed(0)
+        
+        assertThat(uut.state()).isEqualTo(UploadCircuit.CLOSED)
+        assertThat(changes).isEmpty()
+    }
+    
+    @Test
+    fun probesAfterBackoff() {
+        open()
+        val delay = uut.delay(0, 1)
+        assertThat(delay).isAtLeast(BASE / 2)
+        assertThat(delay).isAtMost(BASE)
+        
+        assertThat(uut.allow(delay - 1)).isFalse()
+        assertThat(uut.allow(delay)).isTrue()
+        assertThat(uut.state()).isEqualTo(UploadCircuit.HALF_OPEN)
+        
+        uut.succeeded()
+        assertThat(uut.state()).isEqualTo(UploadCircuit.CLOSED)
+        assertThat(uut.delay(delay, 1)).isEqualTo(1)
+        assertThat(changes).containsExactly(
+                UploadCircuit.OPEN,
+                UploadCircuit.HALF_OPEN,
+                UploadCircuit.CLOSED).inOrder()
+    }
+    
+    @Test
+    fun failedProbeBacksOffFurther() {
+        open()
+        val first = uut.delay(0, 1)
+        assertThat(uut.allow(first)).isTrue()
+        
+        uut.failed(first)
+        
+        assertThat(uut.state()).isEqualTo(UploadCircuit.OPEN)
+        val second = uut.delay(first, 1)
+        assertThat(second).isAtLeast(BASE)
+        assertThat(second).isAtMost(BASE * 2)
+    }
+    
+    @Test
+    fun backoffIsCapped() {
+        open()
+        repeat(30) {
+            uut.allow(Long.MAX_VALUE / 2)
+            uut.failed(0)
+        }
+        
+        assertThat(uut.delay(0, 1)).isAtMost(UploadBreaker.MAX_BACKOFF)
+    }
+    
+    @Test
+    fun connectivityChangeAllowsProbe() {
+        open()
+        assertThat(uut.allow(1)).isFalse()
+        
+        uut.connectivityChanged(1)
+        
+        assertThat(uut.delay(1, 1000)).isEqualTo(0)
+        assertThat(uut.allow(1)).isTrue()
+        assertThat(uut.state()).isEqualTo(UploadCircuit.HALF_OPEN)
+    }
+    
+    private fun open() {
+        repeat(UploadBreaker.THRESHOLD) { uut.failed(0) }
+    }
+    
+    companion object {
+        
+        private const val BASE = 60_000L
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.deltadna.android.sdk.helpers
 
+import com.deltadna.android.sdk.Engagement
 import com.google.common.truth.Truth.assertThat
 import org.junit.Before
 import org.junit.Test
@@ -120,4 +121,34 @@ class SettingsTest {
 
         assertThat(uut.imageMessageAutoNavigateLinkEnabled).isEqualTo(false)
     }
+    
+    @Test
+    fun engageMode() {
+        assertThat(uut.getEngageMode("point")).isNull()
+        
+        uut.setEngageMode("point", Engagement.Mode.STALE_WHILE_REVALIDATE_NOTIFY)
+        assertThat(uut.getEngageMode("point"))
+                .isEqualTo(Engagement.Mode.STALE_WHILE_REVALIDATE_NOTIFY)
+        assertThat(uut.getEngageMode("other")).isNull()
+        
+        uut.setEngageMode("point", null)
+        assertThat(uut.getEngageMode("point")).isNull()
+    }
+    
+    @Test
+    fun prefetch() {
+        assertThat(uut.prefetchDecisionPoints).isEmpty()
+        assertThat(uut.prefetchFromHistory).isEqualTo(0)
+        
+        uut.setPrefetchDecisionPoints("b", "a")
+        uut.setPrefetchFromHistory(3)
+        
+        assertThat(uut.prefetchDecisionPoints).containsExactly("b", "a").inOrder()
+        assertThat(uut.prefetchFromHistory).isEqualTo(3)
+    }
+    
+    @Test(expected = IllegalArgumentException::class)
+    fun prefetchFromHistoryCannotBeNegative() {
+        uut.setPrefetchFromHistory(-1)
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.FilterInputStream
+import java.util.*
+
+@RunWith(JUnit4::class)
+class BuffersTest {
+    
+    @Test
+    fun readWithLength() {
+        val input = random(1000)
+        
+        assertThat(Buffers.read(Trickle(input), input.size)).isEqualTo(input)
+    }
+    
+    @Test
+    fun readShorterThanLength() {
+        val input = random(10)
+        
+        assertThat(Buffers.read(ByteArrayInputStream(input), 20)).isEqualTo(input)
+    }
+    
+    @Test
+    fun readWithoutLength() {
+        listOf(0, 1, Buffers.SIZE - 1, Buffers.SIZE, Buffers.SIZE * 5 + 3).forEach {
+            val input = random(it)
+            
+            assertThat(Buffers.read(Trickle(input), -1)).isEqualTo(input)
+        }
+    }
+    
+    @Test
+    fun copy() {
+        val input = random(Buffers.SIZE * 2 + 1)
+        val output = ByteArrayOutputStream()
+        
+        assertThat(Buffers.copy(Trickle(input), output)).isEqualTo(input.size.toLong())
+        assertThat(output.toByteArray()).isEqualTo(input)
+    }
+    
+    @Test
+    fun buffersArePooled() {
+        val buffer = Buffers.acquire()
+        Buffers.release(buffer)
+        
+        assertThat(Buffers.acquire()).isSameAs(buffer)
+    }
+    
+    private fun random(size: Int) = ByteArray(size).apply { Random(size.toLong()).nextBytes(this) }
+    
+    /**
+     * Returns fewer bytes than asked for, like a network stream.
+     */
+    private class Trickle(input: ByteArray) : FilterInputStream(ByteArrayInputStream(input)) {
+        
+        override fun read(b: ByteArray, off: Int, len: Int) =
+                super.read(b, off, Math.min(len, 777))
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.IOException
+
+@RunWith(RobolectricTestRunner::class)
+class FileResponseBodyConverterTest {
+    
+    @get:Rule
+    val folder = TemporaryFolder()
+    
+    @Test
+    fun streamedToDestination() {
+        val dest = File(folder.root, "image.png")
+        val input = ByteArray(Buffers.SIZE * 3 + 1) { it.toByte() }
+        
+        assertThat(FileResponseBodyConverter(dest).convert(
+                ByteArrayInputStream(input), input.size))
+                .isEqualTo(dest)
+        
+        assertThat(dest.readBytes()).isEqualTo(input)
+        assertThat(folder.root.list()).asList().containsExactly("image.png")
+    }
+    
+    @Test
+    fun streamedWithUnknownLength() {
+        val dest = File(folder.root, "image.png")
+        
+        FileResponseBodyConverter(dest).convert(ByteArrayInputStream(byteArrayOf(1, 2)), -1)
+        
+        assertThat(dest.readBytes()).isEqualTo(byteArrayOf(1, 2))
+    }
+    
+    @Test
+    fun truncatedBodyDoesNotReplaceDestination() {
+        val dest = File(folder.root, "image.png").apply { writeBytes(byteArrayOf(9)) }
+        
+        try {
+            FileResponseBodyConverter(dest).convert(
+                    ByteArrayInputStream(byteArrayOf(1, 2)), 3)
+            fail("truncated body accepted")
+        } catch (expected: IOException) {}
+        
+        assertThat(dest.readBytes()).isEqualTo(byteArrayOf(9))
+        assertThat(folder.root.list()).asList().containsExactly("image.png")
+    }
+    
+    @Test
+    fun failedReadLeavesNoPartialFile() {
+        val dest = File(folder.root, "image.png")
+        val input = object : ByteArrayInputStream(byteArrayOf(1, 2)) {
+            override fun read(b: ByteArray, off: Int, len: Int) = throw IOException()
+        }
+        
+        try {
+            FileResponseBodyConverter(dest).convert(input, -1)
+            fail("read failure ignored")
+        } catch (expected: IOException) {}
+        
+        assertThat(dest.exists()).isFalse()
+        assertThat(folder.root.list()).isEmpty()
+    }
+}
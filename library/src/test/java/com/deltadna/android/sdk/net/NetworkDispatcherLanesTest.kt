@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 deltaDNA Ltd. All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deltadna.android.sdk.net
+
+import com.google.common.truth.Truth.assertThat
+import com.squareup.okhttp.mockwebserver.Dispatcher
+import com.squareup.okhttp.mockwebserver.MockResponse
+import com.squareup.okhttp.mockwebserver.MockWebServer
+import com.squareup.okhttp.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class NetworkDispatcherLanesTest {
+    
+    private val uut = NetworkDispatcher()
+    private val server = MockWebServer()
+    private val release = CountDownLatch(1)
+    
+    @Before
+    fun before() {
+        server.setDispatcher(object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                if (request.path.startsWith("/slow")) {
+                    release.await(5, TimeUnit.SECONDS)
+                }
+                return MockResponse().setResponseCode(200)
+            }
+        })
+        server.start()
+    }
+    
+    @After
+    fun after() {
+        release.countDown()
+        server.shutdown()
+    }
+    
+    @Test
+    fun `engage does not wait behind other lanes`() {
+        (0 until NetworkDispatcher.Lane.COLLECT.threads).forEach {
+            uut.enqueue(request("/slow/collect$it", NetworkDispatcher.Lane.COLLECT), null)
+        }
+        (0 until NetworkDispatcher.Lane.FETCH.threads).forEach {
+            uut.enqueue(request("/slow/fetch$it", NetworkDispatcher.Lane.FETCH), null)
+        }
+        uut.enqueue(request("/engage", NetworkDispatcher.Lane.ENGAGE), null)
+        
+        val paths = (0 until NetworkDispatcher.Lane.COLLECT.threads
+                + NetworkDispatcher.Lane.FETCH.threads
+                + 1).map { server.takeRequest(1, TimeUnit.SECONDS)?.path }
+        assertThat(paths).contains("/engage")
+        assertThat(uut.queued(NetworkDispatcher.Lane.ENGAGE)).isEqualTo(0)
+    }
+    
+    @Test
+    fun `requests are ordered by priority within a lane`() {
+        // occupy every thread of the lane so that the rest have to queue
+        (0 until NetworkDispatcher.Lane.FETCH.threads).forEach {
+            uut.enqueue(request("/slow/$it", NetworkDispatcher.Lane.FETCH), null)
+        }
+        (0 until NetworkDispatcher.Lane.FETCH.threads).forEach {
+            server.takeRequest(1, TimeUnit.SECONDS)
+        }
+        
+        uut.enqueue(request("/normal1", NetworkDispatcher.Lane.FETCH), null)
+        uut.enqueue(request("/high", NetworkDispatcher.Lane.FETCH, Request.PRIORITY_HIGH), null)
+        uut.enqueue(request("/normal2", NetworkDispatcher.Lane.FETCH), null)
+        assertThat(uut.queued(NetworkDispatcher.Lane.FETCH)).isEqualTo(3)
+        
+        release.countDown()
+        val paths = (0 until 3).map { server.takeRequest(1, TimeUnit.SECONDS)?.path }
+        
+        assertThat(paths.first()).isEqualTo("/high")
+        assertThat(paths).containsExactly("/high", "/normal1", "/normal2")
+        assertThat(uut.maxQueueTime(NetworkDispatcher.Lane.FETCH)).isAtLeast(0L)
+    }
+    
+    private fun request(
+            path: String,
+            lane: NetworkDispatcher.Lane,
+            priority: Int = Request.PRIORITY_NORMAL) =
+            Request.Builder<Void>()
+                    .get()
+                    .url(server.url(path).toString())
+                    .lane(lane)
+                    .priority(priority)
+                    .build()
+}
@@ -25,6 +25,7 @@ import com.nhaarman.mockito_kotlin.mock
 import com.nhaarman.mockito_kotlin.whenever
 import com.squareup.okhttp.mockwebserver.MockResponse
 import com.squareup.okhttp.mockwebserver.MockWebServer
+import org.json.JSONArray
 import org.json.JSONObject
 import org.junit.After
 import org.junit.Before
@@ -38,7 +39,10 @@ import org.junit.runners.model.Statement
 import org.robolectric.RobolectricTestRunner
 import org.robolectric.RuntimeEnvironment
 import java.io.File
+import java.io.OutputStream
 import java.nio.charset.Charset
+import java.security.MessageDigest
+import java.util.zip.GZIPInputStream
 
 @RunWith(RobolectricTestRunner::class)
 class NetworkManagerTest {
@@ -189,6 +193,108 @@ class NetworkManagerTest {
                 .startsWith("$COLLECT/$ENV_KEY/hash")
     }
     
+    @Test
+    fun collectBulkStreamed() {
+        server.enqueue(MockResponse().setResponseCode(200))
+        
+        val content = "{\"eventList\":[{\"a\":1}]}".toByteArray()
+        uut.collectBulk(
+                object : BodyWriter {
+                    override fun length() = content.size.toLong()
+                    override fun writeTo(output: OutputStream) = output.write(content)
+                },
+                null)
+        
+        with(server.takeRequest()) {
+            assertThat(method).isEqualTo("POST")
+            assertThat(headers["Content-Length"]).isEqualTo("${content.size}")
+            assertThat(body.readUtf8()).isEqualTo(String(content))
+        }
+    }
+    
+    @Test
+    fun collectBulkStreamedWithHash() {
+        server.enqueue(MockResponse().setResponseCode(200))
+        
+        uut = NetworkManager(
+                ENV_KEY,
+                server.url(COLLECT).toString(),
+                server.url(ENGAGE).toString(),
+                mock(),
+                "hash")
+        val content = "{\"eventList\":[]}"
+        uut.collectBulk(
+                object : BodyWriter {
+                    override fun length() = content.length.toLong()
+                    override fun writeTo(output: OutputStream) =
+                            output.write(content.toByteArray())
+                },
+                null)
+        
+        val expected = MessageDigest.getInstance("MD5")
+                .digest("${content}hash".toByteArray())
+                .joinToString("") { String.format("%02X", it) }
+        assertThat(server.takeRequest().path)
+                .isEqualTo("$COLLECT/$ENV_KEY/hash/$expected")
+    }
+    
+    @Test
+    fun collectCompressed() {
+        val settings = mock<Settings>()
+        whenever(settings.httpRequestCompression).thenReturn(Settings.Compression.GZIP)
+        whenever(settings.httpRequestCompressionThreshold).thenReturn(1024)
+        server.enqueue(MockResponse().setResponseCode(200))
+        
+        uut = NetworkManager(
+                ENV_KEY,
+                server.url(COLLECT).toString(),
+                server.url(ENGAGE).toString(),
+                settings,
+                null)
+        val events = JSONArray()
+        (0 until 100).forEach {
+            events.put(JSONObject()
+                    .put("eventName", "event")
+                    .put("userID", "userId")
+                    .put("sessionID", "sessionId")
+                    .put("eventParams", JSONObject()
+                            .put("platform", "ANDROID")
+                            .put("sdkVersion", "Android SDK v5.0.2")
+                            .put("value", it)))
+        }
+        val payload = JSONObject().put("eventList", events)
+        val raw = payload.toString().toByteArray()
+        uut.collect(payload, null)
+        
+        with(server.takeRequest()) {
+            assertThat(getHeader("Content-Encoding")).isEqualTo("gzip")
+            assertThat(bodySize).isLessThan(raw.size / 4L)
+            assertThat(GZIPInputStream(body.inputStream()).readBytes())
+                    .isEqualTo(raw)
+        }
+    }
+    
+    @Test
+    fun collectNotCompressedUnderThreshold() {
+        val settings = mock<Settings>()
+        whenever(settings.httpRequestCompression).thenReturn(Settings.Compression.GZIP)
+        whenever(settings.httpRequestCompressionThreshold).thenReturn(1024)
+        server.enqueue(MockResponse().setResponseCode(200))
+        
+        uut = NetworkManager(
+                ENV_KEY,
+                server.url(COLLECT).toString(),
+                server.url(ENGAGE).toString(),
+                settings,
+                null)
+        uut.collect(JSONObject().put("field", 1), null)
+        
+        with(server.takeRequest()) {
+            assertThat(getHeader("Content-Encoding")).isNull()
+            assertThat(body.readUtf8()).isEqualTo("{\"field\":1}")
+        }
+    }
+    
     @Test
     fun engage() {
         server!!.enqueue(MockResponse()
@@ -276,6 +382,21 @@ class NetworkManagerTest {
         assertThat(dst.delete()).isTrue()
     }
     
+    @Test
+    fun warmUp() {
+        server.enqueue(MockResponse().setResponseCode(404))
+        server.enqueue(MockResponse().setResponseCode(404))
+        
+        uut.warmUp()
+        
+        (0..1).forEach {
+            with(server.takeRequest()) {
+                assertThat(method).isEqualTo("HEAD")
+                assertThat(path).isEqualTo("/")
+            }
+        }
+    }
+    
     companion object {
         
         private val ENV_KEY = "env_key"
@@ -25,8 +25,11 @@ import org.json.JSONObject
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
 import java.io.OutputStream
 import java.net.HttpURLConnection
+import java.util.zip.GZIPInputStream
 
 @RunWith(JUnit4::class)
 class RequestBodyTest {
@@ -55,6 +58,21 @@ class RequestBodyTest {
         verify(os).write(eq(uut.content))
     }
     
+    @Test
+    fun fillCompressed() {
+        val uut = RequestBody("type", "content".toByteArray()).gzip()
+        val conn = mock<HttpURLConnection>()
+        val os = ByteArrayOutputStream()
+        whenever(conn.outputStream).thenReturn(os)
+        
+        uut.fill(conn)
+        
+        verify(conn).setChunkedStreamingMode(eq(0))
+        verify(conn).setRequestProperty(eq("Content-Encoding"), eq("gzip"))
+        assertThat(GZIPInputStream(ByteArrayInputStream(os.toByteArray())).readBytes())
+                .isEqualTo("content".toByteArray())
+    }
+    
     @Test
     fun json() {
         val uut = RequestBody.json(JSONObject().put("field", 1))
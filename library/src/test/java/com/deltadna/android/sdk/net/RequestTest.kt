@@ -17,13 +17,19 @@
 package com.deltadna.android.sdk.net
 
 import com.google.common.truth.Truth.assertThat
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.eq
+import com.nhaarman.mockito_kotlin.spy
+import com.nhaarman.mockito_kotlin.verify
 import com.squareup.okhttp.mockwebserver.MockResponse
 import com.squareup.okhttp.mockwebserver.MockWebServer
 import org.junit.After
+import org.junit.Assert.fail
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
+import java.io.IOException
 import java.net.ConnectException
 
 @RunWith(JUnit4::class)
@@ -137,4 +143,98 @@ class RequestTest {
                 .build()
                 .call()
     }
+    
+    @Test
+    fun connectionKeptAlive() {
+        server!!.enqueue(MockResponse().setResponseCode(200).setBody("first"))
+        server!!.enqueue(MockResponse().setResponseCode(200).setBody("second"))
+        
+        (0..1).forEach {
+            Request.Builder<String>()
+                    .get()
+                    .url(server!!.url("/get").toString())
+                    .build()
+                    .setConverter(ResponseBodyConverter.STRING)
+                    .call()
+        }
+        
+        assertThat(server!!.takeRequest().sequenceNumber).isEqualTo(0)
+        assertThat(server!!.takeRequest().sequenceNumber).isEqualTo(1)
+    }
+    
+    @Test
+    fun transportReleasesConnection() {
+        server!!.enqueue(MockResponse().setResponseCode(200).setBody("body"))
+        server!!.enqueue(MockResponse().setResponseCode(200).setBody("body"))
+        val transport = spy(UrlConnectionTransport.INSTANCE)
+        
+        Request.Builder<String>()
+                .get()
+                .url(server!!.url("/get").toString())
+                .build()
+                .setConverter(ResponseBodyConverter.STRING)
+                .setTransport(transport)
+                .call()
+        verify(transport).release(any(), eq(true))
+        
+        try {
+            Request.Builder<String>()
+                    .get()
+                    .url(server!!.url("/get").toString())
+                    .build()
+                    .setConverter(object : ResponseBodyConverter<String> {
+                        override fun convert(input: ByteArray) = throw IOException()
+                    })
+                    .setTransport(transport)
+                    .call()
+            fail("conversion failure ignored")
+        } catch (expected: IOException) {}
+        verify(transport).release(any(), eq(false))
+    }
+    
+    @Test
+    fun retryDelayBacksOffForCollect() {
+        server!!.shutdown()
+        val request = Request.Builder<Void>()
+                .get()
+                .url(server!!.url("/fail").toString())
+                .maxRetries(3)
+                .retryDelay(1000)
+                .lane(NetworkDispatcher.Lane.COLLECT)
+                .build()
+        
+        (1..3).forEach {
+            try {
+                request.call()
+            } catch (expected: IOException) {}
+            
+            val ceiling = 1000L shl (it - 1)
+            if (it == 1) {
+                assertThat(request.nextRetryDelay()).isEqualTo(1000L)
+            } else {
+                assertThat(request.nextRetryDelay()).isAtLeast(1000L)
+                assertThat(request.nextRetryDelay()).isAtMost(ceiling)
+            }
+        }
+    }
+    
+    @Test
+    fun retryDelayFixedForOtherLanes() {
+        server!!.shutdown()
+        val request = Request.Builder<Void>()
+                .get()
+                .url(server!!.url("/fail").toString())
+                .maxRetries(3)
+                .retryDelay(1000)
+                .lane(NetworkDispatcher.Lane.ENGAGE)
+                .build()
+        
+        (1..3).forEach {
+            try {
+                request.call()
+            } catch (expected: IOException) {}
+            
+            assertThat(request.nextRetryDelay()).isEqualTo(1000L)
+        }
+    }
 }
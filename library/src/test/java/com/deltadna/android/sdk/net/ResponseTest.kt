@@ -25,6 +25,7 @@ import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
 import java.io.ByteArrayInputStream
 import java.io.IOException
+import java.io.InputStream
 import java.io.PipedInputStream
 import java.io.PipedOutputStream
 import java.net.HttpURLConnection
@@ -87,7 +88,7 @@ class ResponseTest {
                 assertThat(body).isEqualTo(String(bytes))
                 assertThat(error).isNull()
             }
-            verify(stream, times(input.size + 1)).read()
+            verify(stream, never()).read()
             verify(stream).close()
         }
     }
@@ -107,7 +108,7 @@ class ResponseTest {
                 assertThat(body).isNull()
                 assertThat(error).isEqualTo(String(bytes))
             }
-            verify(stream, times(input.size + 1)).read()
+            verify(stream, never()).read()
             verify(stream).close()
         }
     }
@@ -139,4 +140,49 @@ class ResponseTest {
             fail("stream has not been closed")
         } catch (expected: IOException) {}
     }
+    
+    @Test
+    fun streamingConverterConsumesInput() {
+        with(mock<HttpURLConnection>()) {
+            val input = "input".toByteArray()
+            val stream = spy(ByteArrayInputStream(input))
+            whenever(this.responseCode).thenReturn(200)
+            whenever(this.contentLength).thenReturn(input.size)
+            whenever(this.inputStream).thenReturn(stream)
+            
+            val converter = object : StreamingResponseBodyConverter<String> {
+                override fun convert(input: InputStream, length: Int) =
+                        "${String(input.readBytes())} $length"
+                
+                override fun convert(input: ByteArray) = throw AssertionError()
+            }
+            
+            with(Response.create(this, converter)) {
+                assertThat(code).isEqualTo(200)
+                assertThat(bytes).isNull()
+                assertThat(body).isEqualTo("input 5")
+                assertThat(error).isNull()
+            }
+            verify(stream).close()
+        }
+    }
+    
+    @Test
+    fun streamingConverterNotUsedForErrors() {
+        with(mock<HttpURLConnection>()) {
+            val input = "error".toByteArray()
+            whenever(this.responseCode).thenReturn(500)
+            whenever(this.contentLength).thenReturn(input.size)
+            whenever(this.errorStream).thenReturn(ByteArrayInputStream(input))
+            
+            val converter = mock<StreamingResponseBodyConverter<String>>()
+            
+            with(Response.create(this, converter)) {
+                assertThat(bytes).isEqualTo(input)
+                assertThat(body).isNull()
+                assertThat(error).isEqualTo("error")
+            }
+            verifyZeroInteractions(converter)
+        }
+    }
 }